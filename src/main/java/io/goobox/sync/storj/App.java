@@ -33,6 +33,7 @@ import io.goobox.sync.common.ShutdownListener;
 import io.goobox.sync.common.Utils;
 import io.goobox.sync.common.overlay.OverlayHelper;
 import io.goobox.sync.storj.db.DB;
+import io.goobox.sync.storj.ignore.IgnoreMatcher;
 import io.goobox.sync.storj.ipc.IpcExecutor;
 import io.goobox.sync.storj.overlay.StorjOverlayIconProvider;
 import io.storj.libstorj.Bucket;
@@ -52,6 +53,25 @@ public class App implements ShutdownListener {
     private Storj storj;
     private Bucket gooboxBucket;
     private TaskQueue tasks;
+    private RetryQueue retryQueue;
+    private CircuitBreaker circuitBreaker;
+    private BandwidthLimiter uploadLimiter = new BandwidthLimiter();
+    private BandwidthLimiter downloadLimiter = new BandwidthLimiter();
+    private InFlightUploads inFlightUploads = new InFlightUploads();
+    private EchoRegistry echoRegistry = new EchoRegistry();
+    private IgnoreMatcher ignoreMatcher = new IgnoreMatcher();
+    private BurstTracker burstTracker = new BurstTracker();
+    private CloudFileCache cloudFileCache = new CloudFileCache();
+    private StagingArea stagingArea = new StagingArea();
+    private boolean stagedUploads;
+    private long packThreshold;
+    private long segmentSize;
+    private boolean dedup;
+    private boolean compression;
+    private boolean placeholders;
+    private boolean snapshots;
+    private long cacheBudget;
+    private DedupStats dedupStats = new DedupStats();
     private TaskExecutor taskExecutor;
     private FileWatcher fileWatcher;
     private IpcExecutor ipcExecutor;
@@ -80,6 +100,61 @@ public class App implements ShutdownListener {
                 .hasArg()
                 .desc("set the sync dir")
                 .build());
+        opts.addOption(Option.builder()
+                .longOpt("staged-uploads")
+                .desc("keep the old version of a modified file on the cloud until the new one is uploaded")
+                .build());
+        opts.addOption(Option.builder()
+                .longOpt("pack-threshold")
+                .hasArg()
+                .type(Number.class)
+                .desc("upload files smaller than the given bytes packed together")
+                .build());
+        opts.addOption(Option.builder()
+                .longOpt("segment-size")
+                .hasArg()
+                .type(Number.class)
+                .desc("upload files larger than the given bytes in segments of that size")
+                .build());
+        opts.addOption(Option.builder()
+                .longOpt("dedup")
+                .desc("upload the same content only once")
+                .build());
+        opts.addOption(Option.builder()
+                .longOpt("placeholders")
+                .desc("create placeholders for cloud files and download them when opened")
+                .build());
+        opts.addOption(Option.builder()
+                .longOpt("snapshots")
+                .desc("upload snapshots of files that are written for too long to wait until they are done")
+                .build());
+        opts.addOption(Option.builder()
+                .longOpt("cache-budget")
+                .hasArg()
+                .type(Number.class)
+                .desc("replace least recently used files with placeholders above the given local bytes")
+                .build());
+        opts.addOption(Option.builder()
+                .longOpt("compress")
+                .desc("compress text-like files before upload")
+                .build());
+        opts.addOption(Option.builder()
+                .longOpt("upload-limit")
+                .hasArg()
+                .type(Number.class)
+                .desc("limit the upload bandwidth in bytes per second")
+                .build());
+        opts.addOption(Option.builder()
+                .longOpt("download-limit")
+                .hasArg()
+                .type(Number.class)
+                .desc("limit the download bandwidth in bytes per second")
+                .build());
+        opts.addOption(Option.builder()
+                .longOpt("bandwidth-schedule")
+                .hasArg()
+                .desc("apply the bandwidth limits only in the given time of day, e.g. 08:00-18:00")
+                .build());
 
         try {
             CommandLine cmd = new DefaultParser().parse(opts, args);
@@ -103,6 +178,44 @@ public class App implements ShutdownListener {
                 instance = new App();
             }
 
+            instance.stagedUploads = cmd.hasOption("staged-uploads");
+
+            instance.dedup = cmd.hasOption("dedup");
+            instance.compression = cmd.hasOption("compress");
+            instance.placeholders = cmd.hasOption("placeholders");
+            instance.snapshots = cmd.hasOption("snapshots");
+
+            if (cmd.hasOption("pack-threshold")) {
+                instance.packThreshold = ((Number) cmd.getParsedOptionValue("pack-threshold")).longValue();
+            }
+
+            if (cmd.hasOption("cache-budget")) {
+                instance.cacheBudget = ((Number) cmd.getParsedOptionValue("cache-budget")).longValue();
+            }
+
+            if (cmd.hasOption("segment-size")) {
+                instance.segmentSize = ((Number) cmd.getParsedOptionValue("segment-size")).longValue();
+            }
+
+            if (cmd.hasOption("upload-limit")) {
+                instance.uploadLimiter.setRate(((Number) cmd.getParsedOptionValue("upload-limit")).longValue());
+            }
+
+            if (cmd.hasOption("download-limit")) {
+                instance.downloadLimiter.setRate(((Number) cmd.getParsedOptionValue("download-limit")).longValue());
+            }
+
+            if (cmd.hasOption("bandwidth-schedule")) {
+                String schedule = cmd.getOptionValue("bandwidth-schedule");
+                try {
+                    instance.uploadLimiter.setSchedule(schedule);
+                    instance.downloadLimiter.setSchedule(schedule);
+                } catch (RuntimeException e) {
+                    logger.error("Invalid bandwidth schedule: " + schedule);
+                    System.exit(1);
+                }
+            }
+
             instance.init(resetAuthFile);
         } catch (ParseException e) {
             logger.error("Failed to parse command line options", e);
@@ -134,6 +247,82 @@ public class App implements ShutdownListener {
         return tasks;
     }
 
+    public RetryQueue getRetryQueue() {
+        return retryQueue;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public BandwidthLimiter getUploadLimiter() {
+        return uploadLimiter;
+    }
+
+    public BandwidthLimiter getDownloadLimiter() {
+        return downloadLimiter;
+    }
+
+    public InFlightUploads getInFlightUploads() {
+        return inFlightUploads;
+    }
+
+    public EchoRegistry getEchoRegistry() {
+        return echoRegistry;
+    }
+
+    public IgnoreMatcher getIgnoreMatcher() {
+        return ignoreMatcher;
+    }
+
+    public BurstTracker getBurstTracker() {
+        return burstTracker;
+    }
+
+    public boolean isStagedUploads() {
+        return stagedUploads;
+    }
+
+    public StagingArea getStagingArea() {
+        return stagingArea;
+    }
+
+    public long getPackThreshold() {
+        return packThreshold;
+    }
+
+    public long getSegmentSize() {
+        return segmentSize;
+    }
+
+    public boolean isDedup() {
+        return dedup;
+    }
+
+    public boolean isCompression() {
+        return compression;
+    }
+
+    public boolean isPlaceholders() {
+        return placeholders;
+    }
+
+    public boolean isSnapshots() {
+        return snapshots;
+    }
+
+    public long getCacheBudget() {
+        return cacheBudget;
+    }
+
+    public DedupStats getDedupStats() {
+        return dedupStats;
+    }
+
+    public CloudFileCache getCloudFileCache() {
+        return cloudFileCache;
+    }
+
     public TaskExecutor getTaskExecutor() {
         return taskExecutor;
     }
@@ -149,7 +338,6 @@ public class App implements ShutdownListener {
     private void init(boolean resetAuthFile) {
         storj = new Storj();
         storj.setConfigDirectory(Utils.getDataDir().toFile());
-        storj.setDownloadDirectory(syncDir.toFile());
 
         if (resetAuthFile) {
             storj.deleteKeys();
@@ -166,6 +354,11 @@ public class App implements ShutdownListener {
             System.exit(1);
         }
 
+        if (!stagingArea.init()) {
+            System.exit(1);
+        }
+        storj.setDownloadDirectory(stagingArea.getDir().toFile());
+
         gooboxBucket = checkAndCreateCloudBucket();
         if (gooboxBucket == null) {
             System.exit(1);
@@ -176,10 +369,13 @@ public class App implements ShutdownListener {
         tasks = new TaskQueue();
         tasks.add(new CheckStateTask());
 
+        retryQueue = new RetryQueue();
+        circuitBreaker = new CircuitBreaker();
         taskExecutor = new TaskExecutor(tasks);
         fileWatcher = new FileWatcher();
 
         fileWatcher.start();
+        retryQueue.start();
         taskExecutor.start();
     }
 
@@ -224,9 +420,12 @@ public class App implements ShutdownListener {
     private Bucket checkAndCreateCloudBucket() {
         logger.info("Checking if cloud Goobox bucket exists");
         final Bucket[] result = { null };
+        final int[] error = { 0 };
+        int attempts = 0;
 
         while (result[0] == null) {
             final CountDownLatch latch = new CountDownLatch(1);
+            error[0] = 0;
 
             try {
                 storj.getBuckets(new GetBucketsCallback() {
@@ -246,6 +445,7 @@ public class App implements ShutdownListener {
                             @Override
                             public void onError(String bucketName, int code, String message) {
                                 logger.error("Failed creating cloud Goobox bucket: {} ({})", message, code);
+                                error[0] = code;
                                 latch.countDown();
                             }
 
@@ -261,6 +461,7 @@ public class App implements ShutdownListener {
                     @Override
                     public void onError(int code, String message) {
                         logger.error("{} ({})", message, code);
+                        error[0] = code;
                         latch.countDown();
                     }
                 });
@@ -273,8 +474,13 @@ public class App implements ShutdownListener {
                 latch.await();
 
                 if (result[0] == null) {
-                    // error - wait 3 seconds before trying again
-                    Thread.sleep(3000);
+                    if (StorjUtil.isTemporaryError(error[0])) {
+                        // bridge not reachable - back off before trying again
+                        Thread.sleep(RetryPolicy.forError(error[0]).getDelay(++attempts));
+                    } else {
+                        // wait 3 seconds before trying again
+                        Thread.sleep(3000);
+                    }
                 }
             } catch (InterruptedException e) {
                 break;
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import java.time.LocalTime;
+
+public class BandwidthLimiter {
+
+    private volatile long rate; // bytes per second, 0 means unlimited
+    private volatile LocalTime scheduleStart;
+    private volatile LocalTime scheduleEnd;
+
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    public long getRate() {
+        return rate;
+    }
+
+    public synchronized void setRate(long rate) {
+        this.rate = Math.max(0, rate);
+        // drop the tokens that do not fit in the bucket at the new rate
+        tokens = Math.min(tokens, this.rate);
+        lastRefill = System.nanoTime();
+    }
+
+    public void setSchedule(LocalTime start, LocalTime end) {
+        this.scheduleStart = start;
+        this.scheduleEnd = end;
+    }
+
+    public void setSchedule(String schedule) {
+        // format is HH:mm-HH:mm, empty value removes the schedule
+        if (schedule == null || schedule.isEmpty()) {
+            setSchedule(null, null);
+            return;
+        }
+        String[] times = schedule.split("-");
+        if (times.length != 2) {
+            throw new IllegalArgumentException("Invalid bandwidth schedule: " + schedule);
+        }
+        setSchedule(LocalTime.parse(times[0].trim()), LocalTime.parse(times[1].trim()));
+    }
+
+    public boolean isLimited() {
+        return rate > 0 && isScheduled(LocalTime.now());
+    }
+
+    private boolean isScheduled(LocalTime now) {
+        LocalTime start = scheduleStart;
+        LocalTime end = scheduleEnd;
+        if (start == null || end == null) {
+            // no schedule - limit all day
+            return true;
+        } else if (start.isBefore(end)) {
+            return !now.isBefore(start) && now.isBefore(end);
+        } else {
+            // schedule wraps around midnight
+            return !now.isBefore(start) || now.isBefore(end);
+        }
+    }
+
+    public synchronized void consume(long bytes) {
+        if (!isLimited()) {
+            return;
+        }
+        refill();
+        // tokens may go negative - the debt is paid by waiting before the next transfer
+        tokens -= bytes;
+    }
+
+    public synchronized long getWaitTime() {
+        if (!isLimited()) {
+            return 0;
+        }
+        refill();
+        if (tokens >= 0) {
+            return 0;
+        }
+        return (long) Math.ceil(-tokens * 1000 / rate);
+    }
+
+    // called from the task thread before each transfer - never from libstorj callbacks
+    public void pace() throws InterruptedException {
+        long wait = getWaitTime();
+        if (wait > 0) {
+            Thread.sleep(wait);
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        // the bucket holds at most one second worth of tokens
+        tokens = Math.min(rate, tokens + (now - lastRefill) * rate / 1e9);
+        lastRefill = now;
+    }
+
+}
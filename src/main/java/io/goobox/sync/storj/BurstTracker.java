@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Files rewritten over and over, like databases or VM disks, are uploaded at a capped rate
+public class BurstTracker {
+
+    // write bursts within the window that make a file busy
+    private static final int THRESHOLD = Integer.getInteger("goobox.bursts.threshold", 10);
+    private static final long WINDOW = Long.getLong("goobox.bursts.window", 10 * 60 * 1000);
+    // a busy file without bursts for this long is normal again
+    private static final long COOLDOWN = Long.getLong("goobox.bursts.cooldown", 5 * 60 * 1000);
+    // uploads of a busy file still allowed per hour
+    private static final int UPLOADS_PER_HOUR = Integer.getInteger("goobox.bursts.uploadsPerHour", 2);
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private Map<Path, Activity> activities = new ConcurrentHashMap<>();
+    private AtomicLong deferred = new AtomicLong();
+    private volatile long lastPurge;
+
+    // the file went quiet after being written
+    public void burst(Path path) {
+        Activity activity = activities.computeIfAbsent(path, p -> new Activity());
+        synchronized (activity) {
+            long now = System.currentTimeMillis();
+            if (now - activity.windowStart > WINDOW) {
+                activity.windowStart = now;
+                activity.bursts = 0;
+            }
+            activity.bursts++;
+            activity.lastBurst = now;
+        }
+    }
+
+    public boolean isBusy(Path path) {
+        Activity activity = activities.get(path);
+        if (activity == null) {
+            return false;
+        }
+        synchronized (activity) {
+            return activity.isBusy(System.currentTimeMillis());
+        }
+    }
+
+    // true if the upload should wait, otherwise it is counted against the hourly cap
+    public boolean deferUpload(Path path) {
+        Activity activity = activities.get(path);
+        if (activity == null) {
+            return false;
+        }
+        synchronized (activity) {
+            long now = System.currentTimeMillis();
+            if (!activity.isBusy(now)) {
+                return false;
+            }
+            if (now - activity.hourStart >= HOUR) {
+                activity.hourStart = now;
+                activity.uploads = 0;
+            }
+            if (activity.uploads < UPLOADS_PER_HOUR) {
+                activity.uploads++;
+                return false;
+            }
+        }
+        deferred.incrementAndGet();
+        return true;
+    }
+
+    // forget the history of the file or everything in the folder, so it is uploaded at the next check
+    public int reset(Path target) {
+        int count = 0;
+        for (Path path : activities.keySet()) {
+            if (path.startsWith(target) && activities.remove(path) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public void purge() {
+        long now = System.currentTimeMillis();
+        if (now - lastPurge < WINDOW) {
+            return;
+        }
+        lastPurge = now;
+        // the hourly cap must outlive a cooled down burst
+        activities.values().removeIf(activity -> now - activity.lastBurst > Math.max(WINDOW, HOUR));
+    }
+
+    public int getBusyCount() {
+        long now = System.currentTimeMillis();
+        int count = 0;
+        for (Activity activity : activities.values()) {
+            synchronized (activity) {
+                if (activity.isBusy(now)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    public long getDeferred() {
+        return deferred.get();
+    }
+
+    private static class Activity {
+
+        long windowStart;
+        int bursts;
+        long lastBurst;
+        long hourStart;
+        int uploads;
+
+        boolean isBusy(long now) {
+            return bursts >= THRESHOLD && now - lastBurst < COOLDOWN;
+        }
+
+    }
+
+}
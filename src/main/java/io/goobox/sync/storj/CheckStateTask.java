@@ -20,43 +20,75 @@ import java.io.IOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.text.ParseException;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.goobox.sync.common.Utils;
+import io.goobox.sync.storj.db.CloudPack;
 import io.goobox.sync.storj.db.DB;
+import io.goobox.sync.storj.db.DedupEntry;
 import io.goobox.sync.storj.db.SyncFile;
 import io.goobox.sync.storj.db.SyncState;
 import io.storj.libstorj.Bucket;
 import io.storj.libstorj.File;
 import io.storj.libstorj.ListFilesCallback;
 
-public class CheckStateTask implements Runnable {
+public class CheckStateTask extends RetryableTask {
 
     private static final Logger logger = LoggerFactory.getLogger(CheckStateTask.class);
 
+    // a pack is rewritten when less than this share of its members is still in use
+    private static final double PACK_COMPACT_RATIO = 0.5;
+    private static final long PACK_MAX_SIZE = Long.getLong("goobox.pack.maxSize", 8 * 1024 * 1024);
+    // deduplicated content stays on the cloud this long after its last reference is gone
+    private static final long DEDUP_GRACE_TIME = Long.getLong("goobox.dedup.graceTime", 10 * 60 * 1000);
+    // the manifest of a file is uploaded after all its segments - unreferenced segments are kept while
+    // any segment is still being uploaded and for at least the grace time
+    private static final long SEGMENT_GRACE_TIME = Long.getLong("goobox.segment.graceTime", 24 * 60 * 60 * 1000);
+    private static final long SEGMENT_IDLE_TIME = Long.getLong("goobox.segment.idleTime", 60 * 60 * 1000);
+    // files evicted per check - the rest follow in the next checks
+    private static final int EVICT_BATCH = Integer.getInteger("goobox.cache.evictBatch", 100);
+
+    // files written for longer than this get a snapshot uploaded
+    private static final long SNAPSHOT_AFTER = Long.getLong("goobox.snapshot.after", 10 * 60 * 1000);
+
     private Bucket gooboxBucket;
     private TaskQueue tasks;
 
+    private Map<String, File> cloudPacks = new HashMap<>();
+    private boolean unknownPacks;
+    private List<Path> forPacking = new ArrayList<>();
+
     public CheckStateTask() {
         this.gooboxBucket = App.getInstance().getGooboxBucket();
         this.tasks = App.getInstance().getTaskQueue();
     }
 
     @Override
-    public void run() {
-        // check if there are local file operations in progress
-        if (App.getInstance().getFileWatcher().isInProgress()) {
-            logger.info("Skip checking for changes - local file operations in progress");
-            return;
-        }
+    public String getFileName() {
+        return gooboxBucket.getName();
+    }
 
+    @Override
+    protected boolean hasRetryBudget(RetryPolicy policy) {
+        // never give up checking for changes
+        return true;
+    }
+
+    @Override
+    public void run() {
         logger.info("Checking for changes");
         App.getInstance().getIpcExecutor().sendSyncEvent();
         App.getInstance().getOverlayHelper().setSynchronizing();
@@ -64,15 +96,26 @@ public class CheckStateTask implements Runnable {
         App.getInstance().getStorj().listFiles(gooboxBucket, new ListFilesCallback() {
             @Override
             public void onFilesReceived(String bucketId, File[] files) {
+                succeeded();
+                files = removeStaleVersions(files);
+                App.getInstance().getCloudFileCache().refresh(files);
+                StorjUtil.retainCreatedTimes(files);
+                files = processPacks(files);
+                files = processDedupContent(files);
+                files = processSegments(files);
                 processFiles(files);
+                uploadPacks();
+                evictColdFiles();
 
                 DB.commit();
 
                 if (tasks.isEmpty()) {
                     // Sleep some time to avoid overloading the bridge
                     tasks.add(new SleepTask());
-                    App.getInstance().getIpcExecutor().sendIdleEvent();
-                    App.getInstance().getOverlayHelper().setOK();
+                    if (App.getInstance().getRetryQueue().isEmpty()) {
+                        App.getInstance().getIpcExecutor().sendIdleEvent();
+                        App.getInstance().getOverlayHelper().setOK();
+                    }
                 }
                 // Add itself to the queueAdd itself to the queue
                 tasks.add(CheckStateTask.this);
@@ -81,14 +124,8 @@ public class CheckStateTask implements Runnable {
             @Override
             public void onError(String bucketId, int code, String message) {
                 logger.error("{} ({})", message, code);
-                // wait 3 seconds before trying again
-                try {
-                    Thread.sleep(3000);
-                } catch (InterruptedException e) {
-                    // interrupted - stop execution
-                    return;
-                }
-                tasks.add(CheckStateTask.this);
+                App.getInstance().getCloudFileCache().invalidate();
+                retryLater(code);
             }
         });
     }
@@ -100,7 +137,25 @@ public class CheckStateTask implements Runnable {
 
         for (File file : files) {
             try {
-                Path localPath = getLocalPath(file.getName(), localPaths);
+                String name = StorjUtil.getLogicalName(file.getName());
+                Path localPath = getLocalPath(name, localPaths);
+                if (isIgnored(name)) {
+                    if (localPath != null) {
+                        localPaths.remove(localPath);
+                    }
+                    continue;
+                }
+                if (isHot(name)) {
+                    // wait until local file operations on it are over
+                    if (localPath != null) {
+                        localPaths.remove(localPath);
+                        if (canSnapshot(file)) {
+                            addForSnapshot(file, localPath);
+                        }
+                    }
+                    continue;
+                }
+
                 // process only files encrypted with the current key
                 if (file.isDecrypted()) {
                     try {
@@ -120,6 +175,8 @@ public class CheckStateTask implements Runnable {
                                 } else {
                                     setForCloudDelete(file);
                                 }
+                            } else if (syncFile.getState().isDehydrated()) {
+                                processPlaceholder(syncFile, file, localPath);
                             } else {
                                 boolean localChanged = localChanged(syncFile, localPath);
                                 if (cloudChanged && localChanged || syncFile.getState() == SyncState.FOR_DOWNLOAD) {
@@ -160,9 +217,21 @@ public class CheckStateTask implements Runnable {
         // Process local files without cloud counterpart
         for (Path path : localPaths) {
             try {
-                if (DB.contains(path)) {
+                if (App.getInstance().getFileWatcher().isHot(path)) {
+                    addForSnapshot(null, path);
+                } else if (DB.contains(path)) {
                     SyncFile syncFile = DB.get(path);
-                    if (localChanged(syncFile, path)
+                    if (syncFile.isPacked()) {
+                        processPackedFile(syncFile, path);
+                    } else if (syncFile.getState().isDehydrated()) {
+                        if (placeholderChanged(syncFile, path) && !Placeholder.isEmpty(path)) {
+                            // written to after the cloud file was deleted - the only copy of that content
+                            addForUpload(path);
+                        } else {
+                            // the cloud file is gone and the placeholder holds nothing else
+                            setForLocalDelete(path);
+                        }
+                    } else if (localChanged(syncFile, path)
                             || syncFile.getState() == SyncState.FOR_UPLOAD && syncFile.getStorjCreatedTime() == 0) {
                         addForUpload(path);
                     } else if (syncFile.getState() == SyncState.UPLOAD_FAILED && syncFile.getStorjCreatedTime() == 0) {
@@ -183,6 +252,300 @@ public class CheckStateTask implements Runnable {
         }
     }
 
+    private File[] processPacks(File[] files) {
+        List<File> others = new ArrayList<>();
+        cloudPacks.clear();
+        unknownPacks = false;
+
+        for (File file : files) {
+            if (!StorjUtil.isPack(file.getName())) {
+                others.add(file);
+                continue;
+            }
+
+            cloudPacks.put(file.getId(), file);
+            CloudPack pack = DB.getPack(file.getId());
+            if (pack == null) {
+                // packed by another device
+                unknownPacks = true;
+                addTask(new DownloadPackTask(gooboxBucket, file));
+            } else if (pack.getDeletedCount() > 0
+                    || DB.getPackMembers(pack.getId()).size() < pack.getMemberCount() * PACK_COMPACT_RATIO) {
+                // a deleted member would come back on any device that extracts the pack
+                addTask(new CompactPackTask(gooboxBucket, file));
+            }
+        }
+
+        for (CloudPack pack : DB.allPacks()) {
+            if (!cloudPacks.containsKey(pack.getId())) {
+                DB.removePack(pack.getId());
+            }
+        }
+
+        return others.toArray(new File[others.size()]);
+    }
+
+    private File[] processDedupContent(File[] files) {
+        List<File> others = new ArrayList<>();
+        List<File> blobs = new ArrayList<>();
+        Map<String, Integer> refCounts = new HashMap<>();
+
+        for (File file : files) {
+            if (StorjUtil.isBlob(file.getName())) {
+                blobs.add(file);
+                continue;
+            }
+            others.add(file);
+
+            String fingerprint = StorjUtil.getRefFingerprint(file.getName());
+            if (fingerprint != null) {
+                Integer count = refCounts.get(fingerprint);
+                refCounts.put(fingerprint, (count == null) ? 1 : count + 1);
+            }
+        }
+
+        // the listing is the source of truth for the reference counts of all devices
+        Set<String> fingerprints = new HashSet<>();
+        long now = System.currentTimeMillis();
+        for (File blob : blobs) {
+            String fingerprint = StorjUtil.getBlobFingerprint(blob.getName());
+            fingerprints.add(fingerprint);
+
+            DedupEntry entry = DB.getDedupEntry(fingerprint);
+            if (entry == null) {
+                entry = DB.addDedupEntry(fingerprint, blob.getSize());
+            }
+
+            Integer count = refCounts.get(fingerprint);
+            entry.setRefCount((count == null) ? 0 : count);
+            if (entry.getRefCount() > 0) {
+                entry.setOrphanSince(0);
+            } else if (entry.getOrphanSince() == 0) {
+                entry.setOrphanSince(now);
+            } else if (now - entry.getOrphanSince() > DEDUP_GRACE_TIME) {
+                logger.info("Deleting unreferenced content {}", fingerprint);
+                DB.removeDedupEntry(fingerprint);
+                addTask(new DeleteOldVersionTask(gooboxBucket, blob));
+                continue;
+            }
+            DB.updateDedupEntry(entry);
+        }
+
+        for (DedupEntry entry : DB.allDedupEntries()) {
+            if (!fingerprints.contains(entry.getFingerprint())) {
+                DB.removeDedupEntry(entry.getFingerprint());
+            }
+        }
+
+        return others.toArray(new File[others.size()]);
+    }
+
+    private File[] processSegments(File[] files) {
+        List<File> others = new ArrayList<>();
+        List<File> segments = new ArrayList<>();
+        boolean unknownManifests = false;
+
+        for (File file : files) {
+            if (StorjUtil.isSegment(file.getName())) {
+                segments.add(file);
+                continue;
+            }
+            others.add(file);
+
+            if (StorjUtil.isManifest(file.getName())) {
+                SyncFile syncFile = DB.get(file);
+                if (syncFile == null || !file.getId().equals(syncFile.getStorjId()) || !syncFile.isSegmented()) {
+                    unknownManifests = true;
+                }
+            }
+        }
+
+        // the segment lists are known only after a manifest is synced - wait for all of them
+        if (unknownManifests || segments.isEmpty()) {
+            return others.toArray(new File[others.size()]);
+        }
+
+        Set<String> referenced = new HashSet<>();
+        for (SyncFile syncFile : DB.getSegmentedFiles()) {
+            referenced.addAll(syncFile.getSegments());
+        }
+
+        try {
+            long lastUpload = 0;
+            for (File segment : segments) {
+                lastUpload = Math.max(lastUpload, getCloudTimestamp(segment));
+            }
+
+            long now = System.currentTimeMillis();
+            if (now - lastUpload < SEGMENT_IDLE_TIME) {
+                // a device is uploading segments - its manifest is not on the cloud yet
+                return others.toArray(new File[others.size()]);
+            }
+
+            for (File segment : segments) {
+                if (!referenced.contains(StorjUtil.getSegmentFingerprint(segment.getName()))
+                        && now - getCloudTimestamp(segment) > SEGMENT_GRACE_TIME) {
+                    logger.info("Deleting unreferenced segment {}", segment.getName());
+                    addTask(new DeleteOldVersionTask(gooboxBucket, segment));
+                }
+            }
+        } catch (ParseException e) {
+            logger.error("Cannot parse timestamp", e);
+        }
+
+        return others.toArray(new File[others.size()]);
+    }
+
+    private boolean isHot(String fileName) {
+        return App.getInstance().getFileWatcher().isHot(App.getInstance().getSyncDir().resolve(fileName));
+    }
+
+    private boolean isIgnored(String fileName) {
+        return App.getInstance().getIgnoreMatcher().isIgnored(App.getInstance().getSyncDir().resolve(fileName));
+    }
+
+    private void processPlaceholder(SyncFile syncFile, File file, Path path) throws IOException, ParseException {
+        if (placeholderChanged(syncFile, path)) {
+            if (Placeholder.isEmpty(path)) {
+                // only touched - the cloud version is the content
+                logger.info("Placeholder {} touched. Downloading it.", syncFile.getName());
+                addTask(new DownloadFileTask(gooboxBucket, file));
+            } else {
+                // written to without the content - it may hold some zeros of the placeholder,
+                // so it must not replace the cloud version
+                logger.warn("Placeholder {} written to. Keeping the cloud version.", syncFile.getName());
+                DB.setConflict(file, path);
+            }
+        } else if (cloudChanged(syncFile, file)) {
+            addForPlaceholder(file);
+        } else if (Placeholder.isAccessed(path)) {
+            // the state stays dehydrated until the download replaces the placeholder
+            logger.info("Placeholder {} opened. Downloading it.", syncFile.getName());
+            addTask(new DownloadFileTask(gooboxBucket, file));
+        }
+    }
+
+    private boolean placeholderChanged(SyncFile syncFile, Path path) throws IOException {
+        return localChanged(syncFile, path) || Files.size(path) != syncFile.getLocalSize();
+    }
+
+    private void evictColdFiles() {
+        long budget = App.getInstance().getCacheBudget();
+        if (budget <= 0) {
+            return;
+        }
+
+        List<SyncFile> files = DB.getEvictable();
+        long usage = 0;
+        for (SyncFile syncFile : files) {
+            usage += syncFile.getLocalSize();
+        }
+        if (usage <= budget) {
+            return;
+        }
+
+        files.sort((a, b) -> Long.compare(a.getLocalAccessTime(), b.getLocalAccessTime()));
+
+        int evicted = 0;
+        for (SyncFile syncFile : files) {
+            if (usage <= budget || evicted >= EVICT_BATCH) {
+                break;
+            }
+
+            Path path = App.getInstance().getSyncDir().resolve(syncFile.getName());
+            try {
+                if (!Files.exists(path) || Files.isDirectory(path)) {
+                    continue;
+                }
+                // only the candidates are checked for a use the DB does not know about yet
+                long accessTime = Files.readAttributes(path, BasicFileAttributes.class).lastAccessTime().toMillis();
+                if (accessTime > syncFile.getLocalAccessTime()) {
+                    DB.setAccessTime(syncFile.getName(), accessTime);
+                    continue;
+                }
+            } catch (IOException e) {
+                logger.error("I/O error", e);
+                continue;
+            }
+
+            tasks.add(new EvictFileTask(path));
+            usage -= syncFile.getLocalSize();
+            evicted++;
+        }
+
+        if (evicted > 0) {
+            logger.info("Local files exceed the cache budget. Evicting {} files.", evicted);
+        }
+    }
+
+    private void processPackedFile(SyncFile syncFile, Path path) throws IOException {
+        if (!cloudPacks.containsKey(syncFile.getPackId())) {
+            if (!unknownPacks) {
+                // the pack was deleted on the cloud
+                setForLocalDelete(path);
+            }
+            // otherwise wait for the new packs - the file may have been moved by a compaction
+        } else if (localChanged(syncFile, path)) {
+            addForUpload(path);
+        }
+    }
+
+    private boolean isPackable(Path path) throws IOException {
+        // files too big to share a pack with others are uploaded on their own
+        long threshold = Math.min(App.getInstance().getPackThreshold(), PACK_MAX_SIZE);
+        return threshold > 0 && !Files.isDirectory(path) && Files.size(path) < threshold;
+    }
+
+    private void uploadPacks() {
+        List<Path> batch = new ArrayList<>();
+        long batchSize = 0;
+
+        for (Path path : forPacking) {
+            try {
+                long size = Files.size(path);
+                if (!batch.isEmpty() && batchSize + size > PACK_MAX_SIZE) {
+                    tasks.add(new UploadPackTask(gooboxBucket, batch));
+                    batch = new ArrayList<>();
+                    batchSize = 0;
+                }
+                batch.add(path);
+                batchSize += size;
+            } catch (IOException e) {
+                logger.error("I/O error", e);
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            tasks.add(new UploadPackTask(gooboxBucket, batch));
+        }
+        forPacking.clear();
+    }
+
+    private File[] removeStaleVersions(File[] files) {
+        Map<String, File> current = new LinkedHashMap<>();
+
+        for (File file : files) {
+            String name = StorjUtil.getLogicalName(file.getName());
+            File other = current.get(name);
+            if (other == null) {
+                current.put(name, file);
+                continue;
+            }
+
+            // an interrupted staged upload left two versions - keep the newer one
+            // (the bridge timestamps have a fixed format and compare lexicographically)
+            File stale = file;
+            if (file.getCreated().compareTo(other.getCreated()) > 0) {
+                current.put(name, file);
+                stale = other;
+            }
+            logger.info("Found stale version {} of {}", stale.getName(), name);
+            addTask(new DeleteOldVersionTask(gooboxBucket, stale));
+        }
+
+        return current.values().toArray(new File[current.size()]);
+    }
+
     private File getStorjFile(String name, File[] files) {
         for (File file : files) {
             if (DB.getName(file).toString().equals(name)) {
@@ -201,7 +564,16 @@ public class CheckStateTask implements Runnable {
         while (!stack.isEmpty()) {
             try (DirectoryStream<Path> stream = Files.newDirectoryStream(stack.pop())) {
                 for (Path path : stream) {
-                    if (Files.isDirectory(path)) {
+                    if (App.getInstance().getStagingArea().contains(path)) {
+                        // downloads in progress
+                        continue;
+                    }
+                    boolean dir = Files.isDirectory(path);
+                    if (App.getInstance().getIgnoreMatcher().isIgnored(path, dir)) {
+                        // excluded subtrees are not walked at all
+                        continue;
+                    }
+                    if (dir) {
                         stack.push(path);
                     }
                     paths.add(path);
@@ -224,7 +596,20 @@ public class CheckStateTask implements Runnable {
     }
 
     private long getCloudTimestamp(File file) throws ParseException {
-        return StorjUtil.getTime(file.getCreated());
+        return StorjUtil.getCreatedTime(file);
+    }
+
+    private long getCloudSize(File file) {
+        String fingerprint = StorjUtil.getRefFingerprint(file.getName());
+        if (fingerprint != null) {
+            DedupEntry entry = DB.getDedupEntry(fingerprint);
+            return (entry == null) ? -1 : entry.getSize();
+        }
+        if (Codec.of(file.getName()) != Codec.NONE || StorjUtil.isManifest(file.getName())) {
+            // the encoded size says nothing about the local size
+            return -1;
+        }
+        return file.getSize();
     }
 
     private long getLocalTimestamp(Path path) throws IOException {
@@ -244,7 +629,7 @@ public class CheckStateTask implements Runnable {
         // TODO #29 check HMAC instead of size
         if (file.isDirectory() && Files.isDirectory(path)) {
             DB.setSynced(file, path);
-        } else if (file.getSize() == Files.size(path)) {
+        } else if (getCloudSize(file) == Files.size(path)) {
             DB.setSynced(file, path);
         } else if (getCloudTimestamp(file) < getLocalTimestamp(path)) {
             addForUpload(file, path);
@@ -253,24 +638,94 @@ public class CheckStateTask implements Runnable {
         }
     }
 
+    private void addTask(RetryableTask task) {
+        String fileName = task.getFileName();
+        if (App.getInstance().getRetryQueue().isScheduled(fileName) || tasks.isPending(fileName)
+                || App.getInstance().getTaskExecutor().isRunning(fileName)) {
+            // a task for the file is already waiting in the retry queue, the task queue or the executor
+            return;
+        }
+        tasks.add(task);
+    }
+
     private void addForDownload(File file) {
+        if (App.getInstance().isPlaceholders() && !file.isDirectory()) {
+            addForPlaceholder(file);
+            return;
+        }
         DB.addForDownload(file);
-        tasks.add(new DownloadFileTask(gooboxBucket, file));
+        addTask(new DownloadFileTask(gooboxBucket, file));
+    }
+
+    private void addForPlaceholder(File file) {
+        // the size of encoded content is not known until it is downloaded
+        tasks.add(new CreatePlaceholderTask(file, Math.max(getCloudSize(file), 0)));
     }
 
     private void addForDownload(File file, Path path) throws IOException {
         DB.addForDownload(file, path);
-        tasks.add(new DownloadFileTask(gooboxBucket, file));
+        addTask(new DownloadFileTask(gooboxBucket, file));
     }
 
     private void addForUpload(Path path) throws IOException {
+        if (deferUpload(path)) {
+            return;
+        }
         DB.addForUpload(path);
-        tasks.add(new UploadFileTask(gooboxBucket, path));
+        if (!isPackable(path)) {
+            addTask(new UploadFileTask(gooboxBucket, path));
+        } else if (!App.getInstance().getRetryQueue().isScheduled(StorjUtil.getStorjName(path))) {
+            forPacking.add(path);
+        }
     }
 
     private void addForUpload(File file, Path path) throws IOException {
+        if (deferUpload(path)) {
+            return;
+        }
         DB.addForUpload(file, path);
-        tasks.add(new UploadFileTask(gooboxBucket, path));
+        addTask(new UploadFileTask(gooboxBucket, path));
+    }
+
+    // only a plain local change may be uploaded while the file is hot - anything else is resolved once it is quiet
+    private boolean canSnapshot(File file) {
+        if (!file.isDecrypted() || !DB.contains(file)) {
+            return false;
+        }
+        SyncFile syncFile = DB.get(file);
+        try {
+            return !cloudChanged(syncFile, file) && syncFile.getState() != SyncState.FOR_DOWNLOAD
+                    && !syncFile.getState().isDehydrated();
+        } catch (ParseException e) {
+            logger.error("Cannot parse timestamp", e);
+            return false;
+        }
+    }
+
+    private void addForSnapshot(File file, Path path) throws IOException {
+        FileWatcher watcher = App.getInstance().getFileWatcher();
+        if (!App.getInstance().isSnapshots() || watcher.getHotTime(path) < SNAPSHOT_AFTER
+                || !Files.isRegularFile(path)) {
+            return;
+        }
+
+        logger.info("{} is being written for too long - uploading a snapshot", StorjUtil.getStorjName(path));
+        if (file != null) {
+            DB.addForUpload(file, path);
+        } else {
+            DB.addForUpload(path);
+        }
+        addTask(new UploadFileTask(gooboxBucket, path, true));
+        watcher.snapshotTaken(path);
+    }
+
+    private boolean deferUpload(Path path) {
+        if (App.getInstance().getBurstTracker().deferUpload(path)) {
+            // rewritten too often - the next checks upload it once it calms down
+            logger.info("Deferring upload of busy file {}", StorjUtil.getStorjName(path));
+            return true;
+        }
+        return false;
     }
 
     private void setForCloudDelete(File file) {
@@ -290,7 +745,7 @@ public class CheckStateTask implements Runnable {
 
     private void addForCloudCreateDir(Path path) throws IOException {
         DB.addForCloudCreateDir(path);
-        tasks.add(new CreateCloudDirTask(gooboxBucket, path));
+        addTask(new CreateCloudDirTask(gooboxBucket, path));
     }
 
     private void cleanDeletedFilesFromDB(File[] files, List<Path> localPaths) {
@@ -298,7 +753,12 @@ public class CheckStateTask implements Runnable {
             String fileName = syncFile.getName();
             File storjFile = getStorjFile(fileName, files);
             Path localPath = getLocalPath(fileName, localPaths);
-            if (storjFile == null && localPath == null) {
+            if (storjFile == null && localPath == null && !isHot(fileName)) {
+                if (syncFile.isPacked() && cloudPacks.containsKey(syncFile.getPackId())) {
+                    // the member stays in the pack until it is compacted - remembered in case the compaction fails
+                    DB.addDeletedPackMember(syncFile.getPackId());
+                    addTask(new CompactPackTask(gooboxBucket, cloudPacks.get(syncFile.getPackId())));
+                }
                 DB.remove(fileName);
             }
         }
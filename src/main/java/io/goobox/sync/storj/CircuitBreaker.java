@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class CircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private int failureThreshold;
+    private long baseOpenTime;
+    private long maxOpenTime;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long openTime;
+    private long openUntil;
+    private Object probe;
+
+    public CircuitBreaker() {
+        this(Integer.getInteger("goobox.breaker.failureThreshold", 5),
+                Long.getLong("goobox.breaker.openTime", 30000),
+                Long.getLong("goobox.breaker.maxOpenTime", 600000));
+    }
+
+    public CircuitBreaker(int failureThreshold, long baseOpenTime, long maxOpenTime) {
+        this.failureThreshold = failureThreshold;
+        this.baseOpenTime = baseOpenTime;
+        this.maxOpenTime = maxOpenTime;
+        this.openTime = baseOpenTime;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized boolean allowRequest(Object request) {
+        switch (state) {
+        case CLOSED:
+            return true;
+        case OPEN:
+            if (System.currentTimeMillis() < openUntil) {
+                return false;
+            }
+            logger.info("Probing the bridge after {} ms pause", openTime);
+            state = State.HALF_OPEN;
+            probe = request;
+            return true;
+        case HALF_OPEN:
+        default:
+            // only one probe at a time
+            return false;
+        }
+    }
+
+    public synchronized long getRemainingOpenTime() {
+        if (state == State.CLOSED) {
+            return 0;
+        } else if (state == State.HALF_OPEN) {
+            // wait for the probe to finish
+            return baseOpenTime;
+        }
+        return Math.max(0, openUntil - System.currentTimeMillis());
+    }
+
+    public synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            logger.info("Bridge is back - resuming bridge requests");
+        }
+        state = State.CLOSED;
+        failures = 0;
+        openTime = baseOpenTime;
+        probe = null;
+    }
+
+    public synchronized void onFailure() {
+        failures++;
+        if (state == State.HALF_OPEN) {
+            // the probe failed - stay open longer
+            openTime = Math.min(openTime * 2, maxOpenTime);
+            open();
+        } else if (state == State.CLOSED && failures >= failureThreshold) {
+            open();
+        }
+    }
+
+    public synchronized void onRequestFinished(Object request) {
+        if (state == State.HALF_OPEN && request == probe) {
+            // the probe finished without reaching the bridge - let the next request probe
+            state = State.OPEN;
+            openUntil = System.currentTimeMillis();
+            probe = null;
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openUntil = System.currentTimeMillis() + openTime;
+        probe = null;
+        logger.warn("{} consecutive bridge failures - pausing bridge requests for {} ms", failures, openTime);
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.storj.libstorj.File;
+
+public class CloudFileCache {
+
+    // other clients may change the bucket - do not trust the cache for longer than this
+    private static final long MAX_AGE = Long.getLong("goobox.cache.maxAge", 5 * 60 * 1000);
+
+    private Map<String, File> files = new ConcurrentHashMap<>();
+    private volatile long refreshTime;
+
+    public void refresh(File[] files) {
+        this.files.clear();
+        for (File file : files) {
+            this.files.put(StorjUtil.getLogicalName(file.getName()), file);
+        }
+        refreshTime = System.currentTimeMillis();
+    }
+
+    public boolean isFresh() {
+        return refreshTime != 0 && System.currentTimeMillis() - refreshTime < MAX_AGE;
+    }
+
+    // only meaningful if the cache is fresh - null means there is no such file on the cloud
+    public File get(String name) {
+        return files.get(name);
+    }
+
+    public void put(File file) {
+        files.put(StorjUtil.getLogicalName(file.getName()), file);
+    }
+
+    public void remove(String name) {
+        files.remove(name);
+    }
+
+    public void invalidate() {
+        refreshTime = 0;
+        files.clear();
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public enum Codec {
+
+    NONE(""),
+    GZIP(".goobox-gzip");
+
+    // appended to the cloud name in the encoded folder, so every device knows how to decode the content
+    private String suffix;
+
+    private Codec(String suffix) {
+        this.suffix = suffix;
+    }
+
+    public String getSuffix() {
+        return suffix;
+    }
+
+    public String getStorjName(String logicalName) {
+        return (this == NONE) ? logicalName : StorjUtil.ENCODED_DIR + logicalName + suffix;
+    }
+
+    public OutputStream encode(OutputStream out) throws IOException {
+        return (this == GZIP) ? new GZIPOutputStream(out, 64 * 1024) : out;
+    }
+
+    public InputStream decode(InputStream in) throws IOException {
+        return (this == GZIP) ? new GZIPInputStream(in, 64 * 1024) : in;
+    }
+
+    public static Codec of(String storjName) {
+        String name = StorjUtil.getContentName(storjName);
+        if (!StorjUtil.isEncoded(name)) {
+            // a user file with a codec suffix is synced as it is
+            return NONE;
+        }
+        for (Codec codec : values()) {
+            if (codec != NONE && name.endsWith(codec.suffix)) {
+                return codec;
+            }
+        }
+        return NONE;
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.goobox.sync.storj.db.CloudPack;
+import io.goobox.sync.storj.db.DB;
+import io.goobox.sync.storj.db.SyncFile;
+import io.goobox.sync.storj.pack.PackMember;
+import io.goobox.sync.storj.pack.PackReader;
+import io.goobox.sync.storj.pack.PackWriter;
+import io.storj.libstorj.Bucket;
+import io.storj.libstorj.File;
+
+public class CompactPackTask extends PackTask {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompactPackTask.class);
+
+    private File pack;
+
+    public CompactPackTask(Bucket bucket, File pack) {
+        super(bucket);
+        this.pack = pack;
+    }
+
+    @Override
+    public String getFileName() {
+        return pack.getName();
+    }
+
+    @Override
+    public void run() {
+        try {
+            List<SyncFile> live = DB.getPackMembers(pack.getId());
+            if (!live.isEmpty() && !rewrite(live)) {
+                return;
+            }
+
+            // no member refers to the old pack anymore
+            deletePack(pack);
+        } catch (IOException e) {
+            logger.error("I/O error", e);
+        } catch (InterruptedException e) {
+            // interrupted - stop execution
+            return;
+        }
+    }
+
+    private boolean rewrite(List<SyncFile> live) throws IOException, InterruptedException {
+        logger.info("Compacting pack {} with {} live members", pack.getName(), live.size());
+
+        StagingArea staging = App.getInstance().getStagingArea();
+        Path oldPath = downloadPack(pack);
+        if (oldPath == null) {
+            return false;
+        }
+
+        String packName = StorjUtil.newPackName();
+        Path newPath = getStagingPath(packName);
+        try {
+            PackWriter writer = new PackWriter(newPath);
+            try (PackReader reader = new PackReader(oldPath)) {
+                for (SyncFile syncFile : live) {
+                    PackMember member = reader.getIndex().get(syncFile.getName());
+                    if (member != null) {
+                        writer.add(reader, member);
+                    }
+                }
+            } finally {
+                writer.close();
+                staging.discard(oldPath);
+            }
+
+            File file = uploadPack(newPath, packName);
+            if (file == null) {
+                return false;
+            }
+
+            CloudPack newPack = DB.addPack(file, writer.getIndex().getMembers().size());
+            for (PackMember member : writer.getIndex().getMembers()) {
+                DB.movePackMember(member.getName(), pack.getId(), newPack, member.getOffset(), member.getLength());
+            }
+            DB.commit();
+            return true;
+        } finally {
+            staging.discard(newPath);
+        }
+    }
+
+}
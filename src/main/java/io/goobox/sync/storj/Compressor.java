@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class Compressor {
+
+    private static final Logger logger = LoggerFactory.getLogger(Compressor.class);
+
+    private static final long MIN_SIZE = 4 * 1024;
+    private static final int SAMPLE_SIZE = 64 * 1024;
+    // bits per byte - random or already compressed data is close to 8
+    private static final double MAX_ENTROPY = 7.0;
+    // keep the original if compression saves less than this share
+    private static final double MIN_SAVING = 0.1;
+
+    private static final Set<String> COMPRESSED = new HashSet<>(Arrays.asList(
+            "7z", "aac", "apk", "avi", "bz2", "docx", "flac", "gif", "gz", "heic", "jar", "jpeg", "jpg", "m4a",
+            "mkv", "mov", "mp3", "mp4", "odp", "ods", "odt", "ogg", "png", "pptx", "rar", "tgz", "webm", "webp",
+            "xlsx", "xz", "zip", "zst"));
+
+    private static final Set<String> TEXT = new HashSet<>(Arrays.asList(
+            "c", "cpp", "css", "csv", "h", "htm", "html", "java", "js", "json", "log", "md", "py", "sql", "svg",
+            "tsv", "txt", "xml", "yaml", "yml"));
+
+    public static boolean isEligible(Path path) throws IOException {
+        if (Files.size(path) < MIN_SIZE) {
+            return false;
+        }
+
+        String extension = getExtension(path);
+        if (COMPRESSED.contains(extension)) {
+            return false;
+        }
+        if (TEXT.contains(extension)) {
+            return true;
+        }
+        return getSampleEntropy(path) < MAX_ENTROPY;
+    }
+
+    // returns the compressed temp file or null if compression does not pay off
+    public static Path compress(Path path, Codec codec, Path tempDir) throws IOException {
+        return compress(path, codec, tempDir, null);
+    }
+
+    // the digest, if given, is updated with the original content read for the compression
+    public static Path compress(Path path, Codec codec, Path tempDir, MessageDigest digest) throws IOException {
+        Path compressed = Files.createTempFile(tempDir, "compress", null);
+        try {
+            try (InputStream in = Files.newInputStream(path);
+                    OutputStream out = codec.encode(Files.newOutputStream(compressed))) {
+                byte[] buffer = new byte[64 * 1024];
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    if (digest != null) {
+                        digest.update(buffer, 0, n);
+                    }
+                    out.write(buffer, 0, n);
+                }
+            }
+
+            long size = Files.size(path);
+            long compressedSize = Files.size(compressed);
+            if (compressedSize > size * (1 - MIN_SAVING)) {
+                logger.debug("Compression of {} saves too little ({} of {} bytes)", path, compressedSize, size);
+                Files.delete(compressed);
+                return null;
+            }
+
+            logger.info("Compressed {} from {} to {} bytes", path.getFileName(), size, compressedSize);
+            return compressed;
+        } catch (IOException e) {
+            Files.deleteIfExists(compressed);
+            throw e;
+        }
+    }
+
+    // returns the fingerprint of the decoded content
+    public static String decompress(Path compressed, Codec codec, Path target) throws IOException {
+        MessageDigest digest = Fingerprint.newDigest();
+        try (InputStream in = codec.decode(Files.newInputStream(compressed));
+                OutputStream out = Files.newOutputStream(target)) {
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+                out.write(buffer, 0, n);
+            }
+        }
+        return Fingerprint.toHex(digest.digest());
+    }
+
+    static double getSampleEntropy(Path path) throws IOException {
+        byte[] sample = new byte[SAMPLE_SIZE];
+        int length = 0;
+        try (InputStream in = Files.newInputStream(path)) {
+            int n;
+            while (length < sample.length && (n = in.read(sample, length, sample.length - length)) > 0) {
+                length += n;
+            }
+        }
+        return getEntropy(sample, length);
+    }
+
+    static double getEntropy(byte[] data, int length) {
+        if (length == 0) {
+            return 0;
+        }
+
+        int[] counts = new int[256];
+        for (int i = 0; i < length; i++) {
+            counts[data[i] & 0xff]++;
+        }
+
+        double entropy = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                double p = (double) count / length;
+                entropy -= p * Math.log(p);
+            }
+        }
+        return entropy / Math.log(2);
+    }
+
+    private static String getExtension(Path path) {
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return (dot < 0) ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ConcurrencyController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrencyController.class);
+
+    // weight of the last sample in the moving averages
+    private static final double ALPHA = 0.2;
+    // a completion this many times slower than average signals an overloaded bridge
+    private static final double LATENCY_TOLERANCE = 3;
+    // latencies below this are too short to signal overload
+    private static final long MIN_SIGNIFICANT_LATENCY = 1000;
+    // no increase while more than this share of the requests fail temporarily
+    private static final double MAX_ERROR_RATE = 0.1;
+
+    private String name;
+    private int floor;
+    private int ceiling;
+
+    private double limit;
+    // an upper bound set from outside, 0 if none
+    private int cap;
+    private int inFlight;
+    private double avgLatency;
+    private double errorRate;
+    private long lastDecrease;
+
+    public ConcurrencyController(String name, int floor, int ceiling) {
+        this.name = name;
+        this.floor = Math.max(1, floor);
+        this.ceiling = Math.max(this.floor, ceiling);
+        this.limit = this.floor;
+    }
+
+    public static ConcurrencyController load(String name, int floor, int ceiling) {
+        // e.g. -Dgoobox.concurrency.transfers.max=8
+        String prefix = "goobox.concurrency." + name + ".";
+        return new ConcurrencyController(name,
+                Integer.getInteger(prefix + "min", floor),
+                Integer.getInteger(prefix + "max", ceiling));
+    }
+
+    public synchronized int getLimit() {
+        return (cap > 0) ? Math.min(cap, (int) limit) : (int) limit;
+    }
+
+    public synchronized void setCap(int cap) {
+        this.cap = Math.max(0, cap);
+        notifyAll();
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized long getAverageLatency() {
+        return (long) avgLatency;
+    }
+
+    public synchronized double getErrorRate() {
+        return errorRate;
+    }
+
+    public synchronized void acquire() throws InterruptedException {
+        while (inFlight >= getLimit()) {
+            wait();
+        }
+        inFlight++;
+    }
+
+    public synchronized void release(long latency, boolean temporaryError) {
+        inFlight--;
+
+        errorRate = ALPHA * (temporaryError ? 1 : 0) + (1 - ALPHA) * errorRate;
+
+        if (temporaryError) {
+            decrease(latency);
+        } else if (avgLatency > 0 && latency > MIN_SIGNIFICANT_LATENCY
+                && latency > LATENCY_TOLERANCE * avgLatency) {
+            decrease(latency);
+        } else if (errorRate < MAX_ERROR_RATE) {
+            increase();
+        }
+
+        avgLatency = (avgLatency == 0) ? latency : ALPHA * latency + (1 - ALPHA) * avgLatency;
+
+        notifyAll();
+    }
+
+    public synchronized void awaitIdle() throws InterruptedException {
+        while (inFlight > 0) {
+            wait();
+        }
+    }
+
+    private void increase() {
+        int old = getLimit();
+        // additive increase - about one more slot after a full round of successful requests
+        limit = Math.min(ceiling, limit + 1 / limit);
+        if (getLimit() != old) {
+            logger.debug("Concurrency limit for {} increased to {}", name, getLimit());
+        }
+    }
+
+    private void decrease(long latency) {
+        long now = System.currentTimeMillis();
+        if (now - lastDecrease < Math.max(latency, avgLatency)) {
+            // already decreased for the requests that were in flight together with this one
+            return;
+        }
+        lastDecrease = now;
+
+        // multiplicative decrease
+        limit = Math.max(floor, limit / 2);
+        logger.info("Concurrency limit for {} decreased to {}", name, getLimit());
+    }
+
+}
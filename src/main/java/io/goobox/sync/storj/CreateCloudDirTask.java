@@ -32,188 +32,194 @@ import io.storj.libstorj.GetFileIdCallback;
 import io.storj.libstorj.Storj;
 import io.storj.libstorj.UploadFileCallback;
 
-public class CreateCloudDirTask implements Runnable {
+public class CreateCloudDirTask extends RetryableTask {
 
     private static final Logger logger = LoggerFactory.getLogger(CreateCloudDirTask.class);
 
     private Bucket bucket;
     private Path path;
+    private String dirName;
+
+    // error code of the last temporary error or 0 if no retry is needed
+    private int retryError;
 
     public CreateCloudDirTask(Bucket bucket, Path path) {
         this.bucket = bucket;
         this.path = path;
+        this.dirName = StorjUtil.getStorjName(path);
+    }
+
+    @Override
+    public String getFileName() {
+        return dirName;
     }
 
     @Override
     public void run() {
+        retryError = 0;
+
         try {
-            String dirName = StorjUtil.getStorjName(path);
-            String dirId = getDirId(dirName);
-            if (dirId != null) {
-                setSynced(dirId);
+            CloudFileCache cache = App.getInstance().getCloudFileCache();
+            if (cache.isFresh()) {
+                // the last listing already knows if the dir exists
+                File dir = cache.get(dirName);
+                if (dir != null) {
+                    DB.setSynced(dir, path);
+                    DB.commit();
+                    completed();
+                } else {
+                    createDir();
+                }
             } else {
-                final Path tmp = createTempDirFile();
-
-                logger.info("Creating cloud directory {}", dirName);
-
-                final boolean repeat[] = { true };
-
-                while (repeat[0]) {
-                    final CountDownLatch latch = new CountDownLatch(1);
-
-                    App.getInstance().getStorj().uploadFile(bucket, dirName, tmp.toString(), new UploadFileCallback() {
-                        @Override
-                        public void onProgress(String filePath, double progress, long uploadedBytes, long totalBytes) {
-                            String progressMessage = String.format("  %3d%% %15d/%d bytes",
-                                    (int) (progress * 100), uploadedBytes, totalBytes);
-                            logger.info(progressMessage);
-                        }
-
-                        @Override
-                        public void onComplete(final String filePath, final File file) {
-                            try {
-                                DB.setSynced(file, path);
-                                DB.commit();
-
-                                deleteTempDirFile(tmp);
-                            } catch (IOException e) {
-                                logger.error("I/O error", e);
-                            }
-
-                            repeat[0] = false;
-                            latch.countDown();
-                        }
-
-                        @Override
-                        public void onError(String filePath, int code, String message) {
-                            if (StorjUtil.isTemporaryError(code)) {
-                                logger.error(
-                                        "Creating cloud directory failed due to temporary error: {} ({}). Trying again.",
-                                        message, code);
-                            } else if (code == Storj.STORJ_BRIDGE_BUCKET_FILE_EXISTS) {
-                                // ignore it - this happens sometimes after farmer request error
-                            } else {
-                                logger.error("Creating cloud directory failed: {} ({})", message, code);
-
-                                try {
-                                    DB.setUploadFailed(path);
-                                    DB.commit();
-
-                                    deleteTempDirFile(tmp);
-                                } catch (IOException e) {
-                                    logger.error("I/O error", e);
-                                }
-
-                                repeat[0] = false;
-                            }
-
-                            latch.countDown();
-                        }
-                    });
-
-                    latch.await();
-
-                    if (repeat[0]) {
-                        // error - wait 3 seconds before trying again
-                        Thread.sleep(3000);
+                String dirId = getDirId();
+                if (retryError == 0) {
+                    if (dirId != null) {
+                        setSynced(dirId);
+                    } else {
+                        createDir();
                     }
                 }
             }
+
+            if (retryError != 0 && !retryLater(retryError)) {
+                DB.setUploadFailed(path);
+                DB.commit();
+            }
         } catch (IOException e) {
-            logger.error("Failed creating temp file", e);
+            logger.error("I/O error", e);
         } catch (InterruptedException e) {
             // interrupted - stop execution
             return;
         }
     }
 
-    private String getDirId(final String dirName) throws InterruptedException {
-        final String result[] = { null };
-        final boolean repeat[] = { true };
+    private void createDir() throws IOException, InterruptedException {
+        final Path tmp = createTempDirFile();
 
-        while (repeat[0]) {
-            final CountDownLatch latch = new CountDownLatch(1);
+        logger.info("Creating cloud directory {}", dirName);
 
-            App.getInstance().getStorj().getFileId(bucket, dirName, new GetFileIdCallback() {
-                @Override
-                public void onFileIdReceived(String fileName, String fileId) {
-                    result[0] = fileId;
-                    repeat[0] = false;
-                    latch.countDown();
-                }
+        final CountDownLatch latch = new CountDownLatch(1);
 
-                @Override
-                public void onError(String fileName, int code, String message) {
-                    if (code == Storj.HTTP_NOT_FOUND) {
-                        // no such dir
-                        repeat[0] = false;
-                    } else if (StorjUtil.isTemporaryError(code)) {
-                        logger.error(
-                                "Error checking if directory with name {} exists due to temporary error: {} ({}). Trying again.",
-                                dirName, message, code);
-                    } else {
-                        logger.error(
-                                "Error checking if directory with name {} exists: {} ({})",
-                                dirName, message, code);
-                        repeat[0] = false;
-                    }
-                    latch.countDown();
-                }
-            });
-
-            latch.await();
-
-            if (repeat[0]) {
-                // error - wait 3 seconds before trying again
-                Thread.sleep(3000);
+        App.getInstance().getStorj().uploadFile(bucket, dirName, tmp.toString(), new UploadFileCallback() {
+            @Override
+            public void onProgress(String filePath, double progress, long uploadedBytes, long totalBytes) {
+                String progressMessage = String.format("  %3d%% %15d/%d bytes",
+                        (int) (progress * 100), uploadedBytes, totalBytes);
+                logger.info(progressMessage);
             }
-        }
 
-        return result[0];
-    }
+            @Override
+            public void onComplete(final String filePath, final File file) {
+                try {
+                    DB.setSynced(file, path);
+                    DB.commit();
+                } catch (IOException e) {
+                    logger.error("I/O error", e);
+                }
 
-    private void setSynced(String dirId) throws InterruptedException {
-        final boolean repeat[] = { true };
+                App.getInstance().getCloudFileCache().put(file);
+                succeeded();
+                latch.countDown();
+            }
 
-        while (repeat[0]) {
-            final CountDownLatch latch = new CountDownLatch(1);
+            @Override
+            public void onError(String filePath, int code, String message) {
+                App.getInstance().getCloudFileCache().invalidate();
+                if (StorjUtil.isTemporaryError(code)) {
+                    logger.error(
+                            "Creating cloud directory failed due to temporary error: {} ({}). Trying again later.",
+                            message, code);
+                    retryError = code;
+                } else if (code == Storj.STORJ_BRIDGE_BUCKET_FILE_EXISTS) {
+                    // ignore it - this happens sometimes after farmer request error
+                    // and the next state check will find the existing dir
+                } else {
+                    logger.error("Creating cloud directory failed: {} ({})", message, code);
 
-            App.getInstance().getStorj().getFile(bucket, dirId, new GetFileCallback() {
-                @Override
-                public void onFileReceived(File dir) {
                     try {
-                        DB.setSynced(dir, path);
+                        DB.setUploadFailed(path);
                         DB.commit();
                     } catch (IOException e) {
                         logger.error("I/O error", e);
                     }
-                    repeat[0] = false;
-                    latch.countDown();
                 }
 
-                @Override
-                public void onError(String fileId, int code, String message) {
-                    if (StorjUtil.isTemporaryError(code)) {
-                        logger.error(
-                                "Error getting directory metadata for {} due to temporary error: {} ({}). Trying again.",
-                                dirId, message, code);
-                    } else {
-                        logger.error(
-                                "Error getting directory metadata for {}: {} ({})",
-                                dirId, message, code);
-                        repeat[0] = false;
-                    }
-                    latch.countDown();
+                latch.countDown();
+            }
+        });
+
+        latch.await();
+
+        deleteTempDirFile(tmp);
+    }
+
+    private String getDirId() throws InterruptedException {
+        final String result[] = { null };
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        App.getInstance().getStorj().getFileId(bucket, dirName, new GetFileIdCallback() {
+            @Override
+            public void onFileIdReceived(String fileName, String fileId) {
+                result[0] = fileId;
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(String fileName, int code, String message) {
+                if (code == Storj.HTTP_NOT_FOUND) {
+                    // no such dir
+                } else if (StorjUtil.isTemporaryError(code)) {
+                    logger.error(
+                            "Error checking if directory with name {} exists due to temporary error: {} ({}). Trying again later.",
+                            dirName, message, code);
+                    retryError = code;
+                } else {
+                    logger.error(
+                            "Error checking if directory with name {} exists: {} ({})",
+                            dirName, message, code);
                 }
-            });
+                latch.countDown();
+            }
+        });
+
+        latch.await();
+
+        return result[0];
+    }
 
-            latch.await();
+    private void setSynced(final String dirId) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        App.getInstance().getStorj().getFile(bucket, dirId, new GetFileCallback() {
+            @Override
+            public void onFileReceived(File dir) {
+                try {
+                    DB.setSynced(dir, path);
+                    DB.commit();
+                } catch (IOException e) {
+                    logger.error("I/O error", e);
+                }
+                succeeded();
+                latch.countDown();
+            }
 
-            if (repeat[0]) {
-                // error - wait 3 seconds before trying again
-                Thread.sleep(3000);
+            @Override
+            public void onError(String fileId, int code, String message) {
+                if (StorjUtil.isTemporaryError(code)) {
+                    logger.error(
+                            "Error getting directory metadata for {} due to temporary error: {} ({}). Trying again later.",
+                            dirId, message, code);
+                    retryError = code;
+                } else {
+                    logger.error(
+                            "Error getting directory metadata for {}: {} ({})",
+                            dirId, message, code);
+                }
+                latch.countDown();
             }
-        }
+        });
+
+        latch.await();
     }
 
     private Path createTempDirFile() throws IOException {
@@ -40,7 +40,9 @@ public class CreateLocalDirTask implements Runnable {
         logger.info("Creating local directory {}", storjDir.getName());
 
         try {
-            Path localDir = Files.createDirectories(App.getInstance().getSyncDir().resolve(storjDir.getName()));
+            Path localDir = App.getInstance().getSyncDir().resolve(storjDir.getName());
+            App.getInstance().getEchoRegistry().expectDirectory(localDir);
+            Files.createDirectories(localDir);
             logger.info("Locla directory created");
             DB.setSynced(storjDir, localDir);
             DB.commit();
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.goobox.sync.storj.db.DB;
+import io.goobox.sync.storj.segment.Manifest;
+import io.storj.libstorj.DownloadFileCallback;
+import io.storj.libstorj.File;
+
+public class CreatePlaceholderTask implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(CreatePlaceholderTask.class);
+
+    private File storjFile;
+    private long size;
+
+    public CreatePlaceholderTask(File storjFile, long size) {
+        this.storjFile = storjFile;
+        this.size = size;
+    }
+
+    @Override
+    public void run() {
+        String name = StorjUtil.getLogicalName(storjFile.getName());
+        logger.info("Creating placeholder {}", name);
+
+        try {
+            Path path = App.getInstance().getSyncDir().resolve(name);
+            Files.createDirectories(path.getParent());
+
+            // the size and the segments of a segmented file are in its manifest
+            Manifest manifest = null;
+            if (StorjUtil.isManifest(storjFile.getName())) {
+                manifest = downloadManifest();
+                if (manifest == null) {
+                    // the next check tries again
+                    return;
+                }
+            }
+
+            Placeholder.replace(path, (manifest != null) ? manifest.getSize() : size,
+                    StorjUtil.getCreatedTime(storjFile));
+            DB.setDehydrated(storjFile, path);
+            if (manifest != null) {
+                // the segment GC needs the segments of every manifest
+                DB.setSegments(path, manifest.getSegmentSize(), manifest.getSegments());
+            }
+            DB.commit();
+        } catch (Exception e) {
+            logger.error("Failed creating placeholder", e);
+        }
+    }
+
+    private Manifest downloadManifest() throws IOException, InterruptedException {
+        StagingArea staging = App.getInstance().getStagingArea();
+        Files.createDirectories(staging.getPath(storjFile).getParent());
+
+        final Path result[] = { null };
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        App.getInstance().getStorj().downloadFile(App.getInstance().getGooboxBucket(), storjFile,
+                new DownloadFileCallback() {
+                    @Override
+                    public void onProgress(String fileId, double progress, long downloadedBytes, long totalBytes) {
+                    }
+
+                    @Override
+                    public void onComplete(String fileId, String downloadPath) {
+                        result[0] = Paths.get(downloadPath);
+                        latch.countDown();
+                    }
+
+                    @Override
+                    public void onError(String fileId, int code, String message) {
+                        logger.error("Manifest download failed: {} ({})", message, code);
+                        latch.countDown();
+                    }
+                });
+
+        latch.await();
+
+        if (result[0] == null) {
+            return null;
+        }
+        try {
+            return Manifest.read(result[0]);
+        } finally {
+            staging.discard(result[0]);
+        }
+    }
+
+}
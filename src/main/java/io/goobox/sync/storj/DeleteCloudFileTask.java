@@ -26,7 +26,7 @@ import io.storj.libstorj.Bucket;
 import io.storj.libstorj.DeleteFileCallback;
 import io.storj.libstorj.File;
 
-public class DeleteCloudFileTask implements Runnable {
+public class DeleteCloudFileTask extends RetryableTask {
 
     private static final Logger logger = LoggerFactory.getLogger(DeleteCloudFileTask.class);
 
@@ -38,6 +38,11 @@ public class DeleteCloudFileTask implements Runnable {
         this.file = file;
     }
 
+    @Override
+    public String getFileName() {
+        return file.getName();
+    }
+
     @Override
     public void run() {
         logger.info("Deleting cloud {}", file.getName());
@@ -50,12 +55,20 @@ public class DeleteCloudFileTask implements Runnable {
                 logger.info("Cloud deletion successful");
                 DB.remove(file);
                 DB.commit();
+                App.getInstance().getCloudFileCache().remove(StorjUtil.getLogicalName(file.getName()));
+                succeeded();
                 latch.countDown();
             }
 
             @Override
             public void onError(String fileId, int code, String message) {
-                logger.error("Failed deleting on cloud: {} ({})", message, code);
+                App.getInstance().getCloudFileCache().invalidate();
+                if (StorjUtil.isTemporaryError(code) && retryLater(code)) {
+                    logger.error("Failed deleting on cloud due to temporary error: {} ({}). Trying again later.",
+                            message, code);
+                } else {
+                    logger.error("Failed deleting on cloud: {} ({})", message, code);
+                }
                 latch.countDown();
             }
         });
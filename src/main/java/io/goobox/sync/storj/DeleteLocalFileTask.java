@@ -41,6 +41,7 @@ public class DeleteLocalFileTask implements Runnable {
         logger.info("Deleting local {}", StorjUtil.getStorjName(path));
 
         try {
+            App.getInstance().getEchoRegistry().expectDeleted(path);
             Files.deleteIfExists(path);
             DB.remove(path);
             deleteParentIfEmpty();
@@ -58,6 +59,7 @@ public class DeleteLocalFileTask implements Runnable {
         Path parent = path.getParent();
         if (!parent.equals(App.getInstance().getSyncDir())) {
             try {
+                App.getInstance().getEchoRegistry().expectDeleted(parent);
                 Files.deleteIfExists(parent);
                 DB.remove(parent);
             } catch (IOException e) {
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.storj.libstorj.Bucket;
+import io.storj.libstorj.DeleteFileCallback;
+import io.storj.libstorj.File;
+import io.storj.libstorj.Storj;
+
+public class DeleteOldVersionTask extends RetryableTask {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeleteOldVersionTask.class);
+
+    private Bucket bucket;
+    private File file;
+
+    public DeleteOldVersionTask(Bucket bucket, File file) {
+        this.bucket = bucket;
+        this.file = file;
+    }
+
+    @Override
+    public String getFileName() {
+        return file.getName();
+    }
+
+    @Override
+    public void run() {
+        logger.info("Deleting old version {} on the cloud", file.getName());
+
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        // the sync DB already tracks the new version - only the cloud copy is removed
+        App.getInstance().getStorj().deleteFile(bucket, file, new DeleteFileCallback() {
+            @Override
+            public void onFileDeleted(String fileId) {
+                logger.info("Old version {} deleted", file.getName());
+                succeeded();
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(String fileId, int code, String message) {
+                if (code == Storj.HTTP_NOT_FOUND) {
+                    // already deleted
+                    succeeded();
+                } else if (StorjUtil.isTemporaryError(code) && retryLater(code)) {
+                    logger.error("Failed deleting old version due to temporary error: {} ({}). Trying again later.",
+                            message, code);
+                } else {
+                    // the next state check finds it again
+                    logger.error("Failed deleting old version: {} ({})", message, code);
+                }
+                latch.countDown();
+            }
+        });
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            // interrupted - stop execution
+            return;
+        }
+    }
+
+}
@@ -17,23 +17,35 @@
 package io.goobox.sync.storj;
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.goobox.sync.storj.db.DB;
+import io.goobox.sync.storj.db.SyncFile;
+import io.goobox.sync.storj.segment.Manifest;
+import io.goobox.sync.storj.segment.Segmenter;
 import io.storj.libstorj.Bucket;
 import io.storj.libstorj.DownloadFileCallback;
 import io.storj.libstorj.File;
 
-public class DownloadFileTask implements Runnable {
+public class DownloadFileTask extends RetryableTask {
 
     private static final Logger logger = LoggerFactory.getLogger(DownloadFileTask.class);
 
+    // wait for another download of the same content - its result is copied then
+    private static final long BUSY_DELAY = Long.getLong("goobox.download.busyDelay", 5000);
+
     private Bucket bucket;
     private File file;
 
@@ -42,76 +54,391 @@ public class DownloadFileTask implements Runnable {
         this.file = file;
     }
 
+    @Override
+    public String getFileName() {
+        return file.getName();
+    }
+
+    @Override
+    public boolean isTransfer() {
+        return true;
+    }
+
     @Override
     public void run() {
+        long wait = App.getInstance().getDownloadLimiter().getWaitTime();
+        if (wait > 0) {
+            logger.info("Download bandwidth limit reached. Postponing {} for {} ms.", file.getName(), wait);
+            postpone(wait);
+            return;
+        }
+
         logger.info("Downloading file {}", file.getName());
 
+        final Path localPath = App.getInstance().getSyncDir().resolve(StorjUtil.getLogicalName(file.getName()));
+        final StagingArea staging = App.getInstance().getStagingArea();
+        final String fingerprint = StorjUtil.getRefFingerprint(file.getName());
+
+        if (StorjUtil.isManifest(file.getName())) {
+            try {
+                downloadSegmented(localPath);
+            } catch (IOException e) {
+                logger.error("I/O error", e);
+            } catch (InterruptedException e) {
+                // interrupted - stop execution
+            }
+            return;
+        }
+
+        // a deduplicated file is a reference to content stored under its fingerprint
+        File source = file;
+        if (fingerprint != null) {
+            try {
+                if (copyLocal(fingerprint, localPath)) {
+                    return;
+                }
+            } catch (IOException e) {
+                logger.error("I/O error", e);
+            }
+
+            source = App.getInstance().getCloudFileCache().get(StorjUtil.getBlobName(fingerprint));
+            if (source == null) {
+                logger.error("Content of {} not found on the cloud", file.getName());
+                if (!retryAfterListing()) {
+                    setDownloadFailed(localPath);
+                }
+                return;
+            }
+        }
+
+        final Path stagingPath = staging.getPath(source);
+        if (!staging.claim(stagingPath)) {
+            logger.info("Content of {} is being downloaded for another file. Postponing.", file.getName());
+            postpone(BUSY_DELAY);
+            return;
+        }
+        if (fingerprint != null) {
+            App.getInstance().getDedupStats().miss();
+        }
+
+        try {
+            download(source, localPath, stagingPath, fingerprint);
+        } finally {
+            staging.release(stagingPath);
+        }
+    }
+
+    private void download(File source, final Path localPath, final Path stagingPath, final String fingerprint) {
+        final StagingArea staging = App.getInstance().getStagingArea();
+
         try {
-            Files.createDirectories(App.getInstance().getSyncDir().resolve(file.getName()).getParent());
+            Files.createDirectories(localPath.getParent());
+            Files.createDirectories(stagingPath.getParent());
         } catch (IOException e) {
             logger.error("Failed creating parent directories", e);
             return;
         }
 
-        final boolean repeat[] = { true };
+        // the file is published in the sync dir only when complete
+        DB.setStaging(file, stagingPath);
+        DB.commit();
 
-        while (repeat[0]) {
-            final CountDownLatch latch = new CountDownLatch(1);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final BandwidthLimiter limiter = App.getInstance().getDownloadLimiter();
+        final long transferred[] = { 0 };
+        transferStarted();
 
-            App.getInstance().getStorj().downloadFile(bucket, file, new DownloadFileCallback() {
-                @Override
-                public void onProgress(String fileId, double progress, long downloadedBytes, long totalBytes) {
-                    String progressMessage = String.format("  %3d%% %15d/%d bytes",
-                            (int) (progress * 100), downloadedBytes, totalBytes);
-                    logger.info(progressMessage);
-                }
+        App.getInstance().getStorj().downloadFile(bucket, source, new DownloadFileCallback() {
+            @Override
+            public void onProgress(String fileId, double progress, long downloadedBytes, long totalBytes) {
+                String progressMessage = String.format("  %3d%% %15d/%d bytes",
+                        (int) (progress * 100), downloadedBytes, totalBytes);
+                logger.info(progressMessage);
+
+                transferProgressed();
+                limiter.consume(downloadedBytes - transferred[0]);
+                transferred[0] = downloadedBytes;
+            }
 
-                @Override
-                public void onComplete(String fileId, String localPath) {
-                    try {
-                        DB.setSynced(file, Paths.get(localPath));
-                        DB.commit();
-                        logger.info("Download completed");
-                    } catch (IOException e) {
-                        logger.error("I/O error", e);
+            @Override
+            public void onComplete(String fileId, String downloadPath) {
+                try {
+                    Path path = Paths.get(downloadPath);
+                    String contentFingerprint = fingerprint;
+                    Codec codec = Codec.of(file.getName());
+                    if (codec != Codec.NONE) {
+                        // decode next to the download, so publishing is still a single move
+                        Path decoded = Paths.get(downloadPath + ".decoded");
+                        try {
+                            contentFingerprint = Compressor.decompress(path, codec, decoded);
+                        } finally {
+                            staging.discard(path);
+                        }
+                        path = decoded;
+                    } else if (fingerprint != null) {
+                        contentFingerprint = Fingerprint.of(path);
+                    }
+                    if (fingerprint != null && !fingerprint.equals(contentFingerprint)) {
+                        // the ref name is not trusted - the content must match it before it is shared
+                        logger.error("Content of {} does not match its fingerprint", file.getName());
+                        staging.discard(path);
+                        setDownloadFailed(localPath);
+                        latch.countDown();
+                        return;
                     }
+                    if (!path.equals(localPath)) {
+                        staging.publish(path, localPath);
+                    }
+                    DB.setSynced(file, localPath, contentFingerprint);
+                    DB.commit();
+                    logger.info("Download completed");
+                } catch (IOException e) {
+                    logger.error("I/O error", e);
+                }
+
+                succeeded();
+                latch.countDown();
+            }
 
-                    repeat[0] = false;
-                    latch.countDown();
+            @Override
+            public void onError(String fileId, int code, String message) {
+                staging.discard(stagingPath);
+
+                if (StorjUtil.isTemporaryError(code) && retryLater(code)) {
+                    DB.clearStaging(file);
+                    DB.commit();
+                    logger.error("Download failed due to temporary error: {} ({}). Trying again later.", message, code);
+                } else {
+                    logger.error("Download failed: {} ({})", message, code);
+                    setDownloadFailed(localPath);
                 }
 
-                @Override
-                public void onError(String fileId, int code, String message) {
-                    if (StorjUtil.isTemporaryError(code)) {
-                        logger.error("Download failed due to temporary error: {} ({}). Trying again.", message, code);
-                    } else {
-                        Path localPath = App.getInstance().getSyncDir().resolve(file.getName());
-                        try {
-                            DB.setDownloadFailed(file, localPath);
-                            DB.commit();
-                            logger.error("Download failed: {} ({})", message, code);
-                        } catch (IOException e) {
-                            logger.error("I/O error", e);
-                        }
+                latch.countDown();
+            }
+        });
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            // interrupted - stop execution
+            return;
+        }
+    }
 
-                        repeat[0] = false;
+    private void downloadSegmented(Path localPath) throws IOException, InterruptedException {
+        StagingArea staging = App.getInstance().getStagingArea();
+        Path manifestPath = downloadPart(file, localPath);
+        if (manifestPath == null) {
+            return;
+        }
+
+        Manifest manifest;
+        try {
+            manifest = Manifest.read(manifestPath);
+        } finally {
+            staging.discard(manifestPath);
+        }
+
+        // segments of the current local version are copied instead of downloaded
+        Map<String, Long> local = new HashMap<>();
+        SyncFile syncFile = DB.get(file);
+        if (syncFile != null && !syncFile.getState().isDehydrated() && syncFile.isSegmented()
+                && syncFile.getSegmentSize() == manifest.getSegmentSize()
+                && Files.exists(localPath)
+                && Files.getLastModifiedTime(localPath).toMillis() == syncFile.getLocalModifiedTime()) {
+            List<String> segments = syncFile.getSegments();
+            for (int i = 0; i < segments.size(); i++) {
+                local.put(segments.get(i), i * syncFile.getSegmentSize());
+            }
+        }
+
+        Path assembled = Paths.get(staging.getPath(file) + ".assembled");
+        Files.createDirectories(assembled.getParent());
+        Files.createDirectories(localPath.getParent());
+        DB.setStaging(file, assembled);
+        DB.commit();
+
+        CloudFileCache cache = App.getInstance().getCloudFileCache();
+        List<String> segments = manifest.getSegments();
+        int downloaded = 0;
+        // the segments and the whole file are verified while they are assembled
+        MessageDigest fileDigest = Fingerprint.newDigest();
+        try (FileChannel out = FileChannel.open(assembled, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+                FileChannel localIn = local.isEmpty() ? null : FileChannel.open(localPath, StandardOpenOption.READ)) {
+            for (int i = 0; i < segments.size(); i++) {
+                long length = manifest.getLength(i);
+                Long offset = local.get(segments.get(i));
+                if (offset != null) {
+                    Segmenter.copy(localIn, offset, length, out, fileDigest);
+                    continue;
+                }
+
+                File segment = cache.get(StorjUtil.getSegmentName(segments.get(i)));
+                if (segment == null) {
+                    logger.error("Segment {} of {} not found on the cloud", segments.get(i), file.getName());
+                    staging.discard(assembled);
+                    DB.clearStaging(file);
+                    DB.commit();
+                    if (!retryAfterListing()) {
+                        setDownloadFailed(localPath);
                     }
+                    return;
+                }
 
-                    latch.countDown();
+                Path partPath = staging.getPath(segment);
+                if (!staging.claim(partPath)) {
+                    logger.info("Segment {} of {} is being downloaded for another file. Postponing.",
+                            segments.get(i), file.getName());
+                    staging.discard(assembled);
+                    DB.clearStaging(file);
+                    DB.commit();
+                    postpone(BUSY_DELAY);
+                    return;
                 }
-            });
 
-            try {
-                latch.await();
+                try {
+                    // segments are streamed into place one by one
+                    Path part = downloadPart(segment, localPath);
+                    if (part == null) {
+                        staging.discard(assembled);
+                        return;
+                    }
+                    MessageDigest segmentDigest = Fingerprint.newDigest();
+                    try (FileChannel in = FileChannel.open(part, StandardOpenOption.READ)) {
+                        Segmenter.copy(in, 0, length, out, segmentDigest, fileDigest);
+                    } finally {
+                        staging.discard(part);
+                    }
+                    if (!Fingerprint.toHex(segmentDigest.digest()).equals(segments.get(i))) {
+                        logger.error("Segment {} of {} is corrupted", segments.get(i), file.getName());
+                        staging.discard(assembled);
+                        setDownloadFailed(localPath);
+                        return;
+                    }
+                } finally {
+                    staging.release(partPath);
+                }
+                downloaded++;
+            }
+        } catch (IOException e) {
+            staging.discard(assembled);
+            DB.clearStaging(file);
+            DB.commit();
+            throw e;
+        }
+
+        logger.info("Downloaded {} of {} segments of {}", downloaded, segments.size(), file.getName());
+
+        String fingerprint = Fingerprint.toHex(fileDigest.digest());
+        if (manifest.getFingerprint() != null && !manifest.getFingerprint().equals(fingerprint)) {
+            logger.error("Content of {} does not match its manifest", file.getName());
+            staging.discard(assembled);
+            setDownloadFailed(localPath);
+            return;
+        }
+
+        staging.publish(assembled, localPath);
+        DB.setSynced(file, localPath, fingerprint);
+        DB.setSegments(localPath, manifest.getSegmentSize(), segments);
+        DB.commit();
+        logger.info("Download completed");
+        succeeded();
+    }
+
+    // downloads a manifest or segment into the staging folder
+    private Path downloadPart(File part, final Path localPath) throws IOException, InterruptedException {
+        Files.createDirectories(App.getInstance().getStagingArea().getPath(part).getParent());
 
-                if (repeat[0]) {
-                    // error - wait 3 seconds before trying again
-                    Thread.sleep(3000);
+        final Path result[] = { null };
+        final CountDownLatch latch = new CountDownLatch(1);
+        final BandwidthLimiter limiter = App.getInstance().getDownloadLimiter();
+        final long transferred[] = { 0 };
+        // pay the debt of the previous part here - stalling libstorj callbacks blocks its event loop
+        limiter.pace();
+        transferStarted();
+
+        App.getInstance().getStorj().downloadFile(bucket, part, new DownloadFileCallback() {
+            @Override
+            public void onProgress(String fileId, double progress, long downloadedBytes, long totalBytes) {
+                transferProgressed();
+                limiter.consume(downloadedBytes - transferred[0]);
+                transferred[0] = downloadedBytes;
+            }
+
+            @Override
+            public void onComplete(String fileId, String downloadPath) {
+                result[0] = Paths.get(downloadPath);
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(String fileId, int code, String message) {
+                if (StorjUtil.isTemporaryError(code) && retryLater(code)) {
+                    DB.clearStaging(file);
+                    DB.commit();
+                    logger.error("Download failed due to temporary error: {} ({}). Trying again later.", message, code);
+                } else {
+                    logger.error("Download failed: {} ({})", message, code);
+                    setDownloadFailed(localPath);
                 }
-            } catch (InterruptedException e) {
-                // interrupted - stop execution
-                return;
+                latch.countDown();
+            }
+        });
+
+        latch.await();
+
+        return result[0];
+    }
+
+    private boolean copyLocal(String fingerprint, Path localPath) throws IOException {
+        for (SyncFile syncFile : DB.getByFingerprint(fingerprint)) {
+            Path path = App.getInstance().getSyncDir().resolve(syncFile.getName());
+            if (!syncFile.getState().isSynced()) {
+                // e.g. a placeholder has the fingerprint of the cloud content only
+                continue;
+            }
+            if (path.equals(localPath) || !Files.exists(path)
+                    || Files.getLastModifiedTime(path).toMillis() != syncFile.getLocalModifiedTime()) {
+                // the local copy changed since it was fingerprinted
+                continue;
             }
+
+            logger.info("Copying content of {} from {}", file.getName(), syncFile.getName());
+
+            StagingArea staging = App.getInstance().getStagingArea();
+            Path staged = staging.getPath(file);
+            Files.createDirectories(staged.getParent());
+            Files.createDirectories(localPath.getParent());
+            if (!fingerprint.equals(Fingerprint.copy(path, staged))) {
+                logger.error("Content of {} does not match its fingerprint", syncFile.getName());
+                staging.discard(staged);
+                continue;
+            }
+            staging.publish(staged, localPath);
+
+            DB.setSynced(file, localPath, fingerprint);
+            DB.commit();
+            App.getInstance().getDedupStats().hit(Files.size(localPath));
+
+            completed();
+            return true;
+        }
+        return false;
+    }
+
+    private void setDownloadFailed(Path localPath) {
+        SyncFile syncFile = DB.get(file);
+        if (syncFile != null && syncFile.getState().isDehydrated()) {
+            // keep the placeholder - it can be opened again later
+            return;
+        }
+
+        try {
+            DB.setDownloadFailed(file, localPath);
+            DB.commit();
+        } catch (IOException e) {
+            logger.error("I/O error", e);
         }
     }
 
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.goobox.sync.common.Utils;
+import io.goobox.sync.storj.db.CloudPack;
+import io.goobox.sync.storj.db.DB;
+import io.goobox.sync.storj.pack.PackMember;
+import io.goobox.sync.storj.pack.PackReader;
+import io.storj.libstorj.Bucket;
+import io.storj.libstorj.File;
+
+public class DownloadPackTask extends PackTask {
+
+    private static final Logger logger = LoggerFactory.getLogger(DownloadPackTask.class);
+
+    private File pack;
+
+    public DownloadPackTask(Bucket bucket, File pack) {
+        super(bucket);
+        this.pack = pack;
+    }
+
+    @Override
+    public String getFileName() {
+        return pack.getName();
+    }
+
+    @Override
+    public void run() {
+        long wait = App.getInstance().getDownloadLimiter().getWaitTime();
+        if (wait > 0) {
+            logger.info("Download bandwidth limit reached. Postponing {} for {} ms.", pack.getName(), wait);
+            postpone(wait);
+            return;
+        }
+
+        Path packPath = null;
+        try {
+            packPath = downloadPack(pack);
+            if (packPath == null) {
+                return;
+            }
+
+            try (PackReader reader = new PackReader(packPath)) {
+                CloudPack cloudPack = DB.addPack(pack, reader.getIndex().getMembers().size());
+                for (PackMember member : reader.getIndex().getMembers()) {
+                    extract(reader, cloudPack, member);
+                }
+            }
+            DB.commit();
+            logger.info("Pack {} extracted", pack.getName());
+
+            succeeded();
+        } catch (IOException e) {
+            logger.error("I/O error", e);
+        } catch (InterruptedException e) {
+            // interrupted - stop execution
+            return;
+        } finally {
+            if (packPath != null) {
+                App.getInstance().getStagingArea().discard(packPath);
+            }
+        }
+    }
+
+    private void extract(PackReader reader, CloudPack cloudPack, PackMember member) throws IOException {
+        Path path = resolve(member);
+        if (path == null) {
+            logger.warn("Skipping pack member {} outside of the synced files", member.getName());
+            return;
+        }
+
+        if (Files.exists(path)) {
+            long localModifiedTime = Files.getLastModifiedTime(path).toMillis();
+            if (Files.size(path) == member.getLength() && localModifiedTime == member.getModifiedTime()) {
+                // the version that was packed
+                DB.setPacked(path, cloudPack, member.getOffset(), member.getLength(),
+                        localModifiedTime, member.getLength());
+                return;
+            }
+            if (localModifiedTime >= member.getModifiedTime()) {
+                // the local file is newer - the next state check uploads it
+                logger.info("Keeping newer local version of {}", member.getName());
+                return;
+            }
+        }
+
+        logger.info("Extracting {}", member.getName());
+
+        StagingArea staging = App.getInstance().getStagingArea();
+        Path staged = staging.getDir().resolve(App.getInstance().getSyncDir().relativize(path));
+        Files.createDirectories(staged.getParent());
+        Files.createDirectories(path.getParent());
+
+        try (OutputStream out = Files.newOutputStream(staged)) {
+            reader.copy(member, out);
+        }
+        Files.setLastModifiedTime(staged, FileTime.fromMillis(member.getModifiedTime()));
+        staging.publish(staged, path);
+
+        DB.setPacked(path, cloudPack, member.getOffset(), member.getLength(),
+                member.getModifiedTime(), member.getLength());
+    }
+
+    // the index comes from the cloud - a member must not be written anywhere a synced file could not be
+    private Path resolve(PackMember member) {
+        Path syncDir = App.getInstance().getSyncDir();
+        Path path;
+        try {
+            Path name = Paths.get(member.getName());
+            if (name.isAbsolute()) {
+                return null;
+            }
+            path = syncDir.resolve(name).normalize();
+        } catch (InvalidPathException e) {
+            return null;
+        }
+        if (!path.startsWith(syncDir) || path.equals(syncDir) || Utils.isExcluded(path)
+                || App.getInstance().getIgnoreMatcher().isIgnored(path)) {
+            return null;
+        }
+        return path;
+    }
+
+}
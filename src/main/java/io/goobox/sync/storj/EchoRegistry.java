@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Changes the sync itself makes in the sync dir, so the watcher can tell them from user changes
+public class EchoRegistry {
+
+    // long enough for the watcher to deliver all events of a change
+    private static final long TTL = Long.getLong("goobox.watcher.echoTtl", 5000);
+
+    private static final long DELETED = -1;
+    private static final long DIRECTORY = -2;
+
+    private Map<Path, Echo> echoes = new ConcurrentHashMap<>();
+
+    public void expect(Path path, long size, long modifiedTime) {
+        echoes.put(path, new Echo(size, modifiedTime));
+    }
+
+    // the content of the source, e.g. a staged file, is about to be moved to the path
+    public void expect(Path path, Path source) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(source, BasicFileAttributes.class);
+            expect(path, attrs.size(), attrs.lastModifiedTime().toMillis());
+        } catch (IOException e) {
+            // the events will come through as any other change
+        }
+    }
+
+    public void expectDeleted(Path path) {
+        expect(path, DELETED, 0);
+    }
+
+    public void expectDirectory(Path path) {
+        expect(path, DIRECTORY, 0);
+    }
+
+    public boolean isEcho(Path path) {
+        Echo echo = echoes.get(path);
+        if (echo == null) {
+            return false;
+        }
+        if (echo.isExpired()) {
+            echoes.remove(path, echo);
+            return false;
+        }
+
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class,
+                    LinkOption.NOFOLLOW_LINKS);
+            if (echo.size == DIRECTORY) {
+                return attrs.isDirectory();
+            }
+            // anything else means the user touched it too
+            return attrs.size() == echo.size && attrs.lastModifiedTime().toMillis() == echo.modifiedTime;
+        } catch (NoSuchFileException e) {
+            return echo.size == DELETED;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public void purge() {
+        echoes.values().removeIf(Echo::isExpired);
+    }
+
+    public int size() {
+        return echoes.size();
+    }
+
+    private static class Echo {
+
+        private long size;
+        private long modifiedTime;
+        private long expires = System.currentTimeMillis() + TTL;
+
+        Echo(long size, long modifiedTime) {
+            this.size = size;
+            this.modifiedTime = modifiedTime;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() > expires;
+        }
+
+    }
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+public enum ErrorClass {
+
+    NETWORK("network"),
+    BRIDGE("bridge"),
+    FARMER("farmer"),
+    PERMANENT("permanent");
+
+    private String str;
+
+    private ErrorClass(String str) {
+        this.str = str;
+    }
+
+    public boolean isTemporary() {
+        return this != PERMANENT;
+    }
+
+    @Override
+    public String toString() {
+        return str;
+    }
+
+}
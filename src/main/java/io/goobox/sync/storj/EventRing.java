@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounded queue for exactly one producer and one consumer thread. Neither side locks or allocates.
+public class EventRing<T> {
+
+    private Object[] buffer;
+    private int mask;
+
+    // next slot to read, only advanced by the consumer
+    private AtomicLong head = new AtomicLong();
+    // next slot to write, only advanced by the producer
+    private AtomicLong tail = new AtomicLong();
+
+    public EventRing(int capacity) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Capacity out of range: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        buffer = new Object[size];
+        mask = size - 1;
+    }
+
+    // producer only
+    public boolean offer(T element) {
+        long t = tail.get();
+        if (t - head.get() == buffer.length) {
+            return false;
+        }
+        buffer[(int) t & mask] = element;
+        // publishes the slot to the consumer
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    // consumer only
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        long h = head.get();
+        if (h == tail.get()) {
+            return null;
+        }
+        int index = (int) h & mask;
+        T element = (T) buffer[index];
+        buffer[index] = null;
+        // hands the slot back to the producer
+        head.lazySet(h + 1);
+        return element;
+    }
+
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+}
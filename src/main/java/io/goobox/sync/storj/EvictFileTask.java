@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.goobox.sync.storj.db.DB;
+import io.goobox.sync.storj.db.SyncFile;
+import io.goobox.sync.storj.db.SyncState;
+
+public class EvictFileTask implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(EvictFileTask.class);
+
+    private Path path;
+
+    public EvictFileTask(Path path) {
+        this.path = path;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public void run() {
+        try {
+            SyncFile syncFile = DB.get(path);
+            if (syncFile == null || syncFile.getState() != SyncState.SYNCED
+                    || App.getInstance().getFileWatcher().isHot(path)
+                    || Files.getLastModifiedTime(path).toMillis() != syncFile.getLocalModifiedTime()
+                    || Files.size(path) != syncFile.getLocalSize()) {
+                // changed since it was picked - the next check decides what to do
+                return;
+            }
+
+            logger.info("Evicting {} from the local cache", syncFile.getName());
+
+            // the placeholder keeps the file in place, so no cloud delete follows
+            Placeholder.replace(path, syncFile.getLocalSize(), syncFile.getLocalModifiedTime());
+            DB.dehydrate(path);
+            DB.commit();
+        } catch (Exception e) {
+            logger.error("Failed evicting " + path, e);
+        }
+    }
+
+}
@@ -19,108 +19,333 @@ package io.goobox.sync.storj;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.goobox.sync.storj.ignore.IgnoreMatcher;
 import io.methvin.watcher.DirectoryChangeEvent;
+import io.methvin.watcher.DirectoryChangeEvent.EventType;
 import io.methvin.watcher.DirectoryChangeListener;
 import io.methvin.watcher.DirectoryWatcher;
 
 public class FileWatcher extends Thread implements DirectoryChangeListener {
 
     private static final Logger logger = LoggerFactory.getLogger(FileWatcher.class);
-    
-    private long lastEventTime;
-    private Map<Path, Long> copyInProgress = new HashMap<>();
+
+    // a path is released for sync when it had no events for this long and its size is steady
+    private static final long QUIET_TIME = Long.getLong("goobox.watcher.quietTime", 3000);
+    // how often expired deadlines are checked
+    private static final long TICK = Long.getLong("goobox.watcher.tick", 500);
+    // max paths probed per tick, the rest wait for the next one
+    private static final int PROBE_BATCH = Integer.getInteger("goobox.watcher.probeBatch", 1000);
+    // events buffered between the watcher callback and the consumer
+    private static final int RING_SIZE = Integer.getInteger("goobox.watcher.ringSize", 65536);
+
+    // filled by the watcher callback thread, drained by this thread
+    private EventRing<DirectoryChangeEvent> ring = new EventRing<>(RING_SIZE);
+    private AtomicBoolean ringOverflow = new AtomicBoolean();
+
+    private ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    // the latest deadline of each path still waiting to go quiet
+    private Map<Path, Deadline> hotPaths = new HashMap<>();
+    // superseded deadlines stay queued and are skipped when they expire
+    private DelayQueue<Deadline> deadlines = new DelayQueue<>();
+    // events were lost and a full check is due
+    private AtomicBoolean overflowed = new AtomicBoolean();
+
+    private AtomicLong overflows = new AtomicLong();
+    private AtomicLong rescans = new AtomicLong();
+    private AtomicLong echoes = new AtomicLong();
+    private AtomicLong ignored = new AtomicLong();
+
+    // native backend on Linux, null if not in use
+    private volatile InotifyWatcher inotify;
 
     @Override
     public void run() {
         try {
-            DirectoryWatcher watcher = DirectoryWatcher.create(App.getInstance().getSyncDir(), this);
-            watcher.watchAsync();
-
-            Timer timer = new Timer();
-            timer.schedule(new TimerTask() {
-                @Override
-                public void run() {
-                    synchronized (FileWatcher.this) {
-                        if (lastEventTime == 0) {
-                            // no file event occurred recently
-                            return;
-                        }
-
-                        long currentTime = System.currentTimeMillis();
-                        if (currentTime < lastEventTime + 3000) {
-                            // last file event was less then 3 seconds ago
-                            return;
-                        }
-                        
-                        // check if file copy is still in progress
-                        Iterator<Path> i = copyInProgress.keySet().iterator();
-                        while (i.hasNext()) {
-                            Path path = i.next();
-                            try {
-                                long size = Files.size(path);
-                                if (copyInProgress.get(path) == size) {
-                                    // file size is steady - copying finished
-                                    i.remove();
-                                } else {
-                                    // update file size in map
-                                    copyInProgress.put(path, size);
-                                }
-                            } catch (IOException e) {
-                                // file does not exist anymore
-                                i.remove();
-                            }
-                        }
-                        
-                        if (copyInProgress.isEmpty()) {
-                            // last file event was more than 3 seconds ago - fire a sync check
-                            lastEventTime = 0;
-                            logger.info("3 seconds after the last file event");
-                            App.getInstance().getTaskQueue().add(new CheckStateTask());
-                            App.getInstance().getTaskExecutor().interruptSleeping();
-                        }
-                    }
-                }
-            }, 3000, 3000);
+            startWatching();
         } catch (IOException e) {
             logger.error("File watcher error", e);
+            return;
+        }
+
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                tick();
+            } catch (RuntimeException e) {
+                // keep the schedule alive
+                logger.error("File watcher error", e);
+            }
+        }, TICK, TICK, TimeUnit.MILLISECONDS);
+
+        // the latest event of each path in the current batch
+        Map<Path, EventType> batch = new LinkedHashMap<>();
+        while (!isInterrupted()) {
+            DirectoryChangeEvent event;
+            while (batch.size() < PROBE_BATCH && (event = ring.poll()) != null) {
+                logger.debug("{} {} count: {}", event.eventType(), event.path(), event.count());
+                if (event.eventType() == EventType.OVERFLOW) {
+                    overflows.incrementAndGet();
+                    overflowed();
+                } else {
+                    batch.put(event.path(), event.eventType());
+                }
+            }
+
+            if (ringOverflow.getAndSet(false)) {
+                overflowed();
+            }
+
+            if (batch.isEmpty()) {
+                // onEvent unparks it - a permit left by an event offered after the poll returns right away
+                LockSupport.park(this);
+            } else {
+                for (Map.Entry<Path, EventType> entry : batch.entrySet()) {
+                    try {
+                        process(entry.getKey(), entry.getValue());
+                    } catch (RuntimeException e) {
+                        // keep consuming the other events
+                        logger.error("File watcher error", e);
+                    }
+                }
+                batch.clear();
+            }
         }
+        scheduler.shutdownNow();
     }
 
     @Override
-    public synchronized void onEvent(final DirectoryChangeEvent event) {
-        lastEventTime = System.currentTimeMillis();
+    public void onEvent(final DirectoryChangeEvent event) {
+        // nothing else here, so the watcher drains its events fast
+        if (!ring.offer(event)) {
+            overflows.incrementAndGet();
+            ringOverflow.set(true);
+        }
+        LockSupport.unpark(this);
+    }
 
-        logger.debug("{} {} {} count: {}", lastEventTime, event.eventType(), event.path(), event.count());
+    private void process(Path path, EventType type) {
+        if (App.getInstance().getStagingArea().contains(path)) {
+            // our own downloads in progress
+            return;
+        }
 
-        switch (event.eventType()) {
-        case CREATE:
-        case MODIFY:
+        IgnoreMatcher ignoreMatcher = App.getInstance().getIgnoreMatcher();
+        if (IgnoreMatcher.isIgnoreFile(path)) {
+            ignoreMatcher.invalidate(path.getParent());
+        }
+        if (ignoreMatcher.isIgnored(path)) {
+            ignored.incrementAndGet();
+            return;
+        }
+
+        if (App.getInstance().getEchoRegistry().isEcho(path)) {
+            // written by the sync itself
+            echoes.incrementAndGet();
+            return;
+        }
+
+        // a running upload of this file would be stale when it completes
+        App.getInstance().getInFlightUploads().supersede(path);
+        schedule(path, (type == EventType.DELETE) ? -1 : getSize(path));
+    }
+
+    private void startWatching() throws IOException {
+        Path syncDir = App.getInstance().getSyncDir();
+        if (InotifyWatcher.isSupported()) {
             try {
-                copyInProgress.put(event.path(), Files.size(event.path()));
-            } catch (IOException e) {
-                // file does not exist anymore?
-                copyInProgress.remove(event.path());
+                InotifyWatcher watcher = new InotifyWatcher(syncDir, this);
+                watcher.watchAsync();
+                inotify = watcher;
+                return;
+            } catch (IOException | LinkageError e) {
+                logger.warn("Cannot use inotify - falling back to the portable watcher", e);
+            }
+        }
+
+        DirectoryWatcher watcher = DirectoryWatcher.create(syncDir, this);
+        watcher.watchAsync();
+    }
+
+    public synchronized boolean isHot(Path path) {
+        return hotPaths.containsKey(path);
+    }
+
+    public synchronized int getHotPaths() {
+        return hotPaths.size();
+    }
+
+    public int getWatchCount() {
+        InotifyWatcher watcher = inotify;
+        return (watcher == null) ? -1 : watcher.getWatchCount();
+    }
+
+    public long getWatchLimit() {
+        return (inotify == null) ? -1 : InotifyWatcher.getWatchLimit();
+    }
+
+    public long getIgnored() {
+        return ignored.get();
+    }
+
+    public long getEchoes() {
+        return echoes.get();
+    }
+
+    public long getOverflows() {
+        return overflows.get();
+    }
+
+    public long getRescans() {
+        return rescans.get();
+    }
+
+    void overflowed() {
+        overflowed.set(true);
+    }
+
+    // how long the path has not been quiet, 0 if it is
+    public synchronized long getHotTime(Path path) {
+        Deadline deadline = hotPaths.get(path);
+        return (deadline == null) ? 0 : System.currentTimeMillis() - deadline.hotSince;
+    }
+
+    // a snapshot of the path was taken - the next one is due after another hot period
+    public synchronized void snapshotTaken(Path path) {
+        Deadline deadline = hotPaths.get(path);
+        if (deadline != null) {
+            deadline.hotSince = System.currentTimeMillis();
+        }
+    }
+
+    private synchronized void schedule(Path path, long size) {
+        long now = System.currentTimeMillis();
+        Deadline previous = hotPaths.get(path);
+        Deadline deadline = new Deadline(path, now + QUIET_TIME, size,
+                (previous == null) ? now : previous.hotSince);
+        hotPaths.put(path, deadline);
+        deadlines.add(deadline);
+    }
+
+    void tick() {
+        rescan();
+        App.getInstance().getEchoRegistry().purge();
+        App.getInstance().getBurstTracker().purge();
+
+        List<Deadline> expired = new ArrayList<>();
+        synchronized (this) {
+            Deadline deadline;
+            while (expired.size() < PROBE_BATCH && (deadline = deadlines.poll()) != null) {
+                if (hotPaths.get(deadline.path) == deadline) {
+                    expired.add(deadline);
+                }
             }
-            break;
-        case DELETE:
-            copyInProgress.remove(event.path());
-            break;
-        case OVERFLOW:
-            break;
         }
+
+        if (expired.isEmpty()) {
+            return;
+        }
+
+        // probe without holding the monitor onEvent needs
+        long[] sizes = new long[expired.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = getSize(expired.get(i).path);
+        }
+
+        int released = 0;
+        synchronized (this) {
+            for (int i = 0; i < sizes.length; i++) {
+                Deadline deadline = expired.get(i);
+                if (hotPaths.get(deadline.path) != deadline) {
+                    // another event came in while probing
+                    continue;
+                }
+
+                if (sizes[i] != deadline.size) {
+                    // still being written without events - a copy in progress
+                    schedule(deadline.path, sizes[i]);
+                } else {
+                    hotPaths.remove(deadline.path);
+                    if (deadline.size >= 0) {
+                        App.getInstance().getBurstTracker().burst(deadline.path);
+                    }
+                    released++;
+                }
+            }
+        }
+
+        if (released > 0) {
+            // quiet paths are synced while the hot ones keep waiting
+            logger.info("{} paths went quiet", released);
+            App.getInstance().getTaskQueue().add(new CheckStateTask());
+            App.getInstance().getTaskExecutor().interruptSleeping();
+        }
+    }
+
+    private void rescan() {
+        if (!overflowed.getAndSet(false)) {
+            return;
+        }
+
+        // the lost events may be anywhere, including changes to ignore files
+        rescans.incrementAndGet();
+        App.getInstance().getIgnoreMatcher().invalidateAll();
+        logger.info("File events lost - rescanning everything");
+
+        // the check compares every path with the DB, so it finds the lost changes without arming each of them
+        App.getInstance().getTaskQueue().add(new CheckStateTask());
+        App.getInstance().getTaskExecutor().interruptSleeping();
     }
 
-    public synchronized boolean isInProgress() {
-        return lastEventTime != 0;
+    private long getSize(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            // file does not exist anymore
+            return -1;
+        }
+    }
+
+    private static class Deadline implements Delayed {
+
+        private Path path;
+        private long time;
+        private long size;
+        private long hotSince;
+
+        Deadline(Path path, long time, long size, long hotSince) {
+            this.path = path;
+            this.time = time;
+            this.size = size;
+            this.hotSince = hotSince;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(time - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(time, ((Deadline) other).time);
+        }
+
     }
 
 }
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class InFlightUploads {
+
+    private Map<Path, UploadFileTask> uploads = new ConcurrentHashMap<>();
+
+    public void add(Path path, UploadFileTask task) {
+        uploads.put(path, task);
+    }
+
+    public void remove(Path path, UploadFileTask task) {
+        uploads.remove(path, task);
+    }
+
+    public boolean contains(Path path) {
+        return uploads.containsKey(path);
+    }
+
+    public boolean supersede(Path path) {
+        UploadFileTask task = uploads.remove(path);
+        if (task == null) {
+            return false;
+        }
+        task.cancel();
+        return true;
+    }
+
+}
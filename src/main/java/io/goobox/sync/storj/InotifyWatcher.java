@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Platform;
+
+import io.methvin.watcher.DirectoryChangeEvent;
+import io.methvin.watcher.DirectoryChangeEvent.EventType;
+import io.methvin.watcher.DirectoryChangeListener;
+
+// Watches a tree with a single inotify instance instead of a WatchService key per directory
+public class InotifyWatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(InotifyWatcher.class);
+
+    private static final int IN_MODIFY = 0x00000002;
+    private static final int IN_ATTRIB = 0x00000004;
+    private static final int IN_CLOSE_WRITE = 0x00000008;
+    private static final int IN_MOVED_FROM = 0x00000040;
+    private static final int IN_MOVED_TO = 0x00000080;
+    private static final int IN_CREATE = 0x00000100;
+    private static final int IN_DELETE = 0x00000200;
+    private static final int IN_Q_OVERFLOW = 0x00004000;
+    private static final int IN_IGNORED = 0x00008000;
+    private static final int IN_ONLYDIR = 0x01000000;
+    private static final int IN_ISDIR = 0x40000000;
+    private static final int IN_CLOEXEC = 0x00080000;
+
+    private static final int WATCH_MASK = IN_MODIFY | IN_ATTRIB | IN_CLOSE_WRITE | IN_MOVED_FROM | IN_MOVED_TO
+            | IN_CREATE | IN_DELETE | IN_ONLYDIR;
+
+    private static final int EINTR = 4;
+    private static final int ENOSPC = 28;
+
+    // header of struct inotify_event: wd, mask, cookie, len
+    private static final int EVENT_HEADER = 16;
+
+    private static final Path WATCH_LIMIT_FILE = Paths.get("/proc/sys/fs/inotify/max_user_watches");
+
+    private LibC libc;
+    private int fd;
+    private DirectoryChangeListener listener;
+    private Map<Integer, Path> watches = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    public static boolean isSupported() {
+        return Platform.isLinux() && Boolean.parseBoolean(System.getProperty("goobox.watcher.inotify", "true"));
+    }
+
+    public InotifyWatcher(Path root, DirectoryChangeListener listener) throws IOException {
+        this.listener = listener;
+
+        libc = LibC.INSTANCE;
+        fd = libc.inotify_init1(IN_CLOEXEC);
+        if (fd < 0) {
+            throw new IOException("inotify_init1 failed: errno " + Native.getLastError());
+        }
+
+        try {
+            register(root);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        logger.info("Watching {} directories with inotify (limit {})", watches.size(), getWatchLimit());
+    }
+
+    public void watchAsync() {
+        Thread reader = new Thread(this::readEvents, "inotify");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    public void close() {
+        closed = true;
+        // the IN_IGNORED events wake up a blocked reader, so it stops before the fd number is reused
+        for (int wd : watches.keySet()) {
+            libc.inotify_rm_watch(fd, wd);
+        }
+        libc.close(fd);
+    }
+
+    public int getWatchCount() {
+        return watches.size();
+    }
+
+    public static long getWatchLimit() {
+        try {
+            return Long.parseLong(new String(Files.readAllBytes(WATCH_LIMIT_FILE), StandardCharsets.US_ASCII).trim());
+        } catch (IOException | NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void register(Path dir) throws IOException {
+        // one walk for the whole subtree
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attrs) throws IOException {
+                if (App.getInstance().getStagingArea().contains(path)
+                        || App.getInstance().getIgnoreMatcher().isIgnored(path, true)) {
+                    // our own downloads, or excluded by the user
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                addWatch(path);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path path, IOException e) throws IOException {
+                // deleted while walking
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void addWatch(Path dir) throws IOException {
+        int wd = libc.inotify_add_watch(fd, dir.toString(), WATCH_MASK);
+        if (wd < 0) {
+            int errno = Native.getLastError();
+            if (errno == ENOSPC) {
+                throw new IOException("Reached the limit of " + getWatchLimit()
+                        + " inotify watches - raise fs.inotify.max_user_watches");
+            }
+            throw new IOException("inotify_add_watch failed for " + dir + ": errno " + errno);
+        }
+        watches.put(wd, dir);
+    }
+
+    private void readEvents() {
+        byte[] buffer = new byte[64 * 1024];
+        ByteBuffer events = ByteBuffer.wrap(buffer).order(ByteOrder.nativeOrder());
+        while (true) {
+            int length = libc.read(fd, buffer, new NativeLong(buffer.length)).intValue();
+            if (length <= 0 || closed) {
+                if (length < 0 && Native.getLastError() == EINTR && !closed) {
+                    continue;
+                }
+                logger.info("inotify watcher stopped");
+                return;
+            }
+
+            events.clear();
+            while (events.position() + EVENT_HEADER <= length) {
+                int wd = events.getInt();
+                int mask = events.getInt();
+                events.getInt(); // cookie
+                int nameLength = events.getInt();
+                String name = readName(buffer, events.position(), nameLength);
+                events.position(events.position() + nameLength);
+
+                try {
+                    dispatch(wd, mask, name);
+                } catch (IOException | RuntimeException e) {
+                    logger.error("inotify event error", e);
+                }
+            }
+        }
+    }
+
+    private void dispatch(int wd, int mask, String name) throws IOException {
+        if ((mask & IN_Q_OVERFLOW) != 0) {
+            // the kernel queue dropped events from anywhere in the tree
+            listener.onEvent(new DirectoryChangeEvent(EventType.OVERFLOW, null, 1));
+            return;
+        }
+
+        if ((mask & IN_IGNORED) != 0) {
+            // directory gone or unmounted
+            watches.remove(wd);
+            return;
+        }
+
+        Path dir = watches.get(wd);
+        if (dir == null || name.isEmpty()) {
+            // events on the directory itself come from its parent as well
+            return;
+        }
+        Path path = dir.resolve(name);
+
+        if ((mask & (IN_CREATE | IN_MOVED_TO)) != 0) {
+            listener.onEvent(new DirectoryChangeEvent(EventType.CREATE, path, 1));
+            if ((mask & IN_ISDIR) != 0) {
+                watchNewDir(path);
+            }
+        } else if ((mask & (IN_DELETE | IN_MOVED_FROM)) != 0) {
+            listener.onEvent(new DirectoryChangeEvent(EventType.DELETE, path, 1));
+            if ((mask & (IN_MOVED_FROM | IN_ISDIR)) == (IN_MOVED_FROM | IN_ISDIR)) {
+                unwatchMovedDir(path);
+            }
+        } else if ((mask & (IN_MODIFY | IN_CLOSE_WRITE | IN_ATTRIB)) != 0) {
+            listener.onEvent(new DirectoryChangeEvent(EventType.MODIFY, path, 1));
+        }
+    }
+
+    private void watchNewDir(Path dir) throws IOException {
+        try {
+            register(dir);
+        } catch (IOException e) {
+            logger.warn("Cannot watch {}", dir, e);
+            listener.onEvent(new DirectoryChangeEvent(EventType.OVERFLOW, dir, 1));
+            return;
+        }
+
+        // content created before the watch was added has no events
+        List<Path> paths;
+        try (Stream<Path> stream = Files.walk(dir)) {
+            paths = stream.filter(path -> !path.equals(dir)).collect(Collectors.toList());
+        } catch (IOException e) {
+            listener.onEvent(new DirectoryChangeEvent(EventType.OVERFLOW, dir, 1));
+            return;
+        }
+        for (Path path : paths) {
+            listener.onEvent(new DirectoryChangeEvent(EventType.CREATE, path, 1));
+        }
+    }
+
+    private void unwatchMovedDir(Path dir) {
+        // the watches follow the moved directories, so they would report events under the old paths -
+        // a move within the tree registers them again with the new paths
+        for (Map.Entry<Integer, Path> entry : watches.entrySet()) {
+            if (entry.getValue().startsWith(dir)) {
+                watches.remove(entry.getKey());
+                libc.inotify_rm_watch(fd, entry.getKey());
+            }
+        }
+    }
+
+    private static String readName(byte[] buffer, int offset, int length) {
+        // null padded
+        int end = offset;
+        while (end < offset + length && buffer[end] != 0) {
+            end++;
+        }
+        return new String(buffer, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+}
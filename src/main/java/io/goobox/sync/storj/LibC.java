@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+
+// The few Linux libc calls without a Java counterpart. Loading fails on other systems.
+interface LibC extends Library {
+
+    LibC INSTANCE = (LibC) Native.loadLibrary("c", LibC.class);
+
+    int O_RDONLY = 0;
+    int O_WRONLY = 1;
+    int O_TRUNC = 0x200;
+
+    int inotify_init1(int flags);
+
+    int inotify_add_watch(int fd, String path, int mask);
+
+    int inotify_rm_watch(int fd, int wd);
+
+    int open(String path, int flags);
+
+    int ioctl(int fd, NativeLong request, int arg);
+
+    NativeLong read(int fd, byte[] buffer, NativeLong count);
+
+    int close(int fd);
+
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.goobox.sync.storj.db.DB;
+import io.storj.libstorj.Bucket;
+import io.storj.libstorj.DeleteFileCallback;
+import io.storj.libstorj.DownloadFileCallback;
+import io.storj.libstorj.File;
+import io.storj.libstorj.Storj;
+import io.storj.libstorj.UploadFileCallback;
+
+public abstract class PackTask extends RetryableTask {
+
+    private static final Logger logger = LoggerFactory.getLogger(PackTask.class);
+
+    protected Bucket bucket;
+
+    // set if the last pack transfer failed and a retry is scheduled
+    protected boolean retrying;
+
+    public PackTask(Bucket bucket) {
+        this.bucket = bucket;
+    }
+
+    @Override
+    public boolean isTransfer() {
+        return true;
+    }
+
+    protected Path getStagingPath(String packName) throws IOException {
+        Path path = App.getInstance().getStagingArea().getDir().resolve(packName);
+        Files.createDirectories(path.getParent());
+        return path;
+    }
+
+    protected Path downloadPack(final File pack) throws IOException, InterruptedException {
+        logger.info("Downloading pack {}", pack.getName());
+
+        // libstorj writes the pack under its cloud name in the staging folder
+        getStagingPath(pack.getName());
+        retrying = false;
+
+        final Path result[] = { null };
+        final CountDownLatch latch = new CountDownLatch(1);
+        final BandwidthLimiter limiter = App.getInstance().getDownloadLimiter();
+        final long transferred[] = { 0 };
+        limiter.pace();
+        transferStarted();
+
+        App.getInstance().getStorj().downloadFile(bucket, pack, new DownloadFileCallback() {
+            @Override
+            public void onProgress(String fileId, double progress, long downloadedBytes, long totalBytes) {
+                transferProgressed();
+                limiter.consume(downloadedBytes - transferred[0]);
+                transferred[0] = downloadedBytes;
+            }
+
+            @Override
+            public void onComplete(String fileId, String localPath) {
+                result[0] = Paths.get(localPath);
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(String fileId, int code, String message) {
+                if (StorjUtil.isTemporaryError(code) && retryLater(code)) {
+                    logger.error("Pack download failed due to temporary error: {} ({}). Trying again later.",
+                            message, code);
+                    retrying = true;
+                } else {
+                    logger.error("Pack download failed: {} ({})", message, code);
+                }
+                latch.countDown();
+            }
+        });
+
+        latch.await();
+
+        return result[0];
+    }
+
+    protected File uploadPack(Path path, String packName) throws InterruptedException {
+        logger.info("Uploading pack {}", packName);
+
+        retrying = false;
+
+        final File result[] = { null };
+        final CountDownLatch latch = new CountDownLatch(1);
+        final BandwidthLimiter limiter = App.getInstance().getUploadLimiter();
+        final long transferred[] = { 0 };
+        limiter.pace();
+        transferStarted();
+
+        App.getInstance().getStorj().uploadFile(bucket, packName, path.toString(), new UploadFileCallback() {
+            @Override
+            public void onProgress(String filePath, double progress, long uploadedBytes, long totalBytes) {
+                transferProgressed();
+                limiter.consume(uploadedBytes - transferred[0]);
+                transferred[0] = uploadedBytes;
+            }
+
+            @Override
+            public void onComplete(String filePath, File file) {
+                App.getInstance().getCloudFileCache().put(file);
+                result[0] = file;
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(String filePath, int code, String message) {
+                App.getInstance().getCloudFileCache().invalidate();
+                if (StorjUtil.isTemporaryError(code) && retryLater(code)) {
+                    logger.error("Pack upload failed due to temporary error: {} ({}). Trying again later.",
+                            message, code);
+                    retrying = true;
+                } else {
+                    logger.error("Pack upload failed: {} ({})", message, code);
+                }
+                latch.countDown();
+            }
+        });
+
+        latch.await();
+
+        return result[0];
+    }
+
+    protected boolean deletePack(final File pack) throws InterruptedException {
+        logger.info("Deleting pack {}", pack.getName());
+
+        final boolean result[] = { false };
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        App.getInstance().getStorj().deleteFile(bucket, pack, new DeleteFileCallback() {
+            @Override
+            public void onFileDeleted(String fileId) {
+                result[0] = true;
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(String fileId, int code, String message) {
+                if (code == Storj.HTTP_NOT_FOUND) {
+                    // already deleted
+                    result[0] = true;
+                } else if (StorjUtil.isTemporaryError(code) && retryLater(code)) {
+                    logger.error("Failed deleting pack due to temporary error: {} ({}). Trying again later.",
+                            message, code);
+                } else {
+                    logger.error("Failed deleting pack: {} ({})", message, code);
+                }
+                latch.countDown();
+            }
+        });
+
+        latch.await();
+
+        if (result[0]) {
+            DB.removePack(pack.getId());
+            DB.commit();
+            App.getInstance().getCloudFileCache().remove(pack.getName());
+        }
+        return result[0];
+    }
+
+}
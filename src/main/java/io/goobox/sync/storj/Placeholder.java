@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.UUID;
+
+// a sparse local stub of a cloud file - it takes no disk space until the file is hydrated
+public class Placeholder {
+
+    // replaces the local file in one move, so it never goes missing and looks deleted
+    public static void replace(Path path, long size, long modifiedTime) throws IOException {
+        StagingArea staging = App.getInstance().getStagingArea();
+        Path staged = staging.getDir().resolve(UUID.randomUUID() + ".placeholder");
+        try {
+            create(staged, size, modifiedTime);
+            staging.publish(staged, path);
+        } finally {
+            staging.discard(staged);
+        }
+    }
+
+    public static void create(Path path, long size, long modifiedTime) throws IOException {
+        // the sparse hint is honored only when the file is created
+        try (SeekableByteChannel channel = Files.newByteChannel(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE, StandardOpenOption.SPARSE)) {
+            if (size > 0) {
+                channel.position(size - 1);
+                channel.write(ByteBuffer.wrap(new byte[1]));
+            }
+        }
+
+        // an access time not after the modified time is updated by the next read, even with relatime
+        FileTime time = FileTime.fromMillis(modifiedTime);
+        Files.getFileAttributeView(path, BasicFileAttributeView.class).setTimes(time, time, null);
+    }
+
+    public static void markAccessed(Path path) throws IOException {
+        Files.setAttribute(path, "lastAccessTime", FileTime.fromMillis(System.currentTimeMillis()));
+    }
+
+    // a touched placeholder still reads as zeros, while written content does not
+    public static boolean isEmpty(Path path) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(path)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                for (int i = 0; i < n; i++) {
+                    if (buffer[i] != 0) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    public static boolean isAccessed(Path path) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        return attrs.lastAccessTime().compareTo(attrs.lastModifiedTime()) > 0;
+    }
+
+}
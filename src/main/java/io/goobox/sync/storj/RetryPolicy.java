@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class RetryPolicy {
+
+    private static final Map<ErrorClass, RetryPolicy> policies = new EnumMap<>(ErrorClass.class);
+
+    static {
+        policies.put(ErrorClass.NETWORK, load(ErrorClass.NETWORK, 3000, 300000, Integer.MAX_VALUE, true));
+        policies.put(ErrorClass.BRIDGE, load(ErrorClass.BRIDGE, 3000, 600000, 20, true));
+        policies.put(ErrorClass.FARMER, load(ErrorClass.FARMER, 3000, 60000, 10, false));
+        policies.put(ErrorClass.PERMANENT, new RetryPolicy(0, 0, 0, false));
+    }
+
+    private long baseDelay;
+    private long maxDelay;
+    private int maxAttempts;
+    private boolean tripsBreaker;
+
+    public RetryPolicy(long baseDelay, long maxDelay, int maxAttempts, boolean tripsBreaker) {
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.maxAttempts = maxAttempts;
+        this.tripsBreaker = tripsBreaker;
+    }
+
+    public static RetryPolicy forError(int code) {
+        return policies.get(StorjUtil.getErrorClass(code));
+    }
+
+    public static RetryPolicy forErrorClass(ErrorClass errorClass) {
+        return policies.get(errorClass);
+    }
+
+    private static RetryPolicy load(ErrorClass errorClass, long baseDelay, long maxDelay, int maxAttempts,
+            boolean tripsBreaker) {
+        // e.g. -Dgoobox.retry.bridge.maxAttempts=50
+        String prefix = "goobox.retry." + errorClass + ".";
+        return new RetryPolicy(
+                Long.getLong(prefix + "baseDelay", baseDelay),
+                Long.getLong(prefix + "maxDelay", maxDelay),
+                Integer.getInteger(prefix + "maxAttempts", maxAttempts),
+                Boolean.parseBoolean(System.getProperty(prefix + "tripsBreaker", String.valueOf(tripsBreaker))));
+    }
+
+    public long getBaseDelay() {
+        return baseDelay;
+    }
+
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public boolean tripsBreaker() {
+        return tripsBreaker;
+    }
+
+    public boolean canRetry(int attempts) {
+        return attempts <= maxAttempts;
+    }
+
+    public long getDelay(int attempts) {
+        // exponential backoff capped at the max delay
+        long delay = baseDelay;
+        for (int i = 1; i < attempts && delay < maxDelay; i++) {
+            delay *= 2;
+        }
+        delay = Math.min(delay, maxDelay);
+
+        // equal jitter - keep half of the delay and randomize the other half
+        // to avoid all clients retrying at the same time
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+}
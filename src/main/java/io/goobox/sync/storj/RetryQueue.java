@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class RetryQueue extends Thread {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetryQueue.class);
+
+    private DelayQueue<Retry> retries = new DelayQueue<>();
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                RetryableTask task = retries.take().getTask();
+                logger.info("Retrying {} for {} (attempt {})",
+                        task.getClass().getSimpleName(), task.getFileName(), task.getAttempts() + 1);
+                App.getInstance().getTaskQueue().add(task);
+                App.getInstance().getTaskExecutor().interruptSleeping();
+            } catch (InterruptedException e) {
+                // nothing to do
+            }
+        }
+    }
+
+    public void schedule(RetryableTask task, long delay) {
+        retries.add(new Retry(task, System.currentTimeMillis() + delay));
+    }
+
+    public boolean isScheduled(String fileName) {
+        for (Retry retry : retries) {
+            if (retry.getTask().handles(fileName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isEmpty() {
+        return retries.isEmpty();
+    }
+
+    public List<Retry> getRetries() {
+        return new ArrayList<>(retries);
+    }
+
+    public static class Retry implements Delayed {
+
+        private RetryableTask task;
+        private long time;
+
+        public Retry(RetryableTask task, long time) {
+            this.task = task;
+            this.time = time;
+        }
+
+        public RetryableTask getTask() {
+            return task;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(time - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+        }
+
+    }
+
+}
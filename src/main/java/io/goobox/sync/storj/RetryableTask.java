@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public abstract class RetryableTask implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetryableTask.class);
+
+    private volatile int attempts;
+    private volatile int lastError;
+
+    // total transfer time grows with size and bandwidth pacing - the bridge latency is the time to first progress
+    private volatile long transferStart;
+    private volatile long responseTime = -1;
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public int getLastError() {
+        return lastError;
+    }
+
+    public abstract String getFileName();
+
+    public boolean handles(String fileName) {
+        return fileName.equals(getFileName());
+    }
+
+    public boolean isTransfer() {
+        return false;
+    }
+
+    protected void transferStarted() {
+        transferStart = System.currentTimeMillis();
+    }
+
+    protected void transferProgressed() {
+        long start = transferStart;
+        if (start != 0) {
+            transferStart = 0;
+            // the slowest transfer of the run counts
+            responseTime = Math.max(responseTime, System.currentTimeMillis() - start);
+        }
+    }
+
+    public long getLatency(long elapsed) {
+        long response = responseTime;
+        transferStart = 0;
+        responseTime = -1;
+        // runs without a transfer progress are measured as a whole
+        return (response >= 0) ? response : elapsed;
+    }
+
+    protected boolean hasRetryBudget(RetryPolicy policy) {
+        return policy.canRetry(attempts);
+    }
+
+    protected boolean retryLater(int code) {
+        RetryPolicy policy = RetryPolicy.forError(code);
+
+        attempts++;
+        lastError = code;
+
+        if (policy.tripsBreaker()) {
+            App.getInstance().getCircuitBreaker().onFailure();
+        }
+
+        if (!hasRetryBudget(policy)) {
+            logger.error("Giving up on {} after {} attempts", getFileName(), attempts);
+            return false;
+        }
+
+        // schedule the task for later instead of blocking the task executor
+        App.getInstance().getRetryQueue().schedule(this, policy.getDelay(attempts));
+        return true;
+    }
+
+    protected boolean retryAfterListing() {
+        // the cloud file cache may be older than the file that needs the missing content -
+        // the state checks refresh it meanwhile
+        RetryPolicy policy = RetryPolicy.forErrorClass(ErrorClass.BRIDGE);
+
+        attempts++;
+
+        if (!hasRetryBudget(policy)) {
+            logger.error("Giving up on {} after {} attempts", getFileName(), attempts);
+            return false;
+        }
+
+        App.getInstance().getRetryQueue().schedule(this, policy.getDelay(attempts));
+        return true;
+    }
+
+    protected void postpone(long delay) {
+        // run the task later without counting it as a failed attempt
+        App.getInstance().getRetryQueue().schedule(this, delay);
+    }
+
+    protected void succeeded() {
+        completed();
+        App.getInstance().getCircuitBreaker().onSuccess();
+    }
+
+    protected void completed() {
+        // finished without a bridge request - tells nothing about the bridge
+        attempts = 0;
+        lastError = 0;
+    }
+
+}
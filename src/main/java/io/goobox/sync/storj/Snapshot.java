@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Platform;
+
+// Point-in-time copies of files that are never quiet long enough to be uploaded directly
+public class Snapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(Snapshot.class);
+
+    // _IOW(0x94, 9, int)
+    private static final long FICLONE = 0x40049409L;
+
+    // the fallback copy must not starve the process writing the file
+    private static final long COPY_RATE = Long.getLong("goobox.snapshot.copyRate", 32 * 1024 * 1024);
+    private static final int CHUNK = 1024 * 1024;
+
+    private static volatile boolean cloneSupported = Platform.isLinux();
+
+    public static Path take(Path path, Path dir) throws IOException {
+        Path snapshot = Files.createTempFile(dir, "snapshot", null);
+        try {
+            if (!reflink(path, snapshot)) {
+                copy(path, snapshot);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(snapshot);
+            throw e;
+        }
+        return snapshot;
+    }
+
+    // shares the extents of the source, so it is instant and takes no space until either file changes
+    static boolean reflink(Path source, Path target) {
+        if (!cloneSupported) {
+            return false;
+        }
+
+        LibC libc;
+        try {
+            libc = LibC.INSTANCE;
+        } catch (LinkageError e) {
+            logger.warn("Cannot load libc - snapshots are copied", e);
+            cloneSupported = false;
+            return false;
+        }
+
+        int src = libc.open(source.toString(), LibC.O_RDONLY);
+        if (src < 0) {
+            return false;
+        }
+        try {
+            int dst = libc.open(target.toString(), LibC.O_WRONLY | LibC.O_TRUNC);
+            if (dst < 0) {
+                return false;
+            }
+            try {
+                if (libc.ioctl(dst, new NativeLong(FICLONE), src) == 0) {
+                    return true;
+                }
+                // not supported by this file system, or across file systems
+                logger.debug("FICLONE failed for {}: errno {}", source, Native.getLastError());
+                return false;
+            } finally {
+                libc.close(dst);
+            }
+        } finally {
+            libc.close(src);
+        }
+    }
+
+    static void copy(Path source, Path target) throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            // a point in time for the size at least - what is appended later is left out
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                long count = in.transferTo(position, Math.min(CHUNK, size - position), out);
+                if (count <= 0) {
+                    break;
+                }
+                position += count;
+                throttle(start, position);
+            }
+        }
+    }
+
+    private static void throttle(long start, long copied) throws InterruptedIOException {
+        long due = copied * 1000 / COPY_RATE;
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        if (due > elapsed) {
+            try {
+                Thread.sleep(due - elapsed);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+}
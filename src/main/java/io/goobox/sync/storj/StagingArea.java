@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.goobox.sync.storj.db.DB;
+import io.goobox.sync.storj.db.SyncFile;
+import io.storj.libstorj.File;
+
+public class StagingArea {
+
+    private static final Logger logger = LoggerFactory.getLogger(StagingArea.class);
+
+    // inside the sync dir, so publishing a download is a move on the same file system
+    public static final String DIR_NAME = ".goobox-staging";
+
+    // staging paths in use by a download
+    private Set<Path> claimed = ConcurrentHashMap.newKeySet();
+
+    public Path getDir() {
+        return App.getInstance().getSyncDir().resolve(DIR_NAME);
+    }
+
+    public boolean contains(Path path) {
+        return path.startsWith(getDir());
+    }
+
+    public Path getPath(File file) {
+        // libstorj downloads into the download directory under the cloud name
+        return getDir().resolve(file.getName());
+    }
+
+    // libstorj picks the download path from the cloud name, so content shared by several files
+    // (a blob or a segment) must not be downloaded by two tasks at the same time
+    public boolean claim(Path staged) {
+        return claimed.add(staged);
+    }
+
+    public void release(Path staged) {
+        claimed.remove(staged);
+    }
+
+    public boolean init() {
+        try {
+            Files.createDirectories(getDir());
+            try {
+                Files.setAttribute(getDir(), "dos:hidden", true);
+            } catch (UnsupportedOperationException | IOException e) {
+                // not a DOS file system - the dot prefix hides it
+            }
+        } catch (IOException e) {
+            logger.error("Failed creating staging folder", e);
+            return false;
+        }
+
+        cleanUp();
+        return true;
+    }
+
+    public void publish(Path staged, Path target) throws IOException {
+        // the move shows up as a change in the sync dir
+        App.getInstance().getEchoRegistry().expect(target, staged);
+        try {
+            Files.move(staged, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(staged, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public void discard(Path staged) {
+        try {
+            Files.deleteIfExists(staged);
+        } catch (IOException e) {
+            logger.error("Failed deleting staged file " + staged, e);
+        }
+    }
+
+    private void cleanUp() {
+        // libstorj cannot resume a download - the next state check downloads these again
+        for (SyncFile syncFile : DB.getStagedDownloads()) {
+            logger.info("Cleaning up interrupted download of {}", syncFile.getName());
+            discard(Paths.get(syncFile.getStagingPath()));
+            DB.clearStaging(syncFile.getName());
+        }
+        DB.commit();
+
+        // remove anything else left behind by a crash
+        try {
+            Files.walkFileTree(getDir(), new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                    if (!dir.equals(getDir())) {
+                        Files.delete(dir);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            logger.error("Failed cleaning up staging folder", e);
+        }
+    }
+
+}
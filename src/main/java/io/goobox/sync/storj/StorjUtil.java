@@ -20,20 +20,166 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import io.storj.libstorj.File;
 import io.storj.libstorj.Storj;
 
 public class StorjUtil {
 
-    public static long getTime(String storjTimestamp) throws ParseException {
+    // top-level names with this prefix belong to the app - such local files are not synced
+    public static final String RESERVED_PREFIX = ".goobox-";
+
+    // the app writes encoded cloud names only in this folder, any other name is a user file as it is
+    public static final String ENCODED_DIR = ".goobox-encoded/";
+
+    // a staged upload alternates the cloud name of a file between its usual name and the same name
+    // with this suffix in the encoded folder
+    public static final String STAGED_SUFFIX = ".goobox-staged";
+
+    // cloud folder of the objects that pack small files together
+    public static final String PACK_DIR = ".goobox-packs/";
+
+    // deduplicated content is stored once under its fingerprint and each file refers to it
+    // with a small object named <file name><REF_MARKER><fingerprint> in the encoded folder
+    public static final String DEDUP_DIR = ".goobox-dedup/";
+    public static final String REF_MARKER = ".goobox-ref-";
+    private static final Pattern REF_NAME = Pattern.compile("(.*)" + Pattern.quote(REF_MARKER) + "([0-9a-f]{64})");
+
+    // large files are stored as segments named by their fingerprint and a manifest
+    // named <file name><MANIFEST_SUFFIX> in the encoded folder listing them
+    public static final String SEGMENT_DIR = ".goobox-segments/";
+    public static final String MANIFEST_SUFFIX = ".goobox-manifest";
+
+    private static final long INVALID_TIME = Long.MIN_VALUE;
+
+    private static final ThreadLocal<SimpleDateFormat> TIMESTAMP_FORMAT = ThreadLocal.withInitial(() -> {
         SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
         sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
-        Date date = sdf.parse(storjTimestamp);
+        return sdf;
+    });
+
+    // parsed creation times by file id, checked against the timestamp since ids are not unique in every listing
+    private static final Map<String, CreatedTime> createdTimes = new ConcurrentHashMap<>();
+
+    public static long getTime(String storjTimestamp) throws ParseException {
+        long time = parseTimestamp(storjTimestamp);
+        if (time != INVALID_TIME) {
+            return time;
+        }
+        // anything unusual goes through the lenient general parser
+        Date date = TIMESTAMP_FORMAT.get().parse(storjTimestamp);
         return date.getTime();
     }
 
+    // the same files come back with every listing and are looked at several times per check
+    public static long getCreatedTime(File file) throws ParseException {
+        String created = file.getCreated();
+        String id = file.getId();
+        if (id == null) {
+            return getTime(created);
+        }
+
+        CreatedTime memo = createdTimes.get(id);
+        if (memo != null && (memo.timestamp == created || memo.timestamp.equals(created))) {
+            return memo.time;
+        }
+        long time = getTime(created);
+        createdTimes.put(id, new CreatedTime(created, time));
+        return time;
+    }
+
+    public static void retainCreatedTimes(File[] files) {
+        Set<String> ids = new HashSet<>(files.length * 2);
+        for (File file : files) {
+            ids.add(file.getId());
+        }
+        createdTimes.keySet().retainAll(ids);
+    }
+
+    // the fixed yyyy-MM-dd'T'HH:mm:ss.SSS'Z' layout of the bridge, without allocating
+    static long parseTimestamp(String s) {
+        if (s == null || s.length() != 24 || s.charAt(4) != '-' || s.charAt(7) != '-' || s.charAt(10) != 'T'
+                || s.charAt(13) != ':' || s.charAt(16) != ':' || s.charAt(19) != '.' || s.charAt(23) != 'Z') {
+            return INVALID_TIME;
+        }
+
+        int year = parseDigits(s, 0, 4);
+        int month = parseDigits(s, 5, 2);
+        int day = parseDigits(s, 8, 2);
+        int hour = parseDigits(s, 11, 2);
+        int minute = parseDigits(s, 14, 2);
+        int second = parseDigits(s, 17, 2);
+        int millis = parseDigits(s, 20, 3);
+
+        // the general parser uses the Julian calendar before 1583 and rolls over out of range fields
+        if (year < 1583 || month < 1 || month > 12 || day < 1 || day > getDaysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59 || millis < 0) {
+            return INVALID_TIME;
+        }
+
+        long days = getEpochDay(year, month, day);
+        return (((days * 24 + hour) * 60 + minute) * 60 + second) * 1000 + millis;
+    }
+
+    private static int parseDigits(String s, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static int getDaysInMonth(int year, int month) {
+        switch (month) {
+        case 2:
+            return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+        case 4:
+        case 6:
+        case 9:
+        case 11:
+            return 30;
+        default:
+            return 31;
+        }
+    }
+
+    // days since 1970-01-01 in the Gregorian calendar
+    private static long getEpochDay(int year, int month, int day) {
+        long y = (month <= 2) ? year - 1 : year;
+        long era = y / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + ((month > 2) ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static class CreatedTime {
+
+        private String timestamp;
+        private long time;
+
+        CreatedTime(String timestamp, long time) {
+            this.timestamp = timestamp;
+            this.time = time;
+        }
+
+    }
+
     public static String getStorjName(Path path) {
         String name = App.getInstance().getSyncDir().relativize(path).toString();
         name = name.replace('\\', '/');
@@ -43,12 +189,118 @@ public class StorjUtil {
         return name;
     }
 
+    public static boolean isReserved(String name) {
+        return name.startsWith(RESERVED_PREFIX);
+    }
+
+    public static boolean isEncoded(String storjName) {
+        return storjName.startsWith(ENCODED_DIR);
+    }
+
+    public static String getLogicalName(String storjName) {
+        String name = getContentName(storjName);
+        if (!isEncoded(name)) {
+            return name;
+        }
+
+        name = name.substring(ENCODED_DIR.length(), name.length() - Codec.of(name).getSuffix().length());
+        Matcher matcher = REF_NAME.matcher(name);
+        if (matcher.matches()) {
+            return matcher.group(1);
+        }
+        if (name.endsWith(MANIFEST_SUFFIX)) {
+            return name.substring(0, name.length() - MANIFEST_SUFFIX.length());
+        }
+        return name;
+    }
+
+    // the name without the suffix of a staged upload
+    public static String getContentName(String storjName) {
+        if (isEncoded(storjName) && storjName.endsWith(STAGED_SUFFIX)) {
+            return storjName.substring(0, storjName.length() - STAGED_SUFFIX.length());
+        }
+        return storjName;
+    }
+
+    public static String getStagedName(String storjName) {
+        return (isEncoded(storjName) ? storjName : ENCODED_DIR + storjName) + STAGED_SUFFIX;
+    }
+
+    public static List<String> getPossibleNames(String logicalName) {
+        List<String> names = new ArrayList<>();
+        for (Codec codec : Codec.values()) {
+            names.add(codec.getStorjName(logicalName));
+            names.add(getStagedName(codec.getStorjName(logicalName)));
+        }
+        names.add(getManifestName(logicalName));
+        names.add(getStagedName(getManifestName(logicalName)));
+        return names;
+    }
+
+    public static String getRefName(String logicalName, String fingerprint) {
+        return ENCODED_DIR + logicalName + REF_MARKER + fingerprint;
+    }
+
+    public static String getRefFingerprint(String storjName) {
+        if (!isEncoded(storjName)) {
+            return null;
+        }
+        Matcher matcher = REF_NAME.matcher(storjName.substring(ENCODED_DIR.length()));
+        return matcher.matches() ? matcher.group(2) : null;
+    }
+
+    public static boolean isBlob(String storjName) {
+        return storjName.startsWith(DEDUP_DIR);
+    }
+
+    public static String getBlobName(String fingerprint) {
+        return DEDUP_DIR + fingerprint;
+    }
+
+    public static String getBlobFingerprint(String storjName) {
+        return storjName.substring(DEDUP_DIR.length());
+    }
+
+    public static boolean isSegment(String storjName) {
+        return storjName.startsWith(SEGMENT_DIR);
+    }
+
+    public static String getSegmentName(String fingerprint) {
+        return SEGMENT_DIR + fingerprint;
+    }
+
+    public static String getSegmentFingerprint(String storjName) {
+        return storjName.substring(SEGMENT_DIR.length());
+    }
+
+    public static boolean isManifest(String storjName) {
+        String name = getContentName(storjName);
+        return isEncoded(name) && name.endsWith(MANIFEST_SUFFIX);
+    }
+
+    public static String getManifestName(String logicalName) {
+        return ENCODED_DIR + logicalName + MANIFEST_SUFFIX;
+    }
+
+    public static boolean isPack(String storjName) {
+        return storjName.startsWith(PACK_DIR);
+    }
+
+    public static String newPackName() {
+        return PACK_DIR + UUID.randomUUID() + ".pack";
+    }
+
     public static boolean isTemporaryError(int code) {
+        return getErrorClass(code).isTemporary();
+    }
+
+    public static ErrorClass getErrorClass(int code) {
         switch (code) {
         case Storj.CURLE_COULDNT_RESOLVE_PROXY:
         case Storj.CURLE_COULDNT_RESOLVE_HOST:
         case Storj.CURLE_COULDNT_CONNECT:
         case Storj.CURLE_OPERATION_TIMEDOUT:
+            return ErrorClass.NETWORK;
         case Storj.HTTP_INTERNAL_SERVER_ERROR:
         case Storj.HTTP_SERVICE_UNAVAILABLE:
         case Storj.STORJ_BRIDGE_REQUEST_ERROR:
@@ -59,11 +311,12 @@ public class StorjUtil {
         case Storj.STORJ_BRIDGE_POINTER_ERROR:
         case Storj.STORJ_BRIDGE_REPOINTER_ERROR:
         case Storj.STORJ_BRIDGE_OFFER_ERROR:
+            return ErrorClass.BRIDGE;
         case Storj.STORJ_FARMER_REQUEST_ERROR:
         case Storj.STORJ_FARMER_TIMEOUT_ERROR:
-            return true;
+            return ErrorClass.FARMER;
         default:
-            return false;
+            return ErrorClass.PERMANENT;
         }
     }
 
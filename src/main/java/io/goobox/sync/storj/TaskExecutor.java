@@ -16,21 +16,61 @@
  */
 package io.goobox.sync.storj;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 public class TaskExecutor extends Thread {
 
     private TaskQueue tasks;
     private volatile Runnable currentTask;
 
+    private ConcurrencyController transfers = ConcurrencyController.load("transfers", 1, 4);
+    private ConcurrencyController requests = ConcurrencyController.load("requests", 1, 8);
+    private ExecutorService workers = Executors.newCachedThreadPool();
+
+    // guarded by this - the task running for each file, and the tasks for the same file waiting for it
+    private Map<String, RetryableTask> running = new HashMap<>();
+    private Map<String, List<RetryableTask>> waiting = new HashMap<>();
+
     public TaskExecutor(TaskQueue tasks) {
         this.tasks = tasks;
     }
 
+    public ConcurrencyController getTransferController() {
+        return transfers;
+    }
+
+    public ConcurrencyController getRequestController() {
+        return requests;
+    }
+
     @Override
     public void run() {
         while (true) {
             try {
                 currentTask = tasks.take();
-                currentTask.run();
+                if (isBridgePaused(currentTask)) {
+                    // bridge requests are paused by the circuit breaker - try again when it reopens
+                    CircuitBreaker breaker = App.getInstance().getCircuitBreaker();
+                    App.getInstance().getRetryQueue().schedule((RetryableTask) currentTask,
+                            breaker.getRemainingOpenTime());
+                } else if (currentTask instanceof RetryableTask && !(currentTask instanceof CheckStateTask)) {
+                    if (start((RetryableTask) currentTask)) {
+                        submit((RetryableTask) currentTask);
+                    }
+                } else {
+                    if (currentTask instanceof CheckStateTask) {
+                        // the state check must see the results of all running tasks
+                        transfers.awaitIdle();
+                        requests.awaitIdle();
+                    }
+                    currentTask.run();
+                    App.getInstance().getCircuitBreaker().onRequestFinished(currentTask);
+                }
                 currentTask = null;
             } catch (InterruptedException e) {
                 // nothing to do
@@ -38,6 +78,76 @@ public class TaskExecutor extends Thread {
         }
     }
 
+    private void submit(final RetryableTask task) throws InterruptedException {
+        final ConcurrencyController controller = task.isTransfer() ? transfers : requests;
+        if (task.isTransfer()) {
+            // each transfer runs at link speed and the limiter pauses between them, so parallel ones would burst
+            transfers.setCap(isBandwidthLimited() ? 1 : 0);
+        }
+        controller.acquire();
+
+        workers.execute(new Runnable() {
+            @Override
+            public void run() {
+                int attempts = task.getAttempts();
+                long start = System.currentTimeMillis();
+                try {
+                    task.run();
+                } finally {
+                    finish(task);
+                    long latency = task.getLatency(System.currentTimeMillis() - start);
+                    controller.release(latency, task.getAttempts() > attempts);
+                    App.getInstance().getCircuitBreaker().onRequestFinished(task);
+                }
+            }
+        });
+    }
+
+    // two tasks for the same file would overwrite each other's cloud file and DB state
+    private synchronized boolean start(RetryableTask task) {
+        String fileName = task.getFileName();
+        if (running.containsKey(fileName)) {
+            waiting.computeIfAbsent(fileName, k -> new ArrayList<>()).add(task);
+            return false;
+        }
+        running.put(fileName, task);
+        return true;
+    }
+
+    private synchronized void finish(RetryableTask task) {
+        String fileName = task.getFileName();
+        running.remove(fileName);
+        List<RetryableTask> next = waiting.remove(fileName);
+        if (next != null) {
+            // queued before the check that waits for the running tasks
+            tasks.addAll(next);
+        }
+    }
+
+    public synchronized boolean isRunning(String fileName) {
+        for (RetryableTask task : running.values()) {
+            if (task.handles(fileName)) {
+                return true;
+            }
+        }
+        for (List<RetryableTask> list : waiting.values()) {
+            for (RetryableTask task : list) {
+                if (task.handles(fileName)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean isBandwidthLimited() {
+        return App.getInstance().getUploadLimiter().isLimited() || App.getInstance().getDownloadLimiter().isLimited();
+    }
+
+    private boolean isBridgePaused(Runnable task) {
+        return task instanceof RetryableTask && !App.getInstance().getCircuitBreaker().allowRequest(task);
+    }
+
     public void interruptSleeping() {
         if (currentTask instanceof SleepTask) {
             ((SleepTask) currentTask).interrupt();
@@ -34,4 +34,13 @@ public class TaskQueue extends LinkedBlockingQueue<Runnable> {
         return super.add(task);
     }
 
+    public boolean isPending(String fileName) {
+        for (Runnable task : this) {
+            if (task instanceof RetryableTask && ((RetryableTask) task).handles(fileName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
 }
@@ -17,13 +17,22 @@
 package io.goobox.sync.storj;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.goobox.sync.storj.db.DB;
+import io.goobox.sync.storj.db.SyncFile;
+import io.goobox.sync.storj.segment.Manifest;
+import io.goobox.sync.storj.segment.Segmenter;
 import io.storj.libstorj.Bucket;
 import io.storj.libstorj.DeleteFileCallback;
 import io.storj.libstorj.File;
@@ -31,150 +40,532 @@ import io.storj.libstorj.GetFileIdCallback;
 import io.storj.libstorj.Storj;
 import io.storj.libstorj.UploadFileCallback;
 
-public class UploadFileTask implements Runnable {
+public class UploadFileTask extends RetryableTask {
 
     private static final Logger logger = LoggerFactory.getLogger(UploadFileTask.class);
 
+    // smaller files are not worth fingerprinting
+    private static final long DEDUP_MIN_SIZE = Long.getLong("goobox.dedup.minSize", 1024 * 1024);
+    // while the upload bandwidth is limited larger files go in segments of this size, so no transfer bursts for long
+    private static final long LIMITED_SEGMENT_SIZE = Long.getLong("goobox.limit.segmentSize", 4 * 1024 * 1024);
+
     private Bucket bucket;
     private Path path;
     private String fileName;
+    // upload a copy taken now instead of the file itself
+    private boolean snapshot;
+
+    // guarded by this - libstorj must not be asked to cancel a finished upload, but is never called under the lock
+    private boolean superseded;
+    private boolean finished;
+    private long uploadState;
+
+    // if the old version was looked up in the cloud file cache instead of the bridge
+    private boolean lookedUpInCache;
 
     public UploadFileTask(Bucket bucket, Path path) {
+        this(bucket, path, false);
+    }
+
+    public UploadFileTask(Bucket bucket, Path path, boolean snapshot) {
         this.bucket = bucket;
         this.path = path;
         this.fileName = StorjUtil.getStorjName(path);
+        this.snapshot = snapshot;
+    }
+
+    @Override
+    public String getFileName() {
+        return fileName;
+    }
+
+    @Override
+    public boolean isTransfer() {
+        return true;
+    }
+
+    public void cancel() {
+        logger.info("File {} changed during upload. Cancelling the upload.", fileName);
+        long state;
+        synchronized (this) {
+            superseded = true;
+            state = finished ? 0 : uploadState;
+        }
+        // outside the lock - libstorj may deliver onError while cancelUpload is running
+        if (state != 0) {
+            App.getInstance().getStorj().cancelUpload(state);
+        }
+    }
+
+    private synchronized boolean finish() {
+        finished = true;
+        return superseded;
     }
 
     @Override
     public void run() {
+        synchronized (this) {
+            superseded = false;
+            finished = false;
+            uploadState = 0;
+        }
+
+        long wait = App.getInstance().getUploadLimiter().getWaitTime();
+        if (wait > 0) {
+            logger.info("Upload bandwidth limit reached. Postponing {} for {} ms.", fileName, wait);
+            postpone(wait);
+            return;
+        }
+
         try {
-            deleteIfExisting();
+            if (snapshot) {
+                uploadSnapshot();
+            } else if (isSegmented()) {
+                uploadSegmented();
+            } else if (isDeduplicated()) {
+                uploadDeduplicated();
+            } else {
+                uploadEncoded();
+            }
+        } catch (IOException e) {
+            logger.error("I/O error", e);
         } catch (InterruptedException e) {
             // interrupted - stop execution
             return;
         }
+    }
+
+    private boolean isSegmented() throws IOException {
+        // the segments already on the cloud are found by the cached listing
+        long segmentSize = getSegmentSize();
+        return segmentSize > 0
+                && App.getInstance().getCloudFileCache().isFresh()
+                && Files.size(path) > segmentSize;
+    }
+
+    private long getSegmentSize() {
+        long segmentSize = App.getInstance().getSegmentSize();
+        if (segmentSize <= 0 && App.getInstance().getUploadLimiter().isLimited()) {
+            return LIMITED_SEGMENT_SIZE;
+        }
+        return segmentSize;
+    }
 
-        logger.info("Uploading file {}", fileName);
+    private void uploadSegmented() throws IOException, InterruptedException {
+        lookedUpInCache = true;
 
-        final boolean repeat[] = { true };
+        long modifiedTime = Files.getLastModifiedTime(path).toMillis();
+        Manifest manifest = Segmenter.scan(path, getSegmentSize());
+        if (Files.getLastModifiedTime(path).toMillis() != modifiedTime) {
+            // leave it for the next check when the file is steady
+            logger.info("File {} changed while scanning segments", fileName);
+            return;
+        }
 
-        while (repeat[0]) {
-            final CountDownLatch latch = new CountDownLatch(1);
+        CloudFileCache cache = App.getInstance().getCloudFileCache();
+        File oldVersion = cache.get(fileName);
+        SyncFile syncFile = DB.get(path);
+        if (oldVersion != null && syncFile != null && oldVersion.getId().equals(syncFile.getStorjId())
+                && manifest.getSegmentSize() == syncFile.getSegmentSize()
+                && manifest.getSegments().equals(syncFile.getSegments())) {
+            // only the modified time changed
+            DB.setSynced(oldVersion, path, modifiedTime, manifest.getSize(), manifest.getFingerprint());
+            DB.setSegments(path, manifest.getSegmentSize(), manifest.getSegments());
+            DB.commit();
+            completed();
+            return;
+        }
+
+        Path stagingDir = App.getInstance().getStagingArea().getDir();
+        Set<String> present = new HashSet<>();
+        List<String> segments = manifest.getSegments();
+        for (int i = 0; i < segments.size(); i++) {
+            String segmentName = StorjUtil.getSegmentName(segments.get(i));
+            if (cache.get(segmentName) != null || !present.add(segments.get(i))) {
+                continue;
+            }
 
-            App.getInstance().getStorj().uploadFile(bucket, fileName, path.toString(), new UploadFileCallback() {
-                @Override
-                public void onProgress(String filePath, double progress, long uploadedBytes, long totalBytes) {
-                    String progressMessage = String.format("  %3d%% %15d/%d bytes",
-                            (int) (progress * 100), uploadedBytes, totalBytes);
-                    logger.info(progressMessage);
+            Path segment = Files.createTempFile(stagingDir, "segment", null);
+            try {
+                Segmenter.extract(path, manifest.getOffset(i), manifest.getLength(i), segment);
+                if (!upload(segmentName, segment.toString(), true)) {
+                    return;
                 }
+            } finally {
+                App.getInstance().getStagingArea().discard(segment);
+            }
 
-                @Override
-                public void onComplete(String filePath, File file) {
-                    try {
-                        DB.setSynced(file, path);
-                        DB.commit();
-                        logger.info("Upload completed");
-                    } catch (IOException e) {
-                        logger.error("I/O error", e);
-                    }
+            if (Files.getLastModifiedTime(path).toMillis() != modifiedTime) {
+                // the segments uploaded so far are collected once they stay unreferenced
+                logger.info("File {} changed while uploading segments", fileName);
+                return;
+            }
+        }
+        logger.info("Uploaded {} of {} segments of {}", present.size(), segments.size(), fileName);
 
-                    repeat[0] = false;
-                    latch.countDown();
+        // replace the manifest only when all its segments are on the cloud
+        String manifestName = StorjUtil.getManifestName(fileName);
+        if (oldVersion != null && manifestName.equals(oldVersion.getName())) {
+            manifestName = StorjUtil.getStagedName(manifestName);
+        }
+
+        Path manifestPath = Files.createTempFile(stagingDir, "manifest", null);
+        try {
+            manifest.write(manifestPath);
+            // the whole-file fingerprint comes from the same pass that fingerprinted the segments
+            if (upload(manifestName, manifestPath.toString(), false, modifiedTime, manifest.getSize(),
+                    manifest.getFingerprint())) {
+                DB.setSegments(path, manifest.getSegmentSize(), segments);
+                DB.commit();
+                if (oldVersion != null) {
+                    App.getInstance().getTaskQueue().add(new DeleteOldVersionTask(bucket, oldVersion));
                 }
+            }
+        } finally {
+            App.getInstance().getStagingArea().discard(manifestPath);
+        }
+    }
 
-                @Override
-                public void onError(String filePath, int code, String message) {
-                    if (StorjUtil.isTemporaryError(code)) {
-                        logger.error("Upload failed due to temporary error: {} ({}). Trying again.", message, code);
-                    } else {
-                        try {
-                            DB.setUploadFailed(path);
-                            DB.commit();
-                            logger.error("Upload failed: {} ({})", message, code);
-                        } catch (IOException e) {
-                            logger.error("I/O error", e);
-                        }
-
-                        repeat[0] = false;
-                    }
+    private boolean isDeduplicated() throws IOException {
+        // the old version can be found only by the cached listing as its name contains its fingerprint
+        return App.getInstance().isDedup()
+                && App.getInstance().getCloudFileCache().isFresh()
+                && Files.size(path) >= DEDUP_MIN_SIZE;
+    }
 
-                    latch.countDown();
+    private void uploadDeduplicated() throws IOException, InterruptedException {
+        lookedUpInCache = true;
+
+        StagingArea staging = App.getInstance().getStagingArea();
+        long modifiedTime = Files.getLastModifiedTime(path).toMillis();
+        long size = Files.size(path);
+
+        // the file is read once - the copy is fingerprinted while written and uploaded as the content
+        Path copy = Files.createTempFile(staging.getDir(), "content", null);
+        try {
+            String fingerprint = Fingerprint.copy(path, copy);
+            if (Files.getLastModifiedTime(path).toMillis() != modifiedTime) {
+                // leave it for the next check when the file is steady
+                logger.info("File {} changed while fingerprinting", fileName);
+                return;
+            }
+
+            File oldVersion = App.getInstance().getCloudFileCache().get(fileName);
+            String refName = StorjUtil.getRefName(fileName, fingerprint);
+            if (oldVersion != null && oldVersion.getName().equals(refName)) {
+                // only the modified time changed
+                DB.setSynced(oldVersion, path, modifiedTime, size, fingerprint);
+                DB.commit();
+                completed();
+                return;
+            }
+
+            DedupStats stats = App.getInstance().getDedupStats();
+            if (DB.getDedupEntry(fingerprint) != null) {
+                logger.info("Content of {} is already on the cloud", fileName);
+                stats.hit(size);
+            } else {
+                stats.miss();
+                if (!upload(StorjUtil.getBlobName(fingerprint), copy.toString(), true, modifiedTime, size,
+                        fingerprint)) {
+                    return;
                 }
-            });
+                DB.addDedupEntry(fingerprint, size);
+                DB.commit();
+            }
 
+            Path ref = Files.createTempFile(staging.getDir(), "ref", null);
             try {
-                latch.await();
+                Files.write(ref, fingerprint.getBytes(StandardCharsets.US_ASCII));
+                if (upload(refName, ref.toString(), false, modifiedTime, size, fingerprint)
+                        && oldVersion != null) {
+                    App.getInstance().getTaskQueue().add(new DeleteOldVersionTask(bucket, oldVersion));
+                }
+            } finally {
+                staging.discard(ref);
+            }
+        } finally {
+            staging.discard(copy);
+        }
+    }
+
+    private File getStagedOldVersion() {
+        CloudFileCache cache = App.getInstance().getCloudFileCache();
+        if (!App.getInstance().isStagedUploads() || !cache.isFresh()) {
+            return null;
+        }
+        return cache.get(fileName);
+    }
 
-                if (repeat[0]) {
-                    // error - wait 3 seconds before trying again
-                    Thread.sleep(3000);
+    private void uploadEncoded() throws IOException, InterruptedException {
+        Codec codec = Codec.NONE;
+        Path compressed = null;
+        String fingerprint = null;
+        long modifiedTime = Files.getLastModifiedTime(path).toMillis();
+        long size = Files.size(path);
+        if (App.getInstance().isCompression() && Compressor.isEligible(path)) {
+            // the fingerprint is computed from the content read for the compression
+            MessageDigest digest = Fingerprint.newDigest();
+            compressed = Compressor.compress(path, Codec.GZIP, App.getInstance().getStagingArea().getDir(), digest);
+            if (compressed != null) {
+                codec = Codec.GZIP;
+                fingerprint = Fingerprint.toHex(digest.digest());
+            }
+            if (Files.getLastModifiedTime(path).toMillis() != modifiedTime) {
+                // leave it for the next check when the file is steady
+                logger.info("File {} changed while compressing", fileName);
+                if (compressed != null) {
+                    App.getInstance().getStagingArea().discard(compressed);
                 }
-            } catch (InterruptedException e) {
-                // interrupted - stop execution
                 return;
             }
         }
+
+        try {
+            String source = (compressed != null) ? compressed.toString() : path.toString();
+            uploadContent(codec.getStorjName(fileName), source, modifiedTime, size, fingerprint);
+        } finally {
+            if (compressed != null) {
+                App.getInstance().getStagingArea().discard(compressed);
+            }
+        }
+    }
+
+    private void uploadSnapshot() throws IOException, InterruptedException {
+        // the live file keeps changing, so the next check still finds it modified
+        long modifiedTime = Files.getLastModifiedTime(path).toMillis();
+        Path copy = Snapshot.take(path, App.getInstance().getStagingArea().getDir());
+        try {
+            logger.info("Uploading snapshot of {}", fileName);
+            uploadContent(fileName, copy.toString(), modifiedTime, Files.size(copy), null);
+        } finally {
+            App.getInstance().getStagingArea().discard(copy);
+        }
+    }
+
+    private void uploadContent(String storjName, String source, long modifiedTime, long size, String fingerprint)
+            throws InterruptedException {
+        File oldVersion = getStagedOldVersion();
+        if (oldVersion != null) {
+            lookedUpInCache = true;
+
+            // upload under another name while the old version is still available on the cloud
+            if (storjName.equals(oldVersion.getName())) {
+                storjName = StorjUtil.getStagedName(storjName);
+            }
+            if (upload(storjName, source, false, modifiedTime, size, fingerprint)) {
+                App.getInstance().getTaskQueue().add(new DeleteOldVersionTask(bucket, oldVersion));
+            }
+        } else if (deleteIfExisting()) {
+            upload(storjName, source, false, modifiedTime, size, fingerprint);
+        }
+    }
+
+    private boolean upload(String storjName, String localPath, boolean blob) throws InterruptedException {
+        try {
+            // remember what is being uploaded in case the file changes during the upload
+            return upload(storjName, localPath, blob, Files.getLastModifiedTime(path).toMillis(), Files.size(path),
+                    null);
+        } catch (IOException e) {
+            logger.error("I/O error", e);
+            return false;
+        }
     }
 
-    private void deleteIfExisting() throws InterruptedException {
-        final boolean repeat[] = { true };
-
-        while (repeat[0]) {
-            final CountDownLatch latch = new CountDownLatch(1);
-
-            App.getInstance().getStorj().getFileId(bucket, fileName, new GetFileIdCallback() {
-                @Override
-                public void onFileIdReceived(String fileName, String fileId) {
-                    logger.info("Deleting old version of {} on the cloud", fileName);
-
-                    App.getInstance().getStorj().deleteFile(bucket.getId(), fileId, new DeleteFileCallback() {
-                        @Override
-                        public void onFileDeleted(String fileId) {
-                            logger.info("Old version of {} deleted", fileName);
-                            repeat[0] = false;
-                            latch.countDown();
-                        }
-
-                        @Override
-                        public void onError(String fileId, int code, String message) {
-                            if (StorjUtil.isTemporaryError(code)) {
-                                logger.error(
-                                        "Failed deleting old version due to temporary error: {} ({}). Trying again.",
-                                        message, code);
-                            } else {
-                                logger.error("Failed deleting old version: {} ({})", message, code);
-                                repeat[0] = false;
-                            }
-                            latch.countDown();
-                        }
-                    });
+    // the local state and fingerprint of the uploaded content are stored together once it is on the cloud
+    private boolean upload(String storjName, String localPath, final boolean blob, final long localModifiedTime,
+            final long localSize, final String fingerprint) throws InterruptedException {
+        logger.info("Uploading file {}", storjName);
+
+        final boolean uploaded[] = { false };
+        final CountDownLatch latch = new CountDownLatch(1);
+        final BandwidthLimiter limiter = App.getInstance().getUploadLimiter();
+        final long transferred[] = { 0 };
+        // pay the debt of the previous segment or blob here - stalling libstorj callbacks blocks its event loop
+        limiter.pace();
+        transferStarted();
+
+        InFlightUploads inFlightUploads = App.getInstance().getInFlightUploads();
+        if (!snapshot) {
+            // a snapshot does not change with the file
+            inFlightUploads.add(path, this);
+        }
+
+        long state = App.getInstance().getStorj().uploadFile(bucket, storjName, localPath, new UploadFileCallback() {
+            @Override
+            public void onProgress(String filePath, double progress, long uploadedBytes, long totalBytes) {
+                String progressMessage = String.format("  %3d%% %15d/%d bytes",
+                        (int) (progress * 100), uploadedBytes, totalBytes);
+                logger.info(progressMessage);
+
+                transferProgressed();
+                limiter.consume(uploadedBytes - transferred[0]);
+                transferred[0] = uploadedBytes;
+            }
+
+            @Override
+            public void onComplete(String filePath, File file) {
+                finish();
+
+                App.getInstance().getCloudFileCache().put(file);
+                if (blob) {
+                    logger.info("Content upload completed");
+                } else {
+                    // store the local state from the upload start, so a change
+                    // during the upload is still detected by the next check
+                    DB.setSynced(file, path, localModifiedTime, localSize, fingerprint);
+                    DB.commit();
+                    logger.info("Upload completed");
                 }
 
-                @Override
-                public void onError(String fileName, int code, String message) {
-                    if (code == Storj.HTTP_NOT_FOUND) {
-                        // no file to delete
-                        repeat[0] = false;
-                    } else if (StorjUtil.isTemporaryError(code)) {
-                        logger.error(
-                                "Error checking if file with name {} exists due to temporary error: {} ({}). Trying again.",
-                                fileName, message, code);
-                    } else {
-                        logger.error("Error checking if file with name {} exists: {} ({})", fileName, message, code);
-                        repeat[0] = false;
-                    }
+                uploaded[0] = true;
+                succeeded();
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(String filePath, int code, String message) {
+                if (finish()) {
+                    // leave it for upload - the next check will pick it up once the file is steady
+                    logger.info("Upload of {} cancelled", fileName);
                     latch.countDown();
+                    return;
                 }
-            });
 
+                // the cloud state is uncertain after a failed upload
+                App.getInstance().getCloudFileCache().invalidate();
+
+                if (code == Storj.STORJ_BRIDGE_BUCKET_FILE_EXISTS && blob) {
+                    // another device uploaded the same content meanwhile
+                    uploaded[0] = true;
+                } else if (code == Storj.STORJ_BRIDGE_BUCKET_FILE_EXISTS && lookedUpInCache) {
+                    // the cached listing missed a file uploaded meanwhile - look it up on the bridge
+                    logger.info("File {} already exists on the cloud. Trying again.", fileName);
+                    postpone(0);
+                } else if (StorjUtil.isTemporaryError(code) && retryLater(code)) {
+                    logger.error("Upload failed due to temporary error: {} ({}). Trying again later.", message, code);
+                } else {
+                    try {
+                        DB.setUploadFailed(path);
+                        DB.commit();
+                        logger.error("Upload failed: {} ({})", message, code);
+                    } catch (IOException e) {
+                        logger.error("I/O error", e);
+                    }
+                }
+
+                latch.countDown();
+            }
+        });
+
+        boolean cancel;
+        synchronized (this) {
+            uploadState = state;
+            // the file changed before the upload handle was available
+            cancel = superseded && !finished;
+        }
+        if (cancel) {
+            App.getInstance().getStorj().cancelUpload(state);
+        }
+
+        try {
             latch.await();
+        } finally {
+            inFlightUploads.remove(path, this);
+        }
+
+        return uploaded[0];
+    }
+
+    private boolean deleteIfExisting() throws InterruptedException {
+        CloudFileCache cache = App.getInstance().getCloudFileCache();
+        lookedUpInCache = cache.isFresh();
+        if (lookedUpInCache) {
+            // the last listing already knows if there is an old version
+            File file = cache.get(fileName);
+            return file == null || deleteOldVersion(file.getId());
+        }
 
-            if (repeat[0]) {
-                // error - wait 3 seconds before trying again
-                Thread.sleep(3000);
+        // earlier uploads may have stored the file staged or compressed
+        for (String name : StorjUtil.getPossibleNames(fileName)) {
+            if (!deleteIfExisting(name)) {
+                return false;
             }
         }
+        return true;
+    }
+
+    private boolean deleteIfExisting(String storjName) throws InterruptedException {
+        final String oldFileId[] = { null };
+        final boolean retry[] = { false };
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        App.getInstance().getStorj().getFileId(bucket, storjName, new GetFileIdCallback() {
+            @Override
+            public void onFileIdReceived(String fileName, String fileId) {
+                oldFileId[0] = fileId;
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(String fileName, int code, String message) {
+                if (code == Storj.HTTP_NOT_FOUND) {
+                    // no file to delete
+                } else if (StorjUtil.isTemporaryError(code) && retryLater(code)) {
+                    logger.error(
+                            "Error checking if file with name {} exists due to temporary error: {} ({}). Trying again later.",
+                            fileName, message, code);
+                    retry[0] = true;
+                } else {
+                    logger.error("Error checking if file with name {} exists: {} ({})", fileName, message, code);
+                }
+                latch.countDown();
+            }
+        });
+
+        latch.await();
+
+        if (retry[0]) {
+            return false;
+        }
+
+        return oldFileId[0] == null || deleteOldVersion(oldFileId[0]);
+    }
+
+    private boolean deleteOldVersion(String fileId) throws InterruptedException {
+        final boolean retry[] = { false };
+        final CountDownLatch latch = new CountDownLatch(1);
+        final CloudFileCache cache = App.getInstance().getCloudFileCache();
+
+        logger.info("Deleting old version of {} on the cloud", fileName);
+
+        App.getInstance().getStorj().deleteFile(bucket.getId(), fileId, new DeleteFileCallback() {
+            @Override
+            public void onFileDeleted(String fileId) {
+                logger.info("Old version of {} deleted", fileName);
+                cache.remove(fileName);
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(String fileId, int code, String message) {
+                cache.invalidate();
+                if (StorjUtil.isTemporaryError(code) && retryLater(code)) {
+                    logger.error(
+                            "Failed deleting old version due to temporary error: {} ({}). Trying again later.",
+                            message, code);
+                    retry[0] = true;
+                } else {
+                    logger.error("Failed deleting old version: {} ({})", message, code);
+                }
+                latch.countDown();
+            }
+        });
+
+        latch.await();
+
+        // continue with the upload unless a retry is scheduled
+        return !retry[0];
     }
 
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.goobox.sync.storj.db.CloudPack;
+import io.goobox.sync.storj.db.DB;
+import io.goobox.sync.storj.pack.PackMember;
+import io.goobox.sync.storj.pack.PackWriter;
+import io.storj.libstorj.Bucket;
+import io.storj.libstorj.File;
+
+public class UploadPackTask extends PackTask {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadPackTask.class);
+
+    private List<Path> paths;
+    private String packName;
+
+    public UploadPackTask(Bucket bucket, List<Path> paths) {
+        super(bucket);
+        this.paths = paths;
+        this.packName = StorjUtil.newPackName();
+    }
+
+    @Override
+    public String getFileName() {
+        return packName;
+    }
+
+    @Override
+    public boolean handles(String fileName) {
+        for (Path path : paths) {
+            if (fileName.equals(StorjUtil.getStorjName(path))) {
+                return true;
+            }
+        }
+        return super.handles(fileName);
+    }
+
+    @Override
+    public void run() {
+        long wait = App.getInstance().getUploadLimiter().getWaitTime();
+        if (wait > 0) {
+            logger.info("Upload bandwidth limit reached. Postponing {} for {} ms.", packName, wait);
+            postpone(wait);
+            return;
+        }
+
+        Path packPath = null;
+        try {
+            packPath = getStagingPath(packName);
+
+            List<Path> packed = new ArrayList<>();
+            List<Long> sizes = new ArrayList<>();
+            PackWriter writer = new PackWriter(packPath);
+            try {
+                for (Path path : paths) {
+                    if (!Files.exists(path)) {
+                        // deleted in the meantime
+                        continue;
+                    }
+                    long size = Files.size(path);
+                    writer.add(DB.getName(path), path, Files.getLastModifiedTime(path).toMillis());
+                    packed.add(path);
+                    sizes.add(size);
+                }
+            } finally {
+                writer.close();
+            }
+
+            if (packed.isEmpty()) {
+                return;
+            }
+
+            logger.info("Packing {} files into {}", packed.size(), packName);
+
+            File file = uploadPack(packPath, packName);
+            if (file == null) {
+                if (!retrying) {
+                    for (Path path : packed) {
+                        DB.setUploadFailed(path);
+                    }
+                    DB.commit();
+                }
+                return;
+            }
+
+            CloudPack pack = DB.addPack(file, packed.size());
+            List<PackMember> members = writer.getIndex().getMembers();
+            for (int i = 0; i < packed.size(); i++) {
+                PackMember member = members.get(i);
+                // the local state from packing time, so later changes are still detected
+                DB.setPacked(packed.get(i), pack, member.getOffset(), member.getLength(),
+                        member.getModifiedTime(), sizes.get(i));
+            }
+            DB.commit();
+            logger.info("Pack upload completed");
+
+            succeeded();
+        } catch (IOException e) {
+            logger.error("I/O error", e);
+        } catch (InterruptedException e) {
+            // interrupted - stop execution
+            return;
+        } finally {
+            if (packPath != null) {
+                App.getInstance().getStagingArea().discard(packPath);
+            }
+        }
+    }
+
+}
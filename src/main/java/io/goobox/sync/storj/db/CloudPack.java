@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj.db;
+
+import java.io.Serializable;
+
+import org.dizitart.no2.objects.Id;
+
+@SuppressWarnings("serial")
+public class CloudPack implements Serializable {
+
+    @Id
+    private String id;
+
+    private String name;
+
+    private int memberCount;
+
+    // members deleted locally - the other devices learn about them only from a pack without them
+    private int deletedCount;
+
+    private long size;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public int getMemberCount() {
+        return memberCount;
+    }
+
+    public void setMemberCount(int memberCount) {
+        this.memberCount = memberCount;
+    }
+
+    public int getDeletedCount() {
+        return deletedCount;
+    }
+
+    public void setDeletedCount(int deletedCount) {
+        this.deletedCount = deletedCount;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder().append("CloudPack[")
+                .append("name = ").append(name)
+                .append(", memberCount = ").append(memberCount)
+                .append(", deletedCount = ").append(deletedCount)
+                .append(", size = ").append(size)
+                .append(", id = ").append(id)
+                .append("]")
+                .toString();
+    }
+
+}
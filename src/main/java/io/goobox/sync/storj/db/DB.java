@@ -19,6 +19,7 @@ package io.goobox.sync.storj.db;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.dizitart.no2.Nitrite;
@@ -50,6 +51,14 @@ public class DB {
         return db().getRepository(SyncFile.class);
     }
 
+    private static ObjectRepository<CloudPack> packRepo() {
+        return db().getRepository(CloudPack.class);
+    }
+
+    private static ObjectRepository<DedupEntry> dedupRepo() {
+        return db().getRepository(DedupEntry.class);
+    }
+
     private static ObjectFilter withName(String fileName) {
         return ObjectFilters.eq("name", fileName);
     }
@@ -75,7 +84,7 @@ public class DB {
     }
 
     public static String getName(File file) {
-        return file.getName().replaceAll("/+$", ""); // remove trailing slash
+        return StorjUtil.getLogicalName(file.getName()).replaceAll("/+$", ""); // remove trailing slash
     }
 
     public static String getName(Path path) {
@@ -153,9 +162,33 @@ public class DB {
     }
 
     public synchronized static void setSynced(File storjFile, Path localFile) throws IOException {
+        setSynced(storjFile, localFile, null);
+    }
+
+    public synchronized static void setSynced(File storjFile, Path localFile, String fingerprint)
+            throws IOException {
         SyncFile syncFile = getOrCreate(storjFile);
         syncFile.setCloudData(storjFile);
         syncFile.setLocalData(localFile);
+        syncFile.setStagingPath(null);
+        syncFile.setPackId(null);
+        syncFile.setFingerprint(fingerprint);
+        syncFile.setSegments(null);
+        syncFile.setLocalAccessTime(System.currentTimeMillis());
+        syncFile.setState(SyncState.SYNCED);
+        repo().update(syncFile);
+        App.getInstance().getOverlayHelper().refresh(localFile);
+    }
+
+    public synchronized static void setSynced(File storjFile, Path localFile, long localModifiedTime, long localSize,
+            String fingerprint) {
+        SyncFile syncFile = getOrCreate(storjFile);
+        syncFile.setCloudData(storjFile);
+        syncFile.setLocalData(localModifiedTime, localSize);
+        syncFile.setPackId(null);
+        syncFile.setFingerprint(fingerprint);
+        syncFile.setSegments(null);
+        syncFile.setLocalAccessTime(System.currentTimeMillis());
         syncFile.setState(SyncState.SYNCED);
         repo().update(syncFile);
         App.getInstance().getOverlayHelper().refresh(localFile);
@@ -202,11 +235,196 @@ public class DB {
         if (localFile != null && Files.exists(localFile)) {
             syncFile.setLocalData(localFile);
         }
+        syncFile.setStagingPath(null);
         syncFile.setState(SyncState.DOWNLOAD_FAILED);
         repo().update(syncFile);
         App.getInstance().getOverlayHelper().refresh(localFile);
     }
 
+    public synchronized static void setDehydrated(File storjFile, Path localFile) throws IOException {
+        SyncFile syncFile = getOrCreate(storjFile);
+        if (!storjFile.getId().equals(syncFile.getStorjId())) {
+            // the fingerprint and segments of another cloud version
+            syncFile.setFingerprint(null);
+            syncFile.setSegments(null);
+        }
+        syncFile.setCloudData(storjFile);
+        syncFile.setLocalData(localFile);
+        syncFile.setStagingPath(null);
+        syncFile.setPackId(null);
+        syncFile.setState(SyncState.DEHYDRATED);
+        repo().update(syncFile);
+        App.getInstance().getOverlayHelper().refresh(localFile);
+    }
+
+    public synchronized static void dehydrate(Path localFile) throws IOException {
+        // the cloud data stays, including the fingerprint and segments of the content - only the local copy is gone
+        SyncFile syncFile = get(localFile);
+        syncFile.setLocalData(localFile);
+        syncFile.setState(SyncState.DEHYDRATED);
+        repo().update(syncFile);
+        App.getInstance().getOverlayHelper().refresh(localFile);
+    }
+
+    public synchronized static void setAccessTime(String fileName, long accessTime) {
+        SyncFile syncFile = get(fileName);
+        if (syncFile != null) {
+            syncFile.setLocalAccessTime(accessTime);
+            repo().update(syncFile);
+        }
+    }
+
+    public synchronized static List<SyncFile> getEvictable() {
+        List<SyncFile> evictable = new ArrayList<>();
+        for (SyncFile syncFile : all()) {
+            // packed files cannot be downloaded on their own
+            if (syncFile.getState() == SyncState.SYNCED && syncFile.getStorjId() != null && !syncFile.isPacked()) {
+                evictable.add(syncFile);
+            }
+        }
+        return evictable;
+    }
+
+    public synchronized static void setStaging(File storjFile, Path stagingPath) {
+        SyncFile syncFile = get(storjFile);
+        if (syncFile != null) {
+            syncFile.setStagingPath(stagingPath.toString());
+            repo().update(syncFile);
+        }
+    }
+
+    public synchronized static void clearStaging(File storjFile) {
+        clearStaging(getName(storjFile));
+    }
+
+    public synchronized static void clearStaging(String fileName) {
+        SyncFile syncFile = get(fileName);
+        if (syncFile != null && syncFile.getStagingPath() != null) {
+            syncFile.setStagingPath(null);
+            repo().update(syncFile);
+        }
+    }
+
+    public synchronized static List<SyncFile> getStagedDownloads() {
+        List<SyncFile> staged = new ArrayList<>();
+        for (SyncFile syncFile : all()) {
+            if (syncFile.getStagingPath() != null) {
+                staged.add(syncFile);
+            }
+        }
+        return staged;
+    }
+
+    public synchronized static void setPacked(Path path, CloudPack pack, long offset, long length,
+            long localModifiedTime, long localSize) {
+        SyncFile syncFile = getOrCreate(path);
+        syncFile.setStorjId(null);
+        syncFile.setStorjCreatedTime(0);
+        syncFile.setStorjSize(length);
+        syncFile.setPackId(pack.getId());
+        syncFile.setPackOffset(offset);
+        syncFile.setPackLength(length);
+        syncFile.setFingerprint(null);
+        syncFile.setSegments(null);
+        syncFile.setLocalData(localModifiedTime, localSize);
+        syncFile.setStagingPath(null);
+        syncFile.setState(SyncState.SYNCED);
+        repo().update(syncFile);
+        App.getInstance().getOverlayHelper().refresh(path);
+    }
+
+    public synchronized static void movePackMember(String fileName, String oldPackId, CloudPack pack,
+            long offset, long length) {
+        SyncFile syncFile = get(fileName);
+        if (syncFile != null && oldPackId.equals(syncFile.getPackId())) {
+            syncFile.setPackId(pack.getId());
+            syncFile.setPackOffset(offset);
+            syncFile.setPackLength(length);
+            repo().update(syncFile);
+        }
+    }
+
+    public synchronized static List<SyncFile> getPackMembers(String packId) {
+        return repo().find(ObjectFilters.eq("packId", packId)).toList();
+    }
+
+    public synchronized static CloudPack addPack(File storjFile, int memberCount) {
+        CloudPack pack = new CloudPack();
+        pack.setId(storjFile.getId());
+        pack.setName(storjFile.getName());
+        pack.setMemberCount(memberCount);
+        pack.setSize(storjFile.getSize());
+        packRepo().update(ObjectFilters.eq("id", pack.getId()), pack, true);
+        return pack;
+    }
+
+    public synchronized static void addDeletedPackMember(String packId) {
+        CloudPack pack = getPack(packId);
+        if (pack != null) {
+            pack.setDeletedCount(pack.getDeletedCount() + 1);
+            packRepo().update(pack);
+        }
+    }
+
+    public synchronized static CloudPack getPack(String packId) {
+        return packRepo().find(ObjectFilters.eq("id", packId)).firstOrDefault();
+    }
+
+    public synchronized static List<CloudPack> allPacks() {
+        return packRepo().find().toList();
+    }
+
+    public synchronized static void removePack(String packId) {
+        packRepo().remove(ObjectFilters.eq("id", packId));
+    }
+
+    public synchronized static List<SyncFile> getByFingerprint(String fingerprint) {
+        return repo().find(ObjectFilters.eq("fingerprint", fingerprint)).toList();
+    }
+
+    public synchronized static void setSegments(Path path, long segmentSize, List<String> segments) {
+        SyncFile syncFile = get(path);
+        if (syncFile != null) {
+            syncFile.setSegmentSize(segmentSize);
+            syncFile.setSegments(segments);
+            repo().update(syncFile);
+        }
+    }
+
+    public synchronized static List<SyncFile> getSegmentedFiles() {
+        List<SyncFile> segmented = new ArrayList<>();
+        for (SyncFile syncFile : all()) {
+            if (syncFile.isSegmented()) {
+                segmented.add(syncFile);
+            }
+        }
+        return segmented;
+    }
+
+    public synchronized static DedupEntry getDedupEntry(String fingerprint) {
+        return dedupRepo().find(ObjectFilters.eq("fingerprint", fingerprint)).firstOrDefault();
+    }
+
+    public synchronized static DedupEntry addDedupEntry(String fingerprint, long size) {
+        DedupEntry entry = new DedupEntry();
+        entry.setFingerprint(fingerprint);
+        entry.setSize(size);
+        dedupRepo().update(ObjectFilters.eq("fingerprint", fingerprint), entry, true);
+        return entry;
+    }
+
+    public synchronized static void updateDedupEntry(DedupEntry entry) {
+        dedupRepo().update(entry);
+    }
+
+    public synchronized static List<DedupEntry> allDedupEntries() {
+        return dedupRepo().find().toList();
+    }
+
+    public synchronized static void removeDedupEntry(String fingerprint) {
+        dedupRepo().remove(ObjectFilters.eq("fingerprint", fingerprint));
+    }
+
     public synchronized static void setUploadFailed(Path path) throws IOException {
         SyncFile syncFile = get(path);
         if (Files.exists(path)) {
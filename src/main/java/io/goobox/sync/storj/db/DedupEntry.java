@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj.db;
+
+import java.io.Serializable;
+
+import org.dizitart.no2.objects.Id;
+
+@SuppressWarnings("serial")
+public class DedupEntry implements Serializable {
+
+    @Id
+    private String fingerprint;
+
+    private long size;
+
+    // number of files referring to the content in the last listing
+    private int refCount;
+
+    // when the content became unreferenced or 0
+    private long orphanSince;
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public int getRefCount() {
+        return refCount;
+    }
+
+    public void setRefCount(int refCount) {
+        this.refCount = refCount;
+    }
+
+    public long getOrphanSince() {
+        return orphanSince;
+    }
+
+    public void setOrphanSince(long orphanSince) {
+        this.orphanSince = orphanSince;
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder().append("DedupEntry[")
+                .append("fingerprint = ").append(fingerprint)
+                .append(", size = ").append(size)
+                .append(", refCount = ").append(refCount)
+                .append(", orphanSince = ").append(orphanSince)
+                .append("]")
+                .toString();
+    }
+
+}
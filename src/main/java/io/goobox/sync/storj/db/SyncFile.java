@@ -21,11 +21,13 @@ import java.io.Serializable;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.ParseException;
+import java.util.List;
 
 import org.dizitart.no2.objects.Id;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.goobox.sync.storj.Codec;
 import io.goobox.sync.storj.StorjUtil;
 import io.storj.libstorj.File;
 
@@ -47,8 +49,32 @@ public class SyncFile implements Serializable {
 
     private long localSize;
 
+    // last known use of the local copy - the least recently used files are evicted first
+    private long localAccessTime;
+
     private SyncState state;
 
+    // download in progress in the staging area
+    private String stagingPath;
+
+    // small files stored as a member of a pack object
+    private String packId;
+
+    private long packOffset;
+
+    private long packLength;
+
+    // content fingerprint of deduplicated files
+    private String fingerprint;
+
+    // encoding of the cloud content
+    private Codec codec;
+
+    // segment fingerprints of large files stored as a manifest
+    private long segmentSize;
+
+    private List<String> segments;
+
     public String getName() {
         return name;
     }
@@ -97,6 +123,14 @@ public class SyncFile implements Serializable {
         this.localSize = localSize;
     }
 
+    public long getLocalAccessTime() {
+        return localAccessTime;
+    }
+
+    public void setLocalAccessTime(long localAccessTime) {
+        this.localAccessTime = localAccessTime;
+    }
+
     public SyncState getState() {
         return state;
     }
@@ -105,19 +139,96 @@ public class SyncFile implements Serializable {
         this.state = state;
     }
 
+    public String getStagingPath() {
+        return stagingPath;
+    }
+
+    public void setStagingPath(String stagingPath) {
+        this.stagingPath = stagingPath;
+    }
+
+    public String getPackId() {
+        return packId;
+    }
+
+    public void setPackId(String packId) {
+        this.packId = packId;
+    }
+
+    public long getPackOffset() {
+        return packOffset;
+    }
+
+    public void setPackOffset(long packOffset) {
+        this.packOffset = packOffset;
+    }
+
+    public long getPackLength() {
+        return packLength;
+    }
+
+    public void setPackLength(long packLength) {
+        this.packLength = packLength;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    public Codec getCodec() {
+        return codec;
+    }
+
+    public void setCodec(Codec codec) {
+        this.codec = codec;
+    }
+
+    public long getSegmentSize() {
+        return segmentSize;
+    }
+
+    public void setSegmentSize(long segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public List<String> getSegments() {
+        return segments;
+    }
+
+    public void setSegments(List<String> segments) {
+        this.segments = segments;
+    }
+
+    public boolean isSegmented() {
+        return segments != null;
+    }
+
+    public boolean isPacked() {
+        return packId != null;
+    }
+
     public void setCloudData(File file) {
         setStorjId(file.getId());
         try {
-            setStorjCreatedTime(StorjUtil.getTime(file.getCreated()));
+            setStorjCreatedTime(StorjUtil.getCreatedTime(file));
         } catch (ParseException e) {
             logger.error("Cannot parse timestamp", e);
         }
         setStorjSize(file.getSize());
+        setCodec(Codec.of(file.getName()));
     }
 
     public void setLocalData(Path path) throws IOException {
-        setLocalModifiedTime(Files.getLastModifiedTime(path).toMillis());
-        setLocalSize(Files.size(path));
+        setLocalData(Files.getLastModifiedTime(path).toMillis(), Files.size(path));
+    }
+
+    public void setLocalData(long localModifiedTime, long localSize) {
+        setLocalModifiedTime(localModifiedTime);
+        setLocalSize(localSize);
     }
 
     @Override
@@ -129,7 +240,11 @@ public class SyncFile implements Serializable {
                 .append(", localModified = ").append(localModifiedTime)
                 .append(", storjSize = ").append(storjSize)
                 .append(", localSize = ").append(localSize)
+                .append(", localAccessed = ").append(localAccessTime)
                 .append(", storjId = ").append(storjId)
+                .append(", stagingPath = ").append(stagingPath)
+                .append(", packId = ").append(packId)
+                .append(", fingerprint = ").append(fingerprint)
                 .append("]")
                 .toString();
     }
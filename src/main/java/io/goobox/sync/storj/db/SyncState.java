@@ -27,7 +27,8 @@ public enum SyncState {
     FOR_CLOUD_CREATE_DIR,
     DOWNLOAD_FAILED,
     UPLOAD_FAILED,
-    CONFLICT;
+    CONFLICT,
+    DEHYDRATED;
 
     public boolean isSynced() {
         return this == SYNCED;
@@ -51,4 +52,8 @@ public enum SyncState {
         return this == CONFLICT;
     }
 
+    public boolean isDehydrated() {
+        return this == DEHYDRATED;
+    }
+
 }
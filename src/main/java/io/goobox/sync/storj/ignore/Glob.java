@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj.ignore;
+
+import java.util.Arrays;
+
+// A compiled glob for a single path segment: *, ?, [a-z], [!a-z] and \ escapes
+public class Glob {
+
+    private static final int LITERAL = 0;
+    private static final int ANY = 1;
+    private static final int STAR = 2;
+    private static final int CLASS = 3;
+
+    // shapes with a fast path
+    private static final int EXACT = 0;
+    private static final int SUFFIX = 1;
+    private static final int PREFIX = 2;
+    private static final int GENERAL = 3;
+
+    private int shape;
+    private String literal;
+
+    private int[] kinds;
+    private char[] chars;
+    private char[][] classes;
+    private boolean[] negated;
+
+    public Glob(String pattern) {
+        int length = pattern.length();
+        kinds = new int[length];
+        chars = new char[length];
+        classes = new char[length][];
+        negated = new boolean[length];
+
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            char c = pattern.charAt(i);
+            if (c == '\\' && i + 1 < length) {
+                kinds[n] = LITERAL;
+                chars[n++] = pattern.charAt(++i);
+            } else if (c == '*') {
+                if (n == 0 || kinds[n - 1] != STAR) {
+                    kinds[n++] = STAR;
+                }
+            } else if (c == '?') {
+                kinds[n++] = ANY;
+            } else if (c == '[' && pattern.indexOf(']', i + 2) > 0) {
+                i = parseClass(pattern, i + 1, n);
+                kinds[n++] = CLASS;
+            } else {
+                kinds[n] = LITERAL;
+                chars[n++] = c;
+            }
+        }
+        kinds = Arrays.copyOf(kinds, n);
+
+        shape = getShape();
+    }
+
+    public boolean isLiteral() {
+        return shape == EXACT;
+    }
+
+    public String getLiteral() {
+        return literal;
+    }
+
+    public boolean matches(String name) {
+        switch (shape) {
+        case EXACT:
+            return name.equals(literal);
+        case SUFFIX:
+            return name.endsWith(literal);
+        case PREFIX:
+            return name.startsWith(literal);
+        default:
+            return matchesGeneral(name);
+        }
+    }
+
+    private int getShape() {
+        int stars = 0;
+        for (int kind : kinds) {
+            if (kind == STAR) {
+                stars++;
+            } else if (kind != LITERAL) {
+                return GENERAL;
+            }
+        }
+
+        if (stars == 0) {
+            literal = new String(chars, 0, kinds.length);
+            return EXACT;
+        }
+        if (stars == 1 && kinds[0] == STAR) {
+            literal = new String(chars, 1, kinds.length - 1);
+            return SUFFIX;
+        }
+        if (stars == 1 && kinds[kinds.length - 1] == STAR) {
+            literal = new String(chars, 0, kinds.length - 1);
+            return PREFIX;
+        }
+        return GENERAL;
+    }
+
+    private int parseClass(String pattern, int start, int n) {
+        int i = start;
+        if (pattern.charAt(i) == '!' || pattern.charAt(i) == '^') {
+            negated[n] = true;
+            i++;
+        }
+
+        // pairs of range bounds
+        StringBuilder ranges = new StringBuilder();
+        boolean first = true;
+        while (i < pattern.length() && (first || pattern.charAt(i) != ']')) {
+            char lo = pattern.charAt(i);
+            char hi = lo;
+            if (i + 2 < pattern.length() && pattern.charAt(i + 1) == '-' && pattern.charAt(i + 2) != ']') {
+                hi = pattern.charAt(i + 2);
+                i += 2;
+            }
+            ranges.append(lo).append(hi);
+            i++;
+            first = false;
+        }
+        classes[n] = ranges.toString().toCharArray();
+        return i;
+    }
+
+    // wildcard matching with backtracking to the last star only, so linear in practice
+    private boolean matchesGeneral(String name) {
+        int p = 0;
+        int s = 0;
+        int star = -1;
+        int starS = 0;
+        int length = name.length();
+        while (s < length) {
+            if (p < kinds.length && kinds[p] != STAR && matchesOne(p, name.charAt(s))) {
+                p++;
+                s++;
+            } else if (p < kinds.length && kinds[p] == STAR) {
+                star = p++;
+                starS = s;
+            } else if (star >= 0) {
+                p = star + 1;
+                s = ++starS;
+            } else {
+                return false;
+            }
+        }
+        while (p < kinds.length && kinds[p] == STAR) {
+            p++;
+        }
+        return p == kinds.length;
+    }
+
+    private boolean matchesOne(int p, char c) {
+        switch (kinds[p]) {
+        case LITERAL:
+            return chars[p] == c;
+        case ANY:
+            return true;
+        default:
+            char[] ranges = classes[p];
+            for (int i = 0; i < ranges.length; i += 2) {
+                if (c >= ranges[i] && c <= ranges[i + 1]) {
+                    return !negated[p];
+                }
+            }
+            return negated[p];
+        }
+    }
+
+}
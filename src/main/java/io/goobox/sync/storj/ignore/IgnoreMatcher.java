@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj.ignore;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.goobox.sync.storj.App;
+import io.goobox.sync.storj.StorjUtil;
+
+// Applies the ignore files of the sync dir, each to its own directory and below
+public class IgnoreMatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(IgnoreMatcher.class);
+
+    public static final String FILE_NAME = ".gooboxignore";
+
+    // the rules in effect in each directory, outermost first
+    private Map<Path, Chain> chains = new ConcurrentHashMap<>();
+
+    public static boolean isIgnoreFile(Path path) {
+        Path name = path.getFileName();
+        return name != null && name.toString().equals(FILE_NAME);
+    }
+
+    // for walks that never enter ignored directories, so only the path itself is checked
+    public boolean isIgnored(Path path, boolean dir) {
+        Path syncDir = App.getInstance().getSyncDir();
+        if (!path.startsWith(syncDir) || path.equals(syncDir)) {
+            return false;
+        }
+        String[] segments = getSegments(syncDir, path);
+        if (StorjUtil.isReserved(segments[0])) {
+            return true;
+        }
+        return isIgnored(getChain(path.getParent(), syncDir), segments, segments.length, () -> dir);
+    }
+
+    // for single paths, e.g. from file events - checks the parent directories too
+    public boolean isIgnored(Path path) {
+        Path syncDir = App.getInstance().getSyncDir();
+        if (!path.startsWith(syncDir) || path.equals(syncDir)) {
+            return false;
+        }
+        String[] segments = getSegments(syncDir, path);
+        if (StorjUtil.isReserved(segments[0])) {
+            // the staging folder and names the app encodes on the cloud
+            return true;
+        }
+        Path dir = syncDir;
+        for (int end = 1; end < segments.length; end++) {
+            if (isIgnored(getChain(dir, syncDir), segments, end, () -> true)) {
+                return true;
+            }
+            dir = dir.resolve(segments[end - 1]);
+        }
+        return isIgnored(getChain(dir, syncDir), segments, segments.length, () -> Files.isDirectory(path));
+    }
+
+    // the ignore file in the directory was changed
+    public void invalidate(Path dir) {
+        chains.keySet().removeIf(path -> path.startsWith(dir));
+    }
+
+    public void invalidateAll() {
+        chains.clear();
+    }
+
+    private boolean isIgnored(Chain chain, String[] segments, int end, BooleanSupplier dir) {
+        boolean ignored = false;
+        for (int i = 0; i < chain.rules.length; i++) {
+            // deeper ignore files override the outer ones
+            Boolean result = chain.rules[i].match(segments, chain.depths[i], end, dir);
+            if (result != null) {
+                ignored = result;
+            }
+        }
+        return ignored;
+    }
+
+    private Chain getChain(Path dir, Path syncDir) {
+        Chain chain = chains.get(dir);
+        if (chain == null) {
+            Chain parent = dir.equals(syncDir) ? Chain.EMPTY : getChain(dir.getParent(), syncDir);
+            int depth = dir.equals(syncDir) ? 0 : syncDir.relativize(dir).getNameCount();
+            chain = parent.with(load(dir), depth);
+            chains.put(dir, chain);
+        }
+        return chain;
+    }
+
+    private IgnoreRules load(Path dir) {
+        try {
+            return IgnoreRules.parse(Files.readAllLines(dir.resolve(FILE_NAME), StandardCharsets.UTF_8));
+        } catch (NoSuchFileException e) {
+            return IgnoreRules.EMPTY;
+        } catch (IOException e) {
+            logger.warn("Cannot read {} in {}", FILE_NAME, dir, e);
+            return IgnoreRules.EMPTY;
+        }
+    }
+
+    private static String[] getSegments(Path syncDir, Path path) {
+        Path relative = syncDir.relativize(path);
+        String[] segments = new String[relative.getNameCount()];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = relative.getName(i).toString();
+        }
+        return segments;
+    }
+
+    private static class Chain {
+
+        static final Chain EMPTY = new Chain(new IgnoreRules[0], new int[0]);
+
+        IgnoreRules[] rules;
+        // how many segments below the sync dir each ignore file is
+        int[] depths;
+
+        Chain(IgnoreRules[] rules, int[] depths) {
+            this.rules = rules;
+            this.depths = depths;
+        }
+
+        Chain with(IgnoreRules own, int depth) {
+            if (own.isEmpty()) {
+                // most directories have no ignore file and share the parent chain
+                return this;
+            }
+            Chain chain = new Chain(Arrays.copyOf(rules, rules.length + 1), Arrays.copyOf(depths, depths.length + 1));
+            chain.rules[rules.length] = own;
+            chain.depths[depths.length] = depth;
+            return chain;
+        }
+
+    }
+
+}
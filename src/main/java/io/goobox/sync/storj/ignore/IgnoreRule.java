@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj.ignore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// One line of an ignore file, with gitignore semantics
+public class IgnoreRule {
+
+    private int order;
+    private boolean negated;
+    private boolean dirOnly;
+    private boolean anchored;
+    // null stands for **
+    private Glob[] segments;
+
+    IgnoreRule(int order, boolean negated, boolean dirOnly, boolean anchored, Glob[] segments) {
+        this.order = order;
+        this.negated = negated;
+        this.dirOnly = dirOnly;
+        this.anchored = anchored;
+        this.segments = segments;
+    }
+
+    // null for blank lines and comments
+    public static IgnoreRule parse(String line, int order) {
+        String pattern = line;
+        // trailing spaces are ignored unless escaped
+        int end = pattern.length();
+        while (end > 0 && pattern.charAt(end - 1) == ' ' && (end < 2 || pattern.charAt(end - 2) != '\\')) {
+            end--;
+        }
+        pattern = pattern.substring(0, end);
+
+        if (pattern.isEmpty() || pattern.startsWith("#")) {
+            return null;
+        }
+
+        boolean negated = false;
+        if (pattern.startsWith("!")) {
+            negated = true;
+            pattern = pattern.substring(1);
+        }
+
+        boolean dirOnly = false;
+        if (pattern.endsWith("/")) {
+            dirOnly = true;
+            pattern = pattern.substring(0, pattern.length() - 1);
+        }
+
+        // a slash anywhere but at the end ties the pattern to the directory of the ignore file
+        boolean anchored = pattern.indexOf('/') >= 0;
+        if (pattern.startsWith("/")) {
+            pattern = pattern.substring(1);
+        }
+        if (pattern.isEmpty()) {
+            return null;
+        }
+
+        List<Glob> segments = new ArrayList<>();
+        for (String segment : pattern.split("/")) {
+            if (segment.equals("**")) {
+                if (segments.isEmpty() || segments.get(segments.size() - 1) != null) {
+                    segments.add(null);
+                }
+            } else if (!segment.isEmpty()) {
+                segments.add(new Glob(segment));
+            }
+        }
+        if (segments.isEmpty()) {
+            return null;
+        }
+        return new IgnoreRule(order, negated, dirOnly, anchored, segments.toArray(new Glob[segments.size()]));
+    }
+
+    public int getOrder() {
+        return order;
+    }
+
+    public boolean isNegated() {
+        return negated;
+    }
+
+    public boolean isDirOnly() {
+        return dirOnly;
+    }
+
+    public boolean isAnchored() {
+        return anchored;
+    }
+
+    // the first segment if it is a plain name
+    String getFirstLiteral() {
+        Glob first = segments[0];
+        return (first != null && first.isLiteral()) ? first.getLiteral() : null;
+    }
+
+    // the last segment if it is a plain name
+    String getLastLiteral() {
+        Glob last = segments[segments.length - 1];
+        return (last != null && last.isLiteral()) ? last.getLiteral() : null;
+    }
+
+    // path[from..end) is relative to the directory of the ignore file
+    public boolean matches(String[] path, int from, int end) {
+        if (!anchored) {
+            // parents are checked on their own, so only the name matters - a lone ** matches any
+            return segments[0] == null || segments[0].matches(path[end - 1]);
+        }
+        return matches(0, path, from, end);
+    }
+
+    private boolean matches(int p, String[] path, int s, int end) {
+        while (p < segments.length) {
+            if (segments[p] == null) {
+                if (p == segments.length - 1) {
+                    // trailing ** matches anything inside, but not the directory itself
+                    return s < end;
+                }
+                for (int k = s; k < end; k++) {
+                    if (matches(p + 1, path, k, end)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if (s >= end || !segments[p].matches(path[s])) {
+                return false;
+            }
+            p++;
+            s++;
+        }
+        return s == end;
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj.ignore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+// The rules of one ignore file, indexed so a path is only tested against rules that can match it
+public class IgnoreRules {
+
+    public static final IgnoreRules EMPTY = new IgnoreRules();
+
+    // unanchored rules by the name they match, e.g. node_modules
+    private Map<String, List<IgnoreRule>> byName = new HashMap<>();
+    // unanchored wildcard rules, e.g. *.swp
+    private List<IgnoreRule> nameGlobs = new ArrayList<>();
+    // anchored rules by their first segment, e.g. /build/classes
+    private Map<String, List<IgnoreRule>> byFirstSegment = new HashMap<>();
+    // anchored rules starting with a wildcard
+    private List<IgnoreRule> pathGlobs = new ArrayList<>();
+    private int size;
+
+    public static IgnoreRules parse(List<String> lines) {
+        IgnoreRules rules = new IgnoreRules();
+        int order = 0;
+        for (String line : lines) {
+            IgnoreRule rule = IgnoreRule.parse(line, order++);
+            if (rule != null) {
+                rules.add(rule);
+            }
+        }
+        return (rules.size == 0) ? EMPTY : rules;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // TRUE if ignored, FALSE if explicitly included, null if no rule applies
+    public Boolean match(String[] path, int from, int end, BooleanSupplier dir) {
+        IgnoreRule best = null;
+        best = match(byName.getOrDefault(path[end - 1], Collections.emptyList()), best, path, from, end, dir);
+        best = match(nameGlobs, best, path, from, end, dir);
+        best = match(byFirstSegment.getOrDefault(path[from], Collections.emptyList()), best, path, from, end, dir);
+        best = match(pathGlobs, best, path, from, end, dir);
+        return (best == null) ? null : !best.isNegated();
+    }
+
+    private IgnoreRule match(List<IgnoreRule> rules, IgnoreRule best, String[] path, int from, int end,
+            BooleanSupplier dir) {
+        // the last matching line wins
+        for (int i = rules.size() - 1; i >= 0; i--) {
+            IgnoreRule rule = rules.get(i);
+            if (best != null && rule.getOrder() < best.getOrder()) {
+                break;
+            }
+            if (rule.matches(path, from, end) && (!rule.isDirOnly() || dir.getAsBoolean())) {
+                return rule;
+            }
+        }
+        return best;
+    }
+
+    private void add(IgnoreRule rule) {
+        size++;
+        if (!rule.isAnchored()) {
+            String name = rule.getLastLiteral();
+            if (name != null) {
+                byName.computeIfAbsent(name, k -> new ArrayList<>()).add(rule);
+            } else {
+                nameGlobs.add(rule);
+            }
+        } else {
+            String first = rule.getFirstLiteral();
+            if (first != null) {
+                byFirstSegment.computeIfAbsent(first, k -> new ArrayList<>()).add(rule);
+            } else {
+                pathGlobs.add(rule);
+            }
+        }
+    }
+
+}
@@ -42,6 +42,16 @@ public class Command {
             return new CheckMnemonicRequest(args).execute();
         case GenerateMnemonicRequest.METHOD:
             return new GenerateMnemonicRequest().execute();
+        case GetRetriesRequest.METHOD:
+            return new GetRetriesRequest().execute();
+        case GetMetricsRequest.METHOD:
+            return new GetMetricsRequest().execute();
+        case HydrateRequest.METHOD:
+            return new HydrateRequest(args).execute();
+        case SetBandwidthLimitRequest.METHOD:
+            return new SetBandwidthLimitRequest(args).execute();
+        case UploadNowRequest.METHOD:
+            return new UploadNowRequest(args).execute();
         case QuitCommand.METHOD:
             return new QuitCommand().execute();
         default:
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj.ipc;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.goobox.sync.storj.App;
+import io.goobox.sync.storj.BurstTracker;
+import io.goobox.sync.storj.ConcurrencyController;
+import io.goobox.sync.storj.DedupStats;
+import io.goobox.sync.storj.FileWatcher;
+
+public class GetMetricsRequest {
+
+    public static final String METHOD = "getMetrics";
+
+    public CommandResult execute() {
+        Map<String, Number> metrics = new LinkedHashMap<>();
+
+        addConcurrencyMetrics(metrics, "transfers", App.getInstance().getTaskExecutor().getTransferController());
+        addConcurrencyMetrics(metrics, "requests", App.getInstance().getTaskExecutor().getRequestController());
+
+        DedupStats dedup = App.getInstance().getDedupStats();
+        metrics.put("dedup.hits", dedup.getHits());
+        metrics.put("dedup.misses", dedup.getMisses());
+        metrics.put("dedup.hitRate", dedup.getHitRate());
+        metrics.put("dedup.bytesSaved", dedup.getBytesSaved());
+
+        BurstTracker bursts = App.getInstance().getBurstTracker();
+        metrics.put("bursts.busyFiles", bursts.getBusyCount());
+        metrics.put("bursts.deferredUploads", bursts.getDeferred());
+
+        FileWatcher watcher = App.getInstance().getFileWatcher();
+        metrics.put("watcher.hotPaths", watcher.getHotPaths());
+        metrics.put("watcher.watches", watcher.getWatchCount());
+        metrics.put("watcher.watchLimit", watcher.getWatchLimit());
+        metrics.put("watcher.overflows", watcher.getOverflows());
+        metrics.put("watcher.echoes", watcher.getEchoes());
+        metrics.put("watcher.ignored", watcher.getIgnored());
+        metrics.put("watcher.rescans", watcher.getRescans());
+
+        return new MetricsResult(Status.OK, null, metrics);
+    }
+
+    private void addConcurrencyMetrics(Map<String, Number> metrics, String name, ConcurrencyController controller) {
+        metrics.put(name + ".concurrencyLimit", controller.getLimit());
+        metrics.put(name + ".inFlight", controller.getInFlight());
+        metrics.put(name + ".averageLatency", controller.getAverageLatency());
+        metrics.put(name + ".errorRate", controller.getErrorRate());
+    }
+
+}
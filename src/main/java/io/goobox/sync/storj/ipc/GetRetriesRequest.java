@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj.ipc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.goobox.sync.storj.App;
+import io.goobox.sync.storj.RetryQueue.Retry;
+import io.goobox.sync.storj.RetryableTask;
+
+public class GetRetriesRequest {
+
+    public static final String METHOD = "getRetries";
+
+    public CommandResult execute() {
+        List<RetryStatus> retries = new ArrayList<>();
+
+        for (Retry retry : App.getInstance().getRetryQueue().getRetries()) {
+            RetryableTask task = retry.getTask();
+            retries.add(new RetryStatus(task.getClass().getSimpleName(), task.getFileName(),
+                    task.getAttempts(), task.getLastError(), retry.getTime()));
+        }
+
+        String bridgeState = App.getInstance().getCircuitBreaker().getState().toString().toLowerCase();
+
+        return new RetriesResult(Status.OK, null, bridgeState, retries);
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj.ipc;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.goobox.sync.storj.App;
+import io.goobox.sync.storj.CheckStateTask;
+import io.goobox.sync.storj.DownloadFileTask;
+import io.goobox.sync.storj.Placeholder;
+import io.goobox.sync.storj.db.DB;
+import io.goobox.sync.storj.db.SyncFile;
+import io.storj.libstorj.File;
+
+public class HydrateRequest {
+
+    private static final Logger logger = LoggerFactory.getLogger(HydrateRequest.class);
+
+    public static final String METHOD = "hydrate";
+
+    private String path;
+
+    public HydrateRequest(Map<String, String> args) {
+        this(args.get("path"));
+    }
+
+    public HydrateRequest(String path) {
+        this.path = path;
+    }
+
+    public CommandResult execute() {
+        if (path == null) {
+            String msg = "Missing path argument";
+            logger.error(msg);
+            return new CommandResult(Status.ERROR, msg);
+        }
+
+        // a folder hydrates all placeholders inside it
+        Path target = App.getInstance().getSyncDir().resolve(path);
+        String targetName = DB.getName(target);
+        String prefix = targetName.isEmpty() ? "" : targetName + "/";
+        int count = 0;
+        boolean check = false;
+
+        for (SyncFile syncFile : DB.all()) {
+            String name = syncFile.getName();
+            if (!syncFile.getState().isDehydrated() || !name.equals(targetName) && !name.startsWith(prefix)) {
+                continue;
+            }
+
+            try {
+                // makes the next check download it, even if the request below is lost
+                Placeholder.markAccessed(App.getInstance().getSyncDir().resolve(name));
+            } catch (IOException e) {
+                logger.error("I/O error", e);
+                continue;
+            }
+
+            File file = App.getInstance().getCloudFileCache().get(name);
+            if (file != null) {
+                App.getInstance().getTaskQueue().add(new DownloadFileTask(App.getInstance().getGooboxBucket(), file));
+            } else {
+                check = true;
+            }
+            count++;
+        }
+
+        if (check) {
+            App.getInstance().getTaskQueue().add(new CheckStateTask());
+        }
+
+        if (count == 0) {
+            String msg = "No placeholder found at " + path;
+            logger.error(msg);
+            return new CommandResult(Status.ERROR, msg);
+        }
+
+        logger.info("Hydrating {} placeholders at {}", count, path);
+
+        return new CommandResult(Status.OK, null);
+    }
+
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj.ipc;
+
+import java.util.Map;
+
+public class MetricsResult extends CommandResult {
+
+    Map<String, Number> metrics;
+
+    public MetricsResult(Status status, String message, Map<String, Number> metrics) {
+        super(status, message);
+        this.metrics = metrics;
+    }
+
+}
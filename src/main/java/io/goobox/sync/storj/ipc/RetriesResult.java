@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj.ipc;
+
+import java.util.List;
+
+public class RetriesResult extends CommandResult {
+
+    String bridgeState;
+    List<RetryStatus> retries;
+
+    public RetriesResult(Status status, String message, String bridgeState, List<RetryStatus> retries) {
+        super(status, message);
+        this.bridgeState = bridgeState;
+        this.retries = retries;
+    }
+
+}
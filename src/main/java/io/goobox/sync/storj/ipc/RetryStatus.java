@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj.ipc;
+
+public class RetryStatus {
+
+    String task;
+    String fileName;
+    int attempts;
+    int lastError;
+    long nextRetryTime;
+
+    public RetryStatus(String task, String fileName, int attempts, int lastError, long nextRetryTime) {
+        this.task = task;
+        this.fileName = fileName;
+        this.attempts = attempts;
+        this.lastError = lastError;
+        this.nextRetryTime = nextRetryTime;
+    }
+
+}
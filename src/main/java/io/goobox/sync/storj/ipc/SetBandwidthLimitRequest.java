@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj.ipc;
+
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.goobox.sync.storj.App;
+
+public class SetBandwidthLimitRequest {
+
+    private static final Logger logger = LoggerFactory.getLogger(SetBandwidthLimitRequest.class);
+
+    public static final String METHOD = "setBandwidthLimit";
+
+    private String upload;
+    private String download;
+    private String schedule;
+
+    public SetBandwidthLimitRequest(Map<String, String> args) {
+        this(args.get("upload"), args.get("download"), args.get("schedule"));
+    }
+
+    public SetBandwidthLimitRequest(String upload, String download, String schedule) {
+        this.upload = upload;
+        this.download = download;
+        this.schedule = schedule;
+    }
+
+    public CommandResult execute() {
+        if (upload == null && download == null && schedule == null) {
+            String msg = "Missing upload, download or schedule argument";
+            logger.error(msg);
+            return new CommandResult(Status.ERROR, msg);
+        }
+
+        try {
+            if (upload != null) {
+                App.getInstance().getUploadLimiter().setRate(Long.parseLong(upload));
+            }
+            if (download != null) {
+                App.getInstance().getDownloadLimiter().setRate(Long.parseLong(download));
+            }
+            if (schedule != null) {
+                App.getInstance().getUploadLimiter().setSchedule(schedule);
+                App.getInstance().getDownloadLimiter().setSchedule(schedule);
+            }
+        } catch (RuntimeException e) {
+            String msg = "Invalid bandwidth limit: " + e.getMessage();
+            logger.error(msg);
+            return new CommandResult(Status.ERROR, msg);
+        }
+
+        logger.info("Bandwidth limits set to {} bytes/s upload and {} bytes/s download",
+                App.getInstance().getUploadLimiter().getRate(), App.getInstance().getDownloadLimiter().getRate());
+
+        return new CommandResult(Status.OK, null);
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj.ipc;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.goobox.sync.storj.App;
+import io.goobox.sync.storj.CheckStateTask;
+
+public class UploadNowRequest {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadNowRequest.class);
+
+    public static final String METHOD = "uploadNow";
+
+    private String path;
+
+    public UploadNowRequest(Map<String, String> args) {
+        this(args.get("path"));
+    }
+
+    public UploadNowRequest(String path) {
+        this.path = path;
+    }
+
+    public CommandResult execute() {
+        if (path == null) {
+            String msg = "Missing path argument";
+            logger.error(msg);
+            return new CommandResult(Status.ERROR, msg);
+        }
+
+        // a folder lifts the deferral of all busy files inside it
+        Path target = App.getInstance().getSyncDir().resolve(path);
+        int count = App.getInstance().getBurstTracker().reset(target);
+
+        App.getInstance().getTaskQueue().add(new CheckStateTask());
+        App.getInstance().getTaskExecutor().interruptSleeping();
+
+        logger.info("Uploading {} busy files at {} without deferral", count, path);
+
+        return new CommandResult(Status.OK, null);
+    }
+
+}
@@ -30,7 +30,7 @@ public class StorjOverlayIconProvider implements OverlayIconProvider {
         SyncFile file = DB.get(path);
         if (file == null || file.getState().isPending()) {
             return OverlayIcon.SYNCING;
-        } else if (file.getState().isSynced()) {
+        } else if (file.getState().isSynced() || file.getState().isDehydrated()) {
             return OverlayIcon.OK;
         } else if (file.getState().isFailed()) {
             return OverlayIcon.ERROR;
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj.pack;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// serialized with Gson at the end of the pack - libstorj encrypts it together with the members
+public class PackIndex {
+
+    private List<PackMember> members = new ArrayList<>();
+
+    public List<PackMember> getMembers() {
+        return members;
+    }
+
+    public PackMember get(String name) {
+        for (PackMember member : members) {
+            if (member.getName().equals(name)) {
+                return member;
+            }
+        }
+        return null;
+    }
+
+    void add(PackMember member) {
+        members.add(member);
+    }
+
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj.pack;
+
+public class PackMember {
+
+    private String name;
+    private long offset;
+    private long length;
+    private long modifiedTime;
+
+    public PackMember(String name, long offset, long length, long modifiedTime) {
+        this.name = name;
+        this.offset = offset;
+        this.length = length;
+        this.modifiedTime = modifiedTime;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public long getModifiedTime() {
+        return modifiedTime;
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj.pack;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+
+public class PackReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private FileChannel channel;
+    private PackIndex index;
+
+    public PackReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            index = readIndex();
+        } catch (IOException | JsonSyntaxException e) {
+            channel.close();
+            throw new IOException("Invalid pack " + path, e);
+        }
+    }
+
+    public PackIndex getIndex() {
+        return index;
+    }
+
+    public byte[] read(PackMember member) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(member.getLength(), BUFFER_SIZE));
+        copy(member, out);
+        return out.toByteArray();
+    }
+
+    // members are copied in chunks, so their size is not limited by the heap
+    public void copy(PackMember member, OutputStream out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long position = member.getOffset();
+        long end = position + member.getLength();
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(BUFFER_SIZE, end - position));
+            read(buffer, position);
+            out.write(buffer.array(), 0, buffer.limit());
+            position += buffer.limit();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private PackIndex readIndex() throws IOException {
+        long size = channel.size();
+        if (size < 16) {
+            throw new IOException("Pack too short");
+        }
+
+        ByteBuffer trailer = ByteBuffer.allocate(16);
+        read(trailer, size - 16);
+        long indexLength = trailer.getLong(0);
+        if (trailer.getLong(8) != PackWriter.MAGIC || indexLength < 0 || indexLength > size - 16) {
+            throw new IOException("Pack trailer corrupted");
+        }
+
+        ByteBuffer json = ByteBuffer.allocate((int) indexLength);
+        read(json, size - 16 - indexLength);
+        PackIndex index = new Gson().fromJson(new String(json.array(), StandardCharsets.UTF_8), PackIndex.class);
+
+        // the members must lie in the data before the index
+        long dataLength = size - 16 - indexLength;
+        for (PackMember member : index.getMembers()) {
+            if (member.getName() == null || member.getOffset() < 0 || member.getLength() < 0
+                    || member.getOffset() > dataLength - member.getLength()) {
+                throw new IOException("Pack index corrupted");
+            }
+        }
+        return index;
+    }
+
+    private void read(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) {
+                throw new IOException("Unexpected end of pack");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj.pack;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.google.gson.Gson;
+
+// pack layout: member data, index JSON, index length (8 bytes), magic (8 bytes)
+public class PackWriter implements Closeable {
+
+    static final long MAGIC = 0x4742_5041_434B_3031L; // "GBPACK01"
+
+    private DataOutputStream out;
+    private long offset;
+    private PackIndex index = new PackIndex();
+
+    public PackWriter(Path path) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+    }
+
+    public PackMember add(String name, Path source, long modifiedTime) throws IOException {
+        return add(name, Files.copy(source, out), modifiedTime);
+    }
+
+    public PackMember add(String name, byte[] data, long modifiedTime) throws IOException {
+        out.write(data);
+        return add(name, data.length, modifiedTime);
+    }
+
+    // copies a member of another pack without holding it in memory
+    public PackMember add(PackReader reader, PackMember member) throws IOException {
+        reader.copy(member, out);
+        return add(member.getName(), member.getLength(), member.getModifiedTime());
+    }
+
+    private PackMember add(String name, long length, long modifiedTime) {
+        PackMember member = new PackMember(name, offset, length, modifiedTime);
+        index.add(member);
+        offset += length;
+        return member;
+    }
+
+    public PackIndex getIndex() {
+        return index;
+    }
+
+    public long size() {
+        return offset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        byte[] json = new Gson().toJson(index).getBytes(StandardCharsets.UTF_8);
+        out.write(json);
+        out.writeLong(json.length);
+        out.writeLong(MAGIC);
+        out.close();
+    }
+
+}
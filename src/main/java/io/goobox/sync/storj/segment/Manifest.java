@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj.segment;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+// uploaded in place of a large file - lists the fingerprints of its segments in order
+public class Manifest {
+
+    private long size;
+    private long segmentSize;
+    private List<String> segments = new ArrayList<>();
+    // of the whole file - verified when the segments are assembled
+    private String fingerprint;
+
+    public Manifest() {
+    }
+
+    public Manifest(long size, long segmentSize, List<String> segments, String fingerprint) {
+        this.size = size;
+        this.segmentSize = segmentSize;
+        this.segments = segments;
+        this.fingerprint = fingerprint;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getSegmentSize() {
+        return segmentSize;
+    }
+
+    public List<String> getSegments() {
+        return segments;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public long getOffset(int index) {
+        return index * segmentSize;
+    }
+
+    public long getLength(int index) {
+        return Math.min(segmentSize, size - getOffset(index));
+    }
+
+    public static Manifest read(Path path) throws IOException {
+        try {
+            String json = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+            Manifest manifest = new Gson().fromJson(json, Manifest.class);
+            if (manifest == null || manifest.segments == null || manifest.segmentSize <= 0) {
+                throw new IOException("Invalid manifest");
+            }
+            return manifest;
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid manifest", e);
+        }
+    }
+
+    public void write(Path path) throws IOException {
+        Files.write(path, new Gson().toJson(this).getBytes(StandardCharsets.UTF_8));
+    }
+
+}
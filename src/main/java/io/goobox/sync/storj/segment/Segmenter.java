@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj.segment;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.goobox.sync.storj.Fingerprint;
+
+// splits large files into fixed-size segments, so a change re-uploads only the segments it touched
+public class Segmenter {
+
+    public static Manifest scan(Path path, long segmentSize) throws IOException {
+        List<String> segments = new ArrayList<>();
+        MessageDigest digest = Fingerprint.newDigest();
+        MessageDigest fileDigest = Fingerprint.newDigest();
+        byte[] buffer = new byte[64 * 1024];
+        long size = 0;
+        long inSegment = 0;
+
+        // a single sequential pass over the file
+        try (InputStream in = Files.newInputStream(path)) {
+            int n;
+            while ((n = in.read(buffer, 0, (int) Math.min(buffer.length, segmentSize - inSegment))) > 0) {
+                digest.update(buffer, 0, n);
+                fileDigest.update(buffer, 0, n);
+                size += n;
+                inSegment += n;
+                if (inSegment == segmentSize) {
+                    segments.add(Fingerprint.toHex(digest.digest()));
+                    inSegment = 0;
+                }
+            }
+        }
+        if (inSegment > 0 || size == 0) {
+            segments.add(Fingerprint.toHex(digest.digest()));
+        }
+
+        return new Manifest(size, segmentSize, segments, Fingerprint.toHex(fileDigest.digest()));
+    }
+
+    public static void extract(Path path, long offset, long length, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            transfer(in, offset, length, out);
+        }
+    }
+
+    // appends to the end of the target channel and updates the digests with the copied range in the same pass
+    public static void copy(FileChannel in, long offset, long length, FileChannel out, MessageDigest... digests)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long done = 0;
+        while (done < length) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), length - done));
+            int n = in.read(buffer, offset + done);
+            if (n <= 0) {
+                throw new IOException("Unexpected end of file");
+            }
+            buffer.flip();
+            for (MessageDigest digest : digests) {
+                digest.update(buffer);
+                buffer.rewind();
+            }
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            done += n;
+        }
+    }
+
+    // appends to the end of the target channel
+    public static void transfer(FileChannel in, long offset, long length, FileChannel out) throws IOException {
+        long done = 0;
+        while (done < length) {
+            long n = in.transferTo(offset + done, length - done, out);
+            if (n <= 0) {
+                throw new IOException("Unexpected end of file");
+            }
+            done += n;
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalTime;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class BandwidthLimiterTest {
+
+    @Test
+    public void unlimited() throws Exception {
+        BandwidthLimiter limiter = new BandwidthLimiter();
+
+        limiter.consume(1000000);
+
+        assertFalse(limiter.isLimited());
+        assertEquals(0, limiter.getWaitTime());
+    }
+
+    @Test
+    public void debtMustBeWaited() throws Exception {
+        BandwidthLimiter limiter = new BandwidthLimiter();
+        limiter.setRate(1000);
+
+        limiter.consume(3000);
+
+        long wait = limiter.getWaitTime();
+        assertTrue(wait > 2000);
+        assertTrue(wait <= 3000);
+    }
+
+    @Test
+    public void paceWaitsForTheWholeDebt() throws Exception {
+        BandwidthLimiter limiter = new BandwidthLimiter();
+        limiter.setRate(1000);
+
+        limiter.consume(2500);
+        long start = System.currentTimeMillis();
+        limiter.pace();
+
+        assertTrue(System.currentTimeMillis() - start >= 1400);
+        assertEquals(0, limiter.getWaitTime());
+    }
+
+    @Test
+    public void outsideSchedule() throws Exception {
+        BandwidthLimiter limiter = new BandwidthLimiter();
+        limiter.setRate(1000);
+
+        LocalTime now = LocalTime.now();
+        limiter.setSchedule(now.plusHours(2), now.plusHours(3));
+        limiter.consume(3000);
+
+        assertFalse(limiter.isLimited());
+        assertEquals(0, limiter.getWaitTime());
+    }
+
+    @Test
+    public void insideSchedule() throws Exception {
+        BandwidthLimiter limiter = new BandwidthLimiter();
+        limiter.setRate(1000);
+
+        LocalTime now = LocalTime.now();
+        limiter.setSchedule(now.minusHours(1), now.plusHours(1));
+
+        assertTrue(limiter.isLimited());
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class BurstTrackerTest {
+
+    private Path dir = Paths.get("sync", "vm");
+    private Path disk = dir.resolve("disk.img");
+
+    @Test
+    public void fewBurstsAreNotBusy() throws Exception {
+        BurstTracker tracker = new BurstTracker();
+
+        tracker.burst(disk);
+        tracker.burst(disk);
+
+        assertFalse(tracker.isBusy(disk));
+        assertFalse(tracker.deferUpload(disk));
+    }
+
+    @Test
+    public void busyFileUploadsAreCapped() throws Exception {
+        BurstTracker tracker = new BurstTracker();
+
+        for (int i = 0; i < 10; i++) {
+            tracker.burst(disk);
+        }
+        assertTrue(tracker.isBusy(disk));
+        assertEquals(1, tracker.getBusyCount());
+
+        // two uploads per hour still go through
+        assertFalse(tracker.deferUpload(disk));
+        assertFalse(tracker.deferUpload(disk));
+        assertTrue(tracker.deferUpload(disk));
+        assertEquals(1, tracker.getDeferred());
+    }
+
+    @Test
+    public void resetLiftsDeferral() throws Exception {
+        BurstTracker tracker = new BurstTracker();
+
+        for (int i = 0; i < 12; i++) {
+            tracker.burst(disk);
+        }
+        tracker.deferUpload(disk);
+        tracker.deferUpload(disk);
+
+        assertEquals(1, tracker.reset(dir));
+        assertFalse(tracker.isBusy(disk));
+        assertFalse(tracker.deferUpload(disk));
+    }
+
+}
@@ -17,9 +17,19 @@
 package io.goobox.sync.storj;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
 
 import org.junit.After;
 import org.junit.Before;
@@ -27,7 +37,9 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import io.goobox.sync.storj.db.CloudPack;
 import io.goobox.sync.storj.db.DB;
+import io.goobox.sync.storj.db.DedupEntry;
 import io.goobox.sync.storj.db.SyncState;
 import io.goobox.sync.storj.helpers.AssertState;
 import io.goobox.sync.storj.helpers.AssertSyncFile;
@@ -38,11 +50,29 @@ import io.goobox.sync.storj.mocks.FileMock;
 import io.goobox.sync.storj.mocks.FileWatcherMock;
 import io.goobox.sync.storj.mocks.FilesMock;
 import io.goobox.sync.storj.mocks.StorjMock;
+import io.storj.libstorj.File;
+import mockit.Mock;
+import mockit.MockUp;
 import mockit.integration.junit4.JMockit;
 
 @RunWith(JMockit.class)
 public class CheckStateTaskTest {
 
+    private static final String FINGERPRINT = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+    private static final File BLOB = new File("blob-id", StorjMock.BUCKET.getId(), ".goobox-dedup/" + FINGERPRINT,
+            "2017-11-20T10:00:00.000Z", true, 2 * 1024 * 1024, null, null, null, null);
+    private static final File REF = new File("ref-id", StorjMock.BUCKET.getId(),
+            ".goobox-encoded/file-1-name.goobox-ref-" + FINGERPRINT, "2017-11-20T10:00:00.000Z", true, 64, null,
+            null, null, null);
+    private static final File SEGMENT = new File("segment-id", StorjMock.BUCKET.getId(),
+            ".goobox-segments/" + FINGERPRINT, "2017-11-20T10:00:00.000Z", true, 4 * 1024 * 1024, null, null, null,
+            null);
+    private static final File MANIFEST = new File("manifest-id", StorjMock.BUCKET.getId(),
+            ".goobox-encoded/file-1-name.goobox-manifest", "2017-11-20T10:00:00.000Z", true, 300, null, null, null,
+            null);
+    private static final File PACK = new File("pack-id", StorjMock.BUCKET.getId(), ".goobox-packs/pack-name",
+            "2017-11-20T10:00:00.000Z", true, 4096, null, null, null, null);
+
     @BeforeClass
     public static void applySharedFakes() {
         new DBMock();
@@ -1208,11 +1238,97 @@ public class CheckStateTaskTest {
     public void fileOpsInProgress() throws Exception {
         new StorjMock(StorjMock.FILE_1);
         new FilesMock(FileMock.FILE_2);
-        new FileWatcherMock(true);
+        new FileWatcherMock(FileMock.FILE_2.getPath());
 
         new CheckStateTask().run();
 
-        AssertState.assertAllEmpty();
+        AssertState.assertForDownload(StorjMock.FILE_1);
+    }
+
+    @Test
+    public void fileOpsInProgressOnCloudFile() throws Exception {
+        new StorjMock(StorjMock.FILE_1);
+        new FilesMock(FileMock.FILE_1);
+        new FileWatcherMock(FileMock.FILE_1.getPath());
+
+        DB.setSynced(StorjMock.FILE_1, FileMock.FILE_1.getPath());
+
+        new CheckStateTask().run();
+
+        AssertState.assertSynced(StorjMock.FILE_1, FileMock.FILE_1);
+    }
+
+    @Test
+    public void uploadAlreadyQueued() throws Exception {
+        new StorjMock(StorjMock.FILE_1);
+        FilesMock filesMock = new FilesMock(FileMock.FILE_1);
+
+        DB.setSynced(StorjMock.FILE_1, FileMock.FILE_1.getPath());
+        filesMock.modifyFile(FileMock.FILE_1, FileMock.MODIFIED_FILE_1);
+        // moved back from the retry queue just before the check
+        App.getInstance().getTaskQueue().add(new UploadFileTask(StorjMock.BUCKET, FileMock.FILE_1.getPath()));
+
+        new CheckStateTask().run();
+
+        // no second upload of the same file
+        AssertState.assertTaskQueue(UploadFileTask.class);
+    }
+
+    @Test
+    public void snapshotOfHotCloudFile() throws Exception {
+        enableSnapshots();
+        new StorjMock(StorjMock.FILE_1);
+        FilesMock filesMock = new FilesMock(FileMock.FILE_1);
+        new FileWatcherMock(FileMock.FILE_1.getPath());
+
+        DB.setSynced(StorjMock.FILE_1, FileMock.FILE_1.getPath());
+        filesMock.modifyFile(FileMock.FILE_1, FileMock.MODIFIED_FILE_1);
+
+        new CheckStateTask().run();
+
+        AssertState.assertForUpload(StorjMock.FILE_1, FileMock.MODIFIED_FILE_1);
+    }
+
+    @Test
+    public void noSnapshotOfHotFileChangedInCloud() throws Exception {
+        enableSnapshots();
+        new StorjMock(StorjMock.MODIFIED_FILE_1);
+        new FilesMock(FileMock.FILE_1);
+        new FileWatcherMock(FileMock.FILE_1.getPath());
+
+        DB.setSynced(StorjMock.FILE_1, FileMock.FILE_1.getPath());
+
+        new CheckStateTask().run();
+
+        // the conflict is resolved once the file is quiet
+        AssertState.assertSynced(StorjMock.FILE_1, FileMock.FILE_1);
+    }
+
+    @Test
+    public void noSnapshotOfHotFileNoDB() throws Exception {
+        enableSnapshots();
+        new StorjMock(StorjMock.FILE_1);
+        new FilesMock(FileMock.FILE_1);
+        new FileWatcherMock(FileMock.FILE_1.getPath());
+
+        new CheckStateTask().run();
+
+        AssertState.assertSleepEmptyDB();
+    }
+
+    @Test
+    public void noSnapshotOfHotFileForDownload() throws Exception {
+        enableSnapshots();
+        new StorjMock(StorjMock.FILE_1);
+        new FilesMock(FileMock.FILE_1);
+        new FileWatcherMock(FileMock.FILE_1.getPath());
+
+        DB.addForDownload(StorjMock.FILE_1, FileMock.FILE_1.getPath());
+
+        new CheckStateTask().run();
+
+        AssertState.assertTaskQueue(SleepTask.class);
+        AssertState.assertDB(StorjMock.FILE_1, FileMock.FILE_1, SyncState.FOR_DOWNLOAD);
     }
 
     @Test
@@ -1610,4 +1726,524 @@ public class CheckStateTaskTest {
         AssertState.assertSleepEmptyDB();
     }
 
+    @Test
+    public void staleStagedVersion() throws Exception {
+        // an interrupted staged upload left both versions
+        new StorjMock(StorjMock.FILE_1, StorjMock.STAGED_FILE_1);
+        new FilesMock(FileMock.FILE_1);
+
+        DB.setSynced(StorjMock.FILE_1, FileMock.FILE_1.getPath());
+
+        new CheckStateTask().run();
+
+        Runnable task = App.getInstance().getTaskQueue().poll();
+        assertEquals(DeleteOldVersionTask.class, task.getClass());
+        assertEquals(StorjMock.FILE_1.getName(), ((DeleteOldVersionTask) task).getFileName());
+        AssertState.assertForDownload(StorjMock.STAGED_FILE_1, FileMock.FILE_1);
+    }
+
+    @Test
+    public void userFileWithStagedSuffix() throws Exception {
+        File cloudFile = new File("user-file-id", StorjMock.BUCKET.getId(), "file-1-name.goobox-staged",
+                "2017-11-20T10:00:00.000Z", true, 500, null, null, null, null);
+        FileMock localFile = new FileMock("file-1-name.goobox-staged", 1511172000000L, 500, false);
+        new StorjMock(StorjMock.FILE_1, cloudFile);
+        new FilesMock(FileMock.FILE_1, localFile);
+
+        DB.setSynced(StorjMock.FILE_1, FileMock.FILE_1.getPath());
+        DB.setSynced(cloudFile, localFile.getPath());
+
+        new CheckStateTask().run();
+
+        // not a staged version of file-1-name
+        AssertState.assertTaskQueue(SleepTask.class);
+        assertEquals(2, DB.size());
+        AssertSyncFile.assertWith(StorjMock.FILE_1, FileMock.FILE_1, SyncState.SYNCED);
+        AssertSyncFile.assertWith(cloudFile, localFile, SyncState.SYNCED);
+    }
+
+    @Test
+    public void reservedLocalFileNoCloud() throws Exception {
+        new StorjMock();
+        new FilesMock(new FileMock(".goobox-encoded", 1511172000000L, 500, false));
+
+        new CheckStateTask().run();
+
+        AssertState.assertSleepEmptyDB();
+    }
+
+    @Test
+    public void cloudPackNoDB() throws Exception {
+        new StorjMock(PACK);
+        new FilesMock();
+
+        new CheckStateTask().run();
+
+        // packed by another device
+        AssertState.assertTaskQueue(DownloadPackTask.class);
+        assertEquals(0, DB.size());
+    }
+
+    @Test
+    public void cloudPackInUse() throws Exception {
+        new StorjMock(PACK);
+        new FilesMock(FileMock.FILE_1);
+
+        setPacked(FileMock.FILE_1, DB.addPack(PACK, 2));
+
+        new CheckStateTask().run();
+
+        AssertState.assertTaskQueue(SleepTask.class);
+        assertTrue(DB.get(FileMock.FILE_1.getPath()).isPacked());
+    }
+
+    @Test
+    public void cloudPackMostlyUnused() throws Exception {
+        new StorjMock(PACK);
+        new FilesMock(FileMock.FILE_1);
+
+        setPacked(FileMock.FILE_1, DB.addPack(PACK, 4));
+
+        new CheckStateTask().run();
+
+        AssertState.assertTaskQueue(CompactPackTask.class);
+    }
+
+    @Test
+    public void packedFileDeleted() throws Exception {
+        new StorjMock(PACK);
+        new FilesMock(FileMock.FILE_2);
+
+        CloudPack pack = DB.addPack(PACK, 2);
+        setPacked(FileMock.FILE_1, pack);
+        setPacked(FileMock.FILE_2, pack);
+
+        new CheckStateTask().run();
+
+        // compacted right away, though half of the pack is still in use
+        AssertState.assertTaskQueue(CompactPackTask.class);
+        assertFalse(DB.contains(FileMock.FILE_1.getPath()));
+        assertEquals(1, DB.getPack(PACK.getId()).getDeletedCount());
+    }
+
+    @Test
+    public void packWithDeletedMember() throws Exception {
+        new StorjMock(PACK);
+        new FilesMock(FileMock.FILE_2);
+
+        CloudPack pack = DB.addPack(PACK, 2);
+        setPacked(FileMock.FILE_2, pack);
+        // the compaction failed after the member was deleted
+        DB.addDeletedPackMember(PACK.getId());
+
+        new CheckStateTask().run();
+
+        AssertState.assertTaskQueue(CompactPackTask.class);
+    }
+
+    @Test
+    public void cloudPackDeleted() throws Exception {
+        new StorjMock();
+        new FilesMock(FileMock.FILE_1);
+
+        setPacked(FileMock.FILE_1, DB.addPack(PACK, 1));
+
+        new CheckStateTask().run();
+
+        AssertState.assertTaskQueue(DeleteLocalFileTask.class);
+        AssertState.assertDB(FileMock.FILE_1, SyncState.FOR_LOCAL_DELETE);
+        assertNull(DB.getPack(PACK.getId()));
+    }
+
+    @Test
+    public void packedFileModified() throws Exception {
+        new StorjMock(PACK);
+        new FilesMock(FileMock.MODIFIED_FILE_1);
+
+        setPacked(FileMock.FILE_1, DB.addPack(PACK, 1));
+
+        new CheckStateTask().run();
+
+        AssertState.assertForUpload(FileMock.MODIFIED_FILE_1);
+    }
+
+    @Test
+    public void smallLocalFileNoCloud() throws Exception {
+        new MockUp<App>() {
+            @Mock
+            public long getPackThreshold() {
+                return 1024 * 1024;
+            }
+        };
+        new StorjMock();
+        new FilesMock(FileMock.FILE_1, FileMock.FILE_2);
+
+        new CheckStateTask().run();
+
+        // both files share a pack
+        AssertState.assertTaskQueue(UploadPackTask.class);
+        AssertState.assertDB(FileMock.FILE_1, SyncState.FOR_UPLOAD);
+        AssertState.assertDB(FileMock.FILE_2, SyncState.FOR_UPLOAD);
+    }
+
+    @Test
+    public void packThresholdIsCapped() throws Exception {
+        new MockUp<App>() {
+            @Mock
+            public long getPackThreshold() {
+                return Long.MAX_VALUE;
+            }
+        };
+        FileMock largeFile = new FileMock("large-file-name", 1511172000000L, 100 * 1024 * 1024, false);
+        new StorjMock();
+        new FilesMock(largeFile);
+
+        new CheckStateTask().run();
+
+        // never packed, whatever the threshold
+        AssertState.assertForUpload(largeFile);
+    }
+
+    @Test
+    public void referencedContent() throws Exception {
+        new StorjMock(BLOB, REF);
+        new FilesMock();
+
+        new CheckStateTask().run();
+
+        AssertState.assertTaskQueue(DownloadFileTask.class);
+        assertEquals(SyncState.FOR_DOWNLOAD, DB.get(REF).getState());
+        assertEquals(1, DB.getDedupEntry(FINGERPRINT).getRefCount());
+        assertEquals(0, DB.getDedupEntry(FINGERPRINT).getOrphanSince());
+    }
+
+    @Test
+    public void unreferencedContent() throws Exception {
+        // a user file that only looks like a reference
+        File userFile = new File("user-file-id", StorjMock.BUCKET.getId(), "file-1-name.goobox-ref-" + FINGERPRINT,
+                "2017-11-20T10:00:00.000Z", true, 64, null, null, null, null);
+        FileMock localFile = new FileMock(userFile.getName(), 1511172000000L, 64, false);
+        new StorjMock(BLOB, userFile);
+        new FilesMock(localFile);
+
+        DB.setSynced(userFile, localFile.getPath());
+
+        new CheckStateTask().run();
+
+        // kept for the grace time
+        AssertState.assertSynced(userFile, localFile);
+        assertEquals(0, DB.getDedupEntry(FINGERPRINT).getRefCount());
+        assertTrue(DB.getDedupEntry(FINGERPRINT).getOrphanSince() > 0);
+    }
+
+    @Test
+    public void unreferencedContentAfterGraceTime() throws Exception {
+        new StorjMock(BLOB);
+        new FilesMock();
+
+        DedupEntry entry = DB.addDedupEntry(FINGERPRINT, BLOB.getSize());
+        entry.setOrphanSince(System.currentTimeMillis() - 60 * 60 * 1000);
+        DB.updateDedupEntry(entry);
+
+        new CheckStateTask().run();
+
+        AssertState.assertTaskQueue(DeleteOldVersionTask.class);
+        assertNull(DB.getDedupEntry(FINGERPRINT));
+    }
+
+    @Test
+    public void contentDeletedByAnotherDevice() throws Exception {
+        new StorjMock();
+        new FilesMock();
+
+        DB.addDedupEntry(FINGERPRINT, BLOB.getSize());
+
+        new CheckStateTask().run();
+
+        AssertState.assertSleepEmptyDB();
+        assertNull(DB.getDedupEntry(FINGERPRINT));
+    }
+
+    @Test
+    public void unreferencedSegment() throws Exception {
+        new StorjMock(SEGMENT);
+        new FilesMock();
+
+        new CheckStateTask().run();
+
+        AssertState.assertTaskQueue(DeleteOldVersionTask.class);
+    }
+
+    @Test
+    public void referencedSegment() throws Exception {
+        new StorjMock(MANIFEST, SEGMENT);
+        new FilesMock(FileMock.FILE_1);
+
+        DB.setSynced(MANIFEST, FileMock.FILE_1.getPath());
+        DB.setSegments(FileMock.FILE_1.getPath(), 4 * 1024 * 1024, Arrays.asList(FINGERPRINT));
+
+        new CheckStateTask().run();
+
+        AssertState.assertTaskQueue(SleepTask.class);
+    }
+
+    @Test
+    public void unreferencedSegmentDuringSegmentUpload() throws Exception {
+        // another device is uploading the segments of a file - its manifest comes last
+        String now = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC)
+                .format(Instant.now());
+        File uploading = new File("new-segment-id", StorjMock.BUCKET.getId(),
+                ".goobox-segments/" + FINGERPRINT.replace('0', 'f'), now, true, 4 * 1024 * 1024, null, null, null,
+                null);
+        new StorjMock(SEGMENT, uploading);
+        new FilesMock();
+
+        new CheckStateTask().run();
+
+        AssertState.assertSleepEmptyDB();
+    }
+
+    @Test
+    public void placeholderTouched() throws Exception {
+        FileMock touched = new FileMock("file-1-name", 1511172000000L, FileMock.FILE_1.size(), false);
+        new StorjMock(StorjMock.FILE_1);
+        FilesMock files = new FilesMock(FileMock.FILE_1);
+        new PlaceholderMock(true);
+
+        DB.setDehydrated(StorjMock.FILE_1, FileMock.FILE_1.getPath());
+        files.modifyFile(FileMock.FILE_1, touched);
+
+        new CheckStateTask().run();
+
+        // hydrated instead of uploading the zeros of the placeholder
+        AssertState.assertTaskQueue(DownloadFileTask.class);
+        AssertState.assertDB(StorjMock.FILE_1, FileMock.FILE_1, SyncState.DEHYDRATED);
+    }
+
+    @Test
+    public void placeholderWrittenTo() throws Exception {
+        new StorjMock(StorjMock.FILE_1);
+        FilesMock files = new FilesMock(FileMock.FILE_1);
+        new PlaceholderMock(false);
+
+        DB.setDehydrated(StorjMock.FILE_1, FileMock.FILE_1.getPath());
+        files.modifyFile(FileMock.FILE_1, FileMock.MODIFIED_FILE_1);
+
+        new CheckStateTask().run();
+
+        AssertState.assertTaskQueue(SleepTask.class);
+        AssertState.assertDB(StorjMock.FILE_1, FileMock.MODIFIED_FILE_1, SyncState.CONFLICT);
+    }
+
+    @Test
+    public void placeholderCloudDeleted() throws Exception {
+        new StorjMock();
+        new FilesMock(FileMock.FILE_1);
+
+        DB.setDehydrated(StorjMock.FILE_1, FileMock.FILE_1.getPath());
+
+        new CheckStateTask().run();
+
+        AssertState.assertTaskQueue(DeleteLocalFileTask.class);
+        assertEquals(SyncState.FOR_LOCAL_DELETE, DB.get(FileMock.FILE_1.getPath()).getState());
+    }
+
+    @Test
+    public void placeholderTouchedCloudDeleted() throws Exception {
+        FileMock touched = new FileMock("file-1-name", 1511172000000L, FileMock.FILE_1.size(), false);
+        new StorjMock();
+        FilesMock files = new FilesMock(FileMock.FILE_1);
+        new PlaceholderMock(true);
+
+        DB.setDehydrated(StorjMock.FILE_1, FileMock.FILE_1.getPath());
+        files.modifyFile(FileMock.FILE_1, touched);
+
+        new CheckStateTask().run();
+
+        AssertState.assertTaskQueue(DeleteLocalFileTask.class);
+        assertEquals(SyncState.FOR_LOCAL_DELETE, DB.get(touched.getPath()).getState());
+    }
+
+    @Test
+    public void placeholderWrittenToCloudDeleted() throws Exception {
+        new StorjMock();
+        FilesMock files = new FilesMock(FileMock.FILE_1);
+        new PlaceholderMock(false);
+
+        DB.setDehydrated(StorjMock.FILE_1, FileMock.FILE_1.getPath());
+        files.modifyFile(FileMock.FILE_1, FileMock.MODIFIED_FILE_1);
+
+        new CheckStateTask().run();
+
+        // the only copy of the written content
+        AssertState.assertTaskQueue(UploadFileTask.class);
+        assertEquals(SyncState.FOR_UPLOAD, DB.get(FileMock.MODIFIED_FILE_1.getPath()).getState());
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() throws Exception {
+        new CacheBudgetMock(990000);
+        new StorjMock(StorjMock.FILE_1, StorjMock.FILE_2);
+        new FilesMock(FileMock.FILE_1, FileMock.FILE_2);
+        new AccessTimesMock(1511000000000L, 1512000000000L);
+
+        DB.setSynced(StorjMock.FILE_1, FileMock.FILE_1.getPath());
+        DB.setSynced(StorjMock.FILE_2, FileMock.FILE_2.getPath());
+        DB.setAccessTime(FileMock.FILE_1.getName(), 1511000000000L);
+        DB.setAccessTime(FileMock.FILE_2.getName(), 1512000000000L);
+
+        new CheckStateTask().run();
+
+        // evicting the least recently used file is enough for the budget
+        Runnable task = App.getInstance().getTaskQueue().poll();
+        assertEquals(EvictFileTask.class, task.getClass());
+        assertEquals(FileMock.FILE_1.getPath(), ((EvictFileTask) task).getPath());
+        assertEquals(CheckStateTask.class, App.getInstance().getTaskQueue().poll().getClass());
+    }
+
+    @Test
+    public void evictAfterAccessTimeRefresh() throws Exception {
+        new CacheBudgetMock(990000);
+        new StorjMock(StorjMock.FILE_1, StorjMock.FILE_2);
+        new FilesMock(FileMock.FILE_1, FileMock.FILE_2);
+        // the least recently used file in the DB was read since the last check
+        new AccessTimesMock(1513000000000L, 1512000000000L);
+
+        DB.setSynced(StorjMock.FILE_1, FileMock.FILE_1.getPath());
+        DB.setSynced(StorjMock.FILE_2, FileMock.FILE_2.getPath());
+        DB.setAccessTime(FileMock.FILE_1.getName(), 1511000000000L);
+        DB.setAccessTime(FileMock.FILE_2.getName(), 1512000000000L);
+
+        new CheckStateTask().run();
+
+        Runnable task = App.getInstance().getTaskQueue().poll();
+        assertEquals(EvictFileTask.class, task.getClass());
+        assertEquals(FileMock.FILE_2.getPath(), ((EvictFileTask) task).getPath());
+        assertEquals(CheckStateTask.class, App.getInstance().getTaskQueue().poll().getClass());
+        assertEquals(1513000000000L, DB.get(FileMock.FILE_1.getPath()).getLocalAccessTime());
+    }
+
+    @Test
+    public void withinCacheBudget() throws Exception {
+        new CacheBudgetMock(FileMock.FILE_1.size() + FileMock.FILE_2.size());
+        new StorjMock(StorjMock.FILE_1, StorjMock.FILE_2);
+        new FilesMock(FileMock.FILE_1, FileMock.FILE_2);
+
+        DB.setSynced(StorjMock.FILE_1, FileMock.FILE_1.getPath());
+        DB.setSynced(StorjMock.FILE_2, FileMock.FILE_2.getPath());
+
+        new CheckStateTask().run();
+
+        AssertState.assertTaskQueue(SleepTask.class);
+    }
+
+    private void setPacked(FileMock localFile, CloudPack pack) {
+        DB.setPacked(localFile.getPath(), pack, 0, localFile.size(), localFile.lastModified(), localFile.size());
+    }
+
+    private static class PlaceholderMock extends MockUp<Placeholder> {
+
+        private boolean empty;
+
+        PlaceholderMock(boolean empty) {
+            this.empty = empty;
+        }
+
+        @Mock
+        public boolean isEmpty(Path path) {
+            return empty;
+        }
+
+    }
+
+    private void enableSnapshots() {
+        new MockUp<App>() {
+            @Mock
+            public boolean isSnapshots() {
+                return true;
+            }
+        };
+    }
+
+    private static class CacheBudgetMock extends MockUp<App> {
+
+        private long budget;
+
+        CacheBudgetMock(long budget) {
+            this.budget = budget;
+        }
+
+        @Mock
+        public long getCacheBudget() {
+            return budget;
+        }
+
+    }
+
+    // the last access times of FILE_1 and FILE_2
+    private static class AccessTimesMock extends MockUp<Files> {
+
+        private long file1;
+        private long file2;
+
+        AccessTimesMock(long file1, long file2) {
+            this.file1 = file1;
+            this.file2 = file2;
+        }
+
+        @Mock
+        @SuppressWarnings("unchecked")
+        public <A extends BasicFileAttributes> A readAttributes(Path path, Class<A> type, LinkOption... options) {
+            final FileMock file = path.equals(FileMock.FILE_1.getPath()) ? FileMock.FILE_1 : FileMock.FILE_2;
+            final long accessTime = (file == FileMock.FILE_1) ? file1 : file2;
+            return (A) new BasicFileAttributes() {
+                @Override
+                public FileTime lastModifiedTime() {
+                    return file.getLastModifiedTime();
+                }
+
+                @Override
+                public FileTime lastAccessTime() {
+                    return FileTime.fromMillis(accessTime);
+                }
+
+                @Override
+                public FileTime creationTime() {
+                    return file.getLastModifiedTime();
+                }
+
+                @Override
+                public boolean isRegularFile() {
+                    return !file.isDirectory();
+                }
+
+                @Override
+                public boolean isDirectory() {
+                    return file.isDirectory();
+                }
+
+                @Override
+                public boolean isSymbolicLink() {
+                    return false;
+                }
+
+                @Override
+                public boolean isOther() {
+                    return false;
+                }
+
+                @Override
+                public long size() {
+                    return file.size();
+                }
+
+                @Override
+                public Object fileKey() {
+                    return null;
+                }
+            };
+        }
+
+    }
+
 }
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import io.goobox.sync.storj.CircuitBreaker.State;
+
+@RunWith(JUnit4.class)
+public class CircuitBreakerTest {
+
+    private Object request = new Object();
+
+    @Test
+    public void opensAfterConsecutiveFailures() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(3, 60000, 60000);
+
+        breaker.onFailure();
+        breaker.onFailure();
+        assertEquals(State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest(request));
+
+        breaker.onFailure();
+        assertEquals(State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest(request));
+        assertTrue(breaker.getRemainingOpenTime() > 0);
+    }
+
+    @Test
+    public void successResetsFailures() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(2, 60000, 60000);
+
+        breaker.onFailure();
+        breaker.onSuccess();
+        breaker.onFailure();
+
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void halfOpenAllowsSingleProbe() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0, 0);
+
+        breaker.onFailure();
+        assertEquals(State.OPEN, breaker.getState());
+
+        assertTrue(breaker.allowRequest(request));
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest(new Object()));
+
+        breaker.onSuccess();
+        breaker.onRequestFinished(request);
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void probeWithoutBridgeRequestDoesNotClose() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0, 0);
+
+        breaker.onFailure();
+        assertTrue(breaker.allowRequest(request));
+
+        // the probe returned before reaching the bridge
+        breaker.onRequestFinished(request);
+        assertEquals(State.OPEN, breaker.getState());
+
+        // the next request probes instead
+        Object next = new Object();
+        assertTrue(breaker.allowRequest(next));
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        breaker.onSuccess();
+        breaker.onRequestFinished(next);
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void failedProbeReopens() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0, 0);
+
+        breaker.onFailure();
+        assertTrue(breaker.allowRequest(request));
+
+        breaker.onFailure();
+        breaker.onRequestFinished(request);
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void backoffStaysWithinBounds() throws Exception {
+        RetryPolicy policy = new RetryPolicy(1000, 8000, 5, true);
+
+        for (int attempts = 1; attempts <= 10; attempts++) {
+            long max = Math.min(1000L << (attempts - 1), 8000);
+            long delay = policy.getDelay(attempts);
+            assertTrue(delay >= max / 2);
+            assertTrue(delay <= max);
+        }
+
+        assertTrue(policy.canRetry(5));
+        assertFalse(policy.canRetry(6));
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+//   -Dexec.mainClass=io.goobox.sync.storj.CompressionBenchmark
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompressionBenchmark {
+
+    private static final int SIZE = 4 * 1024 * 1024;
+
+    @Param({ "text", "random", "mixed" })
+    public String corpus;
+
+    private Path dir;
+    private Path file;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Savings {
+        public long bytesIn;
+        public long bytesSaved;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytesIn = 0;
+            bytesSaved = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("goobox-bench");
+        file = dir.resolve("corpus." + ("text".equals(corpus) ? "txt" : "bin"));
+        Files.write(file, generate(corpus));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public boolean eligibility() throws IOException {
+        return Compressor.isEligible(file);
+    }
+
+    @Benchmark
+    public long compress(Savings savings) throws IOException {
+        long size = Files.size(file);
+        savings.bytesIn += size;
+        if (!Compressor.isEligible(file)) {
+            return size;
+        }
+
+        Path compressed = Compressor.compress(file, Codec.GZIP, dir);
+        if (compressed == null) {
+            return size;
+        }
+        long compressedSize = Files.size(compressed);
+        Files.delete(compressed);
+        savings.bytesSaved += size - compressedSize;
+        return compressedSize;
+    }
+
+    private static byte[] generate(String corpus) {
+        Random random = new Random(42);
+        byte[] data = new byte[SIZE];
+        switch (corpus) {
+        case "text":
+            fillText(random, data, 0, SIZE);
+            break;
+        case "random":
+            random.nextBytes(data);
+            break;
+        default:
+            // alternating text and random chunks, like documents with embedded images
+            for (int offset = 0; offset < SIZE; offset += 64 * 1024) {
+                if ((offset / (64 * 1024)) % 2 == 0) {
+                    fillText(random, data, offset, 64 * 1024);
+                } else {
+                    byte[] chunk = new byte[64 * 1024];
+                    random.nextBytes(chunk);
+                    System.arraycopy(chunk, 0, data, offset, chunk.length);
+                }
+            }
+        }
+        return data;
+    }
+
+    private static void fillText(Random random, byte[] data, int offset, int length) {
+        String[] words = { "sync", "storj", "bucket", "file", "upload", "download", "goobox", "cloud", "the",
+                "a", "of", "and", "local", "state" };
+        int i = offset;
+        while (i < offset + length) {
+            byte[] word = (words[random.nextInt(words.length)] + (random.nextInt(12) == 0 ? "\n" : " "))
+                    .getBytes();
+            for (int j = 0; j < word.length && i < offset + length; j++) {
+                data[i++] = word[j];
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CompressionBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class CompressorTest {
+
+    @Test
+    public void entropy() {
+        byte[] data = new byte[64 * 1024];
+        assertEquals(0, Compressor.getEntropy(data, data.length), 0.001);
+
+        new Random(42).nextBytes(data);
+        assertTrue(Compressor.getEntropy(data, data.length) > 7.9);
+
+        Arrays.fill(data, 0, data.length / 2, (byte) 'a');
+        Arrays.fill(data, data.length / 2, data.length, (byte) 'b');
+        assertEquals(1, Compressor.getEntropy(data, data.length), 0.001);
+    }
+
+    @Test
+    public void codecNames() {
+        String compressed = Codec.GZIP.getStorjName("dir/file.txt");
+        assertEquals(".goobox-encoded/dir/file.txt.goobox-gzip", compressed);
+        assertEquals(Codec.GZIP, Codec.of(compressed));
+        assertEquals(Codec.GZIP, Codec.of(StorjUtil.getStagedName(compressed)));
+        assertEquals("dir/file.txt", StorjUtil.getLogicalName(StorjUtil.getStagedName(compressed)));
+        assertEquals("dir/file.txt", Codec.NONE.getStorjName("dir/file.txt"));
+        assertEquals(Codec.NONE, Codec.of("dir/file.txt"));
+
+        // only names in the encoded folder are decoded
+        assertEquals(Codec.NONE, Codec.of("dir/file.txt.goobox-gzip"));
+        assertEquals("dir/file.txt.goobox-gzip", StorjUtil.getLogicalName("dir/file.txt.goobox-gzip"));
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        Path dir = Files.createTempDirectory("goobox");
+        try {
+            Path original = dir.resolve("original.txt");
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 10000; i++) {
+                text.append("line ").append(i).append('\n');
+            }
+            Files.write(original, text.toString().getBytes(StandardCharsets.UTF_8));
+            assertTrue(Compressor.isEligible(original));
+
+            MessageDigest digest = Fingerprint.newDigest();
+            Path compressed = Compressor.compress(original, Codec.GZIP, dir, digest);
+            assertTrue(Files.size(compressed) < Files.size(original));
+
+            Path decompressed = dir.resolve("decompressed.txt");
+            String fingerprint = Compressor.decompress(compressed, Codec.GZIP, decompressed);
+
+            assertArrayEquals(Files.readAllBytes(original), Files.readAllBytes(decompressed));
+            // the fingerprint is the one of the original content
+            assertEquals(Fingerprint.of(original), fingerprint);
+            assertEquals(fingerprint, Fingerprint.toHex(digest.digest()));
+        } finally {
+            try (Stream<Path> paths = Files.walk(dir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ConcurrencyControllerTest {
+
+    @Test
+    public void additiveIncrease() throws Exception {
+        ConcurrencyController controller = new ConcurrencyController("test", 1, 3);
+        assertEquals(1, controller.getLimit());
+
+        complete(controller, 1, 100, false);
+        assertEquals(2, controller.getLimit());
+
+        complete(controller, 3, 100, false);
+        assertEquals(3, controller.getLimit());
+
+        complete(controller, 10, 100, false);
+        assertEquals(3, controller.getLimit());
+    }
+
+    @Test
+    public void multiplicativeDecreaseOnError() throws Exception {
+        ConcurrencyController controller = new ConcurrencyController("test", 1, 8);
+        complete(controller, 100, 10, false);
+        assertEquals(8, controller.getLimit());
+
+        complete(controller, 1, 10, true);
+        assertEquals(4, controller.getLimit());
+    }
+
+    @Test
+    public void decreaseOnLatency() throws Exception {
+        ConcurrencyController controller = new ConcurrencyController("test", 2, 8);
+        complete(controller, 100, 1000, false);
+        assertEquals(8, controller.getLimit());
+
+        complete(controller, 1, 10000, false);
+        assertEquals(4, controller.getLimit());
+    }
+
+    @Test
+    public void floor() throws Exception {
+        ConcurrencyController controller = new ConcurrencyController("test", 2, 8);
+
+        complete(controller, 1, 10, true);
+        assertEquals(2, controller.getLimit());
+    }
+
+    @Test
+    public void cap() throws Exception {
+        ConcurrencyController controller = new ConcurrencyController("test", 1, 8);
+        complete(controller, 100, 10, false);
+        assertEquals(8, controller.getLimit());
+
+        controller.setCap(1);
+        assertEquals(1, controller.getLimit());
+        complete(controller, 100, 10, false);
+        assertEquals(1, controller.getLimit());
+
+        controller.setCap(0);
+        assertEquals(8, controller.getLimit());
+    }
+
+    @Test
+    public void transferLatencyIsTimeToFirstProgress() throws Exception {
+        RetryableTask task = new RetryableTask() {
+            @Override
+            public String getFileName() {
+                return "test";
+            }
+
+            @Override
+            public void run() {
+            }
+        };
+
+        task.transferStarted();
+        Thread.sleep(50);
+        task.transferProgressed();
+        // the rest of the transfer depends on size and pacing
+        Thread.sleep(300);
+        task.transferProgressed();
+
+        long latency = task.getLatency(60000);
+        assertTrue(latency >= 50);
+        assertTrue(latency < 300);
+
+        // a run without transfer is measured as a whole
+        assertEquals(100, task.getLatency(100));
+    }
+
+    private void complete(ConcurrencyController controller, int count, long latency, boolean error)
+            throws InterruptedException {
+        for (int i = 0; i < count; i++) {
+            controller.acquire();
+            controller.release(latency, error);
+        }
+    }
+
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.goobox.sync.storj.db.DB;
+import io.goobox.sync.storj.db.SyncState;
+import io.goobox.sync.storj.mocks.AppMock;
+import io.goobox.sync.storj.mocks.DBMock;
+import io.goobox.sync.storj.mocks.StorjMock;
+import io.storj.libstorj.Bucket;
+import io.storj.libstorj.DownloadFileCallback;
+import io.storj.libstorj.File;
+import io.storj.libstorj.Storj;
+import io.storj.libstorj.UploadFileCallback;
+import mockit.Mock;
+import mockit.MockUp;
+import mockit.integration.junit4.JMockit;
+
+@RunWith(JMockit.class)
+public class DedupTest {
+
+    private static final byte[] CONTENT = new byte[1024 * 1024];
+
+    static {
+        new Random(1).nextBytes(CONTENT);
+    }
+
+    private Path syncDir;
+    private RetryQueue retryQueue;
+    private ContentStorj storj;
+    private String fingerprint;
+
+    @BeforeClass
+    public static void applySharedFakes() {
+        new AppMock();
+        new DBMock();
+    }
+
+    @Before
+    public void setup() throws Exception {
+        syncDir = Files.createTempDirectory("goobox").toRealPath();
+        retryQueue = new RetryQueue();
+        final Path dir = syncDir;
+        final RetryQueue retries = retryQueue;
+        new MockUp<App>() {
+            @Mock
+            public Path getSyncDir() {
+                return dir;
+            }
+
+            @Mock
+            public boolean isDedup() {
+                return true;
+            }
+
+            @Mock
+            public RetryQueue getRetryQueue() {
+                return retries;
+            }
+        };
+        Files.createDirectories(App.getInstance().getStagingArea().getDir());
+        App.getInstance().getCloudFileCache().refresh(new File[0]);
+        storj = new ContentStorj();
+
+        Path path = Files.createTempFile("goobox", null);
+        try {
+            Files.write(path, CONTENT);
+            fingerprint = Fingerprint.of(path);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @After
+    public void cleanUp() throws IOException {
+        App.getInstance().getCloudFileCache().invalidate();
+        DB.close();
+        try (Stream<Path> paths = Files.walk(syncDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void uploadSharesContent() throws Exception {
+        Path first = writeLocal("first");
+        Path second = writeLocal("second");
+        long hits = App.getInstance().getDedupStats().getHits();
+
+        new UploadFileTask(StorjMock.BUCKET, first).run();
+        new UploadFileTask(StorjMock.BUCKET, second).run();
+
+        // the content is uploaded once, each file is a reference to it
+        List<String> expected = new ArrayList<>();
+        expected.add(StorjUtil.getBlobName(fingerprint));
+        expected.add(StorjUtil.getRefName("first", fingerprint));
+        expected.add(StorjUtil.getRefName("second", fingerprint));
+        assertEquals(expected, storj.uploaded);
+        assertNotNull(DB.getDedupEntry(fingerprint));
+        assertEquals(SyncState.SYNCED, DB.get(second).getState());
+        assertEquals(fingerprint, DB.get(second).getFingerprint());
+        assertEquals(hits + 1, App.getInstance().getDedupStats().getHits());
+    }
+
+    @Test
+    public void downloadCopiesLocalContent() throws Exception {
+        Path first = writeLocal("first");
+        File firstRef = storj.add(StorjUtil.getRefName("first", fingerprint), fingerprint.getBytes(StandardCharsets.US_ASCII));
+        DB.setSynced(firstRef, first, Files.getLastModifiedTime(first).toMillis(), CONTENT.length, fingerprint);
+        File secondRef = storj.add(StorjUtil.getRefName("second", fingerprint), fingerprint.getBytes(StandardCharsets.US_ASCII));
+        DB.addForDownload(secondRef);
+
+        new DownloadFileTask(StorjMock.BUCKET, secondRef).run();
+
+        assertEquals(0, storj.downloads);
+        assertArrayEquals(CONTENT, Files.readAllBytes(syncDir.resolve("second")));
+        assertEquals(SyncState.SYNCED, DB.get(secondRef).getState());
+    }
+
+    @Test
+    public void downloadFetchesContent() throws Exception {
+        File blob = storj.add(StorjUtil.getBlobName(fingerprint), CONTENT);
+        File ref = storj.add(StorjUtil.getRefName("first", fingerprint), fingerprint.getBytes(StandardCharsets.US_ASCII));
+        App.getInstance().getCloudFileCache().refresh(new File[] { blob, ref });
+        DB.addForDownload(ref);
+
+        new DownloadFileTask(StorjMock.BUCKET, ref).run();
+
+        assertEquals(1, storj.downloads);
+        assertArrayEquals(CONTENT, Files.readAllBytes(syncDir.resolve("first")));
+        assertEquals(SyncState.SYNCED, DB.get(ref).getState());
+        assertEquals(fingerprint, DB.get(ref).getFingerprint());
+    }
+
+    @Test
+    public void downloadRejectsCorruptedContent() throws Exception {
+        byte[] corrupted = CONTENT.clone();
+        corrupted[0]++;
+        File blob = storj.add(StorjUtil.getBlobName(fingerprint), corrupted);
+        File ref = storj.add(StorjUtil.getRefName("first", fingerprint), fingerprint.getBytes(StandardCharsets.US_ASCII));
+        App.getInstance().getCloudFileCache().refresh(new File[] { blob, ref });
+        DB.addForDownload(ref);
+
+        new DownloadFileTask(StorjMock.BUCKET, ref).run();
+
+        assertEquals(1, storj.downloads);
+        assertFalse(Files.exists(syncDir.resolve("first")));
+        assertEquals(SyncState.DOWNLOAD_FAILED, DB.get(ref).getState());
+        assertTrue(DB.getByFingerprint(fingerprint).isEmpty());
+    }
+
+    @Test
+    public void downloadSkipsMismatchedLocalContent() throws Exception {
+        // the local file has the fingerprint in the DB, but not the content
+        byte[] other = CONTENT.clone();
+        other[0]++;
+        Path first = Files.write(syncDir.resolve("first"), other);
+        File firstRef = storj.add(StorjUtil.getRefName("first", fingerprint), fingerprint.getBytes(StandardCharsets.US_ASCII));
+        DB.setSynced(firstRef, first, Files.getLastModifiedTime(first).toMillis(), CONTENT.length, fingerprint);
+        File blob = storj.add(StorjUtil.getBlobName(fingerprint), CONTENT);
+        File secondRef = storj.add(StorjUtil.getRefName("second", fingerprint), fingerprint.getBytes(StandardCharsets.US_ASCII));
+        App.getInstance().getCloudFileCache().refresh(new File[] { blob, firstRef, secondRef });
+        DB.addForDownload(secondRef);
+
+        new DownloadFileTask(StorjMock.BUCKET, secondRef).run();
+
+        assertEquals(1, storj.downloads);
+        assertArrayEquals(CONTENT, Files.readAllBytes(syncDir.resolve("second")));
+        assertEquals(SyncState.SYNCED, DB.get(secondRef).getState());
+    }
+
+    @Test
+    public void downloadWaitsForContentInCache() throws Exception {
+        // the cache was refreshed before the content was uploaded
+        File ref = storj.add(StorjUtil.getRefName("first", fingerprint), fingerprint.getBytes(StandardCharsets.US_ASCII));
+        DB.addForDownload(ref);
+
+        new DownloadFileTask(StorjMock.BUCKET, ref).run();
+
+        assertEquals(0, storj.downloads);
+        assertEquals(SyncState.FOR_DOWNLOAD, DB.get(ref).getState());
+        assertTrue(retryQueue.isScheduled(ref.getName()));
+    }
+
+    @Test
+    public void concurrentDownloadOfSameContent() throws Exception {
+        File blob = storj.add(StorjUtil.getBlobName(fingerprint), CONTENT);
+        File ref = storj.add(StorjUtil.getRefName("second", fingerprint), fingerprint.getBytes(StandardCharsets.US_ASCII));
+        App.getInstance().getCloudFileCache().refresh(new File[] { blob, ref });
+        DB.addForDownload(ref);
+
+        // the download of another reference to the same content is in progress
+        StagingArea staging = App.getInstance().getStagingArea();
+        assertTrue(staging.claim(staging.getPath(blob)));
+        try {
+            new DownloadFileTask(StorjMock.BUCKET, ref).run();
+        } finally {
+            staging.release(staging.getPath(blob));
+        }
+
+        assertEquals(0, storj.downloads);
+        assertEquals(SyncState.FOR_DOWNLOAD, DB.get(ref).getState());
+        assertTrue(retryQueue.isScheduled(ref.getName()));
+    }
+
+    private Path writeLocal(String name) throws IOException {
+        return Files.write(syncDir.resolve(name), CONTENT);
+    }
+
+    private static class ContentStorj extends MockUp<Storj> {
+
+        Map<String, byte[]> contents = new HashMap<>();
+        List<String> uploaded = new ArrayList<>();
+        int downloads;
+
+        File add(String name, byte[] content) {
+            contents.put(name, content);
+            return new File(name + "-id", StorjMock.BUCKET.getId(), name, "2017-11-20T10:00:00.000Z", true,
+                    content.length, null, null, null, null);
+        }
+
+        @Mock
+        private void loadLibrary() {
+            // do not load any native library
+        }
+
+        @Mock
+        public long downloadFile(Bucket bucket, File file, DownloadFileCallback callback) throws IOException {
+            downloads++;
+            Path path = App.getInstance().getStagingArea().getPath(file);
+            Files.createDirectories(path.getParent());
+            Files.write(path, contents.get(file.getName()));
+            callback.onComplete(file.getId(), path.toString());
+            return 0;
+        }
+
+        @Mock
+        public long uploadFile(Bucket bucket, String fileName, String localPath, UploadFileCallback callback)
+                throws IOException {
+            uploaded.add(fileName);
+            File file = add(fileName, Files.readAllBytes(Paths.get(localPath)));
+            callback.onComplete(localPath, file);
+            return 0;
+        }
+
+    }
+
+}
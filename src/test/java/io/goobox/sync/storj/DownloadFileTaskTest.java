@@ -16,7 +16,15 @@
  */
 package io.goobox.sync.storj;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.stream.Stream;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -33,6 +41,13 @@ import io.goobox.sync.storj.mocks.DBMock;
 import io.goobox.sync.storj.mocks.FileMock;
 import io.goobox.sync.storj.mocks.FilesMock;
 import io.goobox.sync.storj.mocks.StorjMock;
+import io.goobox.sync.storj.segment.Manifest;
+import io.storj.libstorj.Bucket;
+import io.storj.libstorj.DownloadFileCallback;
+import io.storj.libstorj.File;
+import io.storj.libstorj.Storj;
+import mockit.Mock;
+import mockit.MockUp;
 import mockit.integration.junit4.JMockit;
 
 @RunWith(JMockit.class)
@@ -63,6 +78,7 @@ public class DownloadFileTaskTest {
 
         Assert.assertTrue(Files.exists(FileMock.FILE_1.getPath()));
         AssertState.assertDB(StorjMock.FILE_1, FileMock.FILE_1, SyncState.SYNCED);
+        Assert.assertNull(DB.get(StorjMock.FILE_1).getStagingPath());
     }
 
     @Test
@@ -74,6 +90,7 @@ public class DownloadFileTaskTest {
         new DownloadFileTask(StorjMock.BUCKET, StorjMock.FILE_2).run();
 
         AssertState.assertDB(StorjMock.FILE_2, SyncState.DOWNLOAD_FAILED);
+        Assert.assertNull(DB.get(StorjMock.FILE_2).getStagingPath());
     }
 
     @Test
@@ -102,4 +119,114 @@ public class DownloadFileTaskTest {
         AssertState.assertDB(StorjMock.SUB_SUB_FILE, FileMock.SUB_SUB_FILE, SyncState.SYNCED);
     }
 
+    @Test
+    public void compressedDownload() throws Exception {
+        final Path syncDir = Files.createTempDirectory("goobox").toRealPath();
+        new MockUp<App>() {
+            @Mock
+            public Path getSyncDir() {
+                return syncDir;
+            }
+        };
+
+        byte[] content = "compressible content ".getBytes(StandardCharsets.UTF_8);
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = Codec.GZIP.encode(compressed)) {
+            for (int i = 0; i < 1000; i++) {
+                out.write(content);
+            }
+        }
+        new MockUp<Storj>() {
+            @Mock
+            private void loadLibrary() {
+                // do not load any native library
+            }
+
+            @Mock
+            public long downloadFile(Bucket bucket, File file, DownloadFileCallback callback) throws IOException {
+                Path path = App.getInstance().getStagingArea().getPath(file);
+                Files.createDirectories(path.getParent());
+                Files.write(path, compressed.toByteArray());
+                callback.onComplete(file.getId(), path.toString());
+                return 0;
+            }
+        };
+
+        File file = new File("compressed-id", StorjMock.BUCKET.getId(), Codec.GZIP.getStorjName("file.txt"),
+                "2017-11-20T10:00:00.000Z", true, compressed.size(), null, null, null, null);
+        DB.addForDownload(file);
+
+        try {
+            new DownloadFileTask(StorjMock.BUCKET, file).run();
+
+            // decoded under the logical name
+            Path path = syncDir.resolve("file.txt");
+            byte[] downloaded = Files.readAllBytes(path);
+            Assert.assertEquals(content.length * 1000, downloaded.length);
+            for (int i = 0; i < downloaded.length; i++) {
+                Assert.assertEquals(content[i % content.length], downloaded[i]);
+            }
+            Assert.assertEquals(SyncState.SYNCED, DB.get(file).getState());
+            Assert.assertEquals(Fingerprint.of(path), DB.get(file).getFingerprint());
+        } finally {
+            try (Stream<Path> paths = Files.walk(syncDir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    public void segmentMissingFromCache() throws Exception {
+        final Path syncDir = Files.createTempDirectory("goobox").toRealPath();
+        final RetryQueue retryQueue = new RetryQueue();
+        new MockUp<App>() {
+            @Mock
+            public Path getSyncDir() {
+                return syncDir;
+            }
+
+            @Mock
+            public RetryQueue getRetryQueue() {
+                return retryQueue;
+            }
+        };
+
+        final String segment = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+        new MockUp<Storj>() {
+            @Mock
+            private void loadLibrary() {
+                // do not load any native library
+            }
+
+            @Mock
+            public long downloadFile(Bucket bucket, File file, DownloadFileCallback callback) throws IOException {
+                Path path = App.getInstance().getStagingArea().getPath(file);
+                Files.createDirectories(path.getParent());
+                new Manifest(1024, 1024, Collections.singletonList(segment), null).write(path);
+                callback.onComplete(file.getId(), path.toString());
+                return 0;
+            }
+        };
+
+        // the segment was uploaded after the last listing
+        File manifest = new File("manifest-id", StorjMock.BUCKET.getId(), StorjUtil.getManifestName("file.bin"),
+                "2017-11-20T10:00:00.000Z", true, 300, null, null, null, null);
+        App.getInstance().getCloudFileCache().refresh(new File[] { manifest });
+        DB.addForDownload(manifest);
+
+        try {
+            new DownloadFileTask(StorjMock.BUCKET, manifest).run();
+
+            Assert.assertEquals(SyncState.FOR_DOWNLOAD, DB.get(manifest).getState());
+            Assert.assertNull(DB.get(manifest).getStagingPath());
+            Assert.assertTrue(retryQueue.isScheduled(manifest.getName()));
+            Assert.assertFalse(Files.exists(syncDir.resolve("file.bin")));
+        } finally {
+            App.getInstance().getCloudFileCache().invalidate();
+            try (Stream<Path> paths = Files.walk(syncDir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
 }
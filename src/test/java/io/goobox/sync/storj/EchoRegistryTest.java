@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class EchoRegistryTest {
+
+    private EchoRegistry registry = new EchoRegistry();
+
+    @Test
+    public void publishedFile() throws Exception {
+        Path staged = Files.createTempFile("goobox", null);
+        Path target = staged.resolveSibling(staged.getFileName() + ".target");
+        try {
+            Files.write(staged, "abc".getBytes(StandardCharsets.US_ASCII));
+
+            registry.expect(target, staged);
+            assertFalse(registry.isEcho(target));
+
+            Files.move(staged, target);
+            assertTrue(registry.isEcho(target));
+
+            // the user appended to it right after
+            Files.write(target, "def".getBytes(StandardCharsets.US_ASCII), StandardOpenOption.APPEND);
+            assertFalse(registry.isEcho(target));
+        } finally {
+            Files.deleteIfExists(staged);
+            Files.deleteIfExists(target);
+        }
+    }
+
+    @Test
+    public void deletedFile() throws Exception {
+        Path path = Files.createTempFile("goobox", null);
+        try {
+            registry.expectDeleted(path);
+            assertFalse(registry.isEcho(path));
+
+            Files.delete(path);
+            assertTrue(registry.isEcho(path));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void createdDirectory() throws Exception {
+        Path dir = Files.createTempDirectory("goobox");
+        try {
+            registry.expectDirectory(dir);
+            assertTrue(registry.isEcho(dir));
+            assertFalse(registry.isEcho(dir.resolve("other")));
+        } finally {
+            Files.delete(dir);
+        }
+    }
+
+}
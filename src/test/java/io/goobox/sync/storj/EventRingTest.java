@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class EventRingTest {
+
+    @Test
+    public void roundsCapacityUp() throws Exception {
+        assertEquals(8, new EventRing<Integer>(5).capacity());
+        assertEquals(8, new EventRing<Integer>(8).capacity());
+    }
+
+    @Test
+    public void rejectsWhenFull() throws Exception {
+        EventRing<Integer> ring = new EventRing<>(2);
+
+        assertTrue(ring.offer(1));
+        assertTrue(ring.offer(2));
+        assertFalse(ring.offer(3));
+        assertEquals(2, ring.size());
+
+        assertEquals(Integer.valueOf(1), ring.poll());
+        assertTrue(ring.offer(3));
+    }
+
+    @Test
+    public void keepsOrderAcrossWrap() throws Exception {
+        EventRing<Integer> ring = new EventRing<>(4);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(ring.offer(i));
+            assertTrue(ring.offer(i + 100));
+            assertEquals(Integer.valueOf(i), ring.poll());
+            assertEquals(Integer.valueOf(i + 100), ring.poll());
+        }
+        assertNull(ring.poll());
+    }
+
+    @Test
+    public void passesEventsBetweenThreads() throws Exception {
+        final int count = 1000000;
+        final EventRing<Integer> ring = new EventRing<>(64);
+
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < count; i++) {
+                while (!ring.offer(i)) {
+                    Thread.yield();
+                }
+            }
+        });
+        producer.start();
+
+        for (int i = 0; i < count; i++) {
+            Integer value;
+            while ((value = ring.poll()) == null) {
+                Thread.yield();
+            }
+            assertEquals(i, value.intValue());
+        }
+        producer.join();
+        assertNull(ring.poll());
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.goobox.sync.storj.db.DB;
+import io.goobox.sync.storj.db.SyncFile;
+import io.goobox.sync.storj.db.SyncState;
+import io.goobox.sync.storj.mocks.AppMock;
+import io.goobox.sync.storj.mocks.DBMock;
+import io.goobox.sync.storj.mocks.FileMock;
+import io.goobox.sync.storj.mocks.FileWatcherMock;
+import io.goobox.sync.storj.mocks.FilesMock;
+import io.goobox.sync.storj.mocks.StorjMock;
+import mockit.Mock;
+import mockit.MockUp;
+import mockit.integration.junit4.JMockit;
+
+@RunWith(JMockit.class)
+public class EvictFileTaskTest {
+
+    private static final String FINGERPRINT = "5d41402abc4b2a76b9719d911017c592";
+
+    private PlaceholderMock placeholderMock;
+
+    @BeforeClass
+    public static void applySharedFakes() {
+        new AppMock();
+        new DBMock();
+    }
+
+    @Before
+    public void setup() {
+        placeholderMock = new PlaceholderMock();
+    }
+
+    @After
+    public void cleanUp() {
+        DB.close();
+    }
+
+    @Test
+    public void evict() throws Exception {
+        new StorjMock(StorjMock.FILE_1);
+        new FilesMock(FileMock.FILE_1);
+
+        DB.setSynced(StorjMock.FILE_1, FileMock.FILE_1.getPath(), FINGERPRINT);
+        DB.setSegments(FileMock.FILE_1.getPath(), 4096, Arrays.asList("segment-1", "segment-2"));
+
+        new EvictFileTask(FileMock.FILE_1.getPath()).run();
+
+        assertTrue(placeholderMock.replaced);
+        SyncFile syncFile = DB.get(FileMock.FILE_1.getPath());
+        assertEquals(SyncState.DEHYDRATED, syncFile.getState());
+        assertEquals(FileMock.FILE_1.size(), syncFile.getLocalSize());
+        assertEquals(FileMock.FILE_1.lastModified(), syncFile.getLocalModifiedTime());
+        // the cloud data is still there
+        assertEquals(FINGERPRINT, syncFile.getFingerprint());
+        assertEquals(Arrays.asList("segment-1", "segment-2"), syncFile.getSegments());
+    }
+
+    @Test
+    public void modifiedSinceCheck() throws Exception {
+        new StorjMock(StorjMock.FILE_1);
+        FilesMock filesMock = new FilesMock(FileMock.FILE_1);
+
+        DB.setSynced(StorjMock.FILE_1, FileMock.FILE_1.getPath(), FINGERPRINT);
+        filesMock.modifyFile(FileMock.FILE_1, FileMock.MODIFIED_FILE_1);
+
+        new EvictFileTask(FileMock.FILE_1.getPath()).run();
+
+        assertFalse(placeholderMock.replaced);
+        assertEquals(SyncState.SYNCED, DB.get(FileMock.FILE_1.getPath()).getState());
+    }
+
+    @Test
+    public void hotFile() throws Exception {
+        new StorjMock(StorjMock.FILE_1);
+        new FilesMock(FileMock.FILE_1);
+        new FileWatcherMock(FileMock.FILE_1.getPath());
+
+        DB.setSynced(StorjMock.FILE_1, FileMock.FILE_1.getPath(), FINGERPRINT);
+
+        new EvictFileTask(FileMock.FILE_1.getPath()).run();
+
+        assertFalse(placeholderMock.replaced);
+        assertEquals(SyncState.SYNCED, DB.get(FileMock.FILE_1.getPath()).getState());
+    }
+
+    @Test
+    public void deletedFromDB() throws Exception {
+        new StorjMock(StorjMock.FILE_1);
+        new FilesMock(FileMock.FILE_1);
+
+        new EvictFileTask(FileMock.FILE_1.getPath()).run();
+
+        assertFalse(placeholderMock.replaced);
+    }
+
+    private static class PlaceholderMock extends MockUp<Placeholder> {
+
+        private boolean replaced;
+
+        @Mock
+        public void replace(Path path, long size, long modifiedTime) {
+            replaced = true;
+        }
+
+    }
+
+}
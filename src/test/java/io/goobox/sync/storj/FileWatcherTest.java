@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.goobox.sync.storj.ignore.IgnoreMatcher;
+import io.goobox.sync.storj.mocks.AppMock;
+import io.methvin.watcher.DirectoryChangeEvent;
+import io.methvin.watcher.DirectoryChangeEvent.EventType;
+import io.methvin.watcher.DirectoryWatcher;
+import mockit.Mock;
+import mockit.MockUp;
+import mockit.integration.junit4.JMockit;
+
+@RunWith(JMockit.class)
+public class FileWatcherTest {
+
+    private Path syncDir;
+    private TaskQueue tasks;
+    private FileWatcher watcher;
+
+    @BeforeClass
+    public static void applySharedFakes() {
+        new AppMock();
+    }
+
+    @Before
+    public void setup() throws Exception {
+        syncDir = Files.createTempDirectory("goobox").toRealPath();
+        tasks = new TaskQueue();
+        watcher = new FileWatcher();
+
+        final Path dir = syncDir;
+        final TaskQueue queue = tasks;
+        final TaskExecutor executor = new TaskExecutor(tasks);
+        new MockUp<App>() {
+            @Mock
+            public Path getSyncDir() {
+                return dir;
+            }
+
+            @Mock
+            public TaskQueue getTaskQueue() {
+                return queue;
+            }
+
+            @Mock
+            public TaskExecutor getTaskExecutor() {
+                return executor;
+            }
+        };
+    }
+
+    @After
+    public void cleanUp() throws Exception {
+        if (watcher.isAlive()) {
+            watcher.interrupt();
+            watcher.join();
+        }
+        try (Stream<Path> paths = Files.walk(syncDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void overflow() throws Exception {
+        Path dir = Files.createDirectories(syncDir.resolve("dir"));
+        Path file = Files.write(dir.resolve("file"), new byte[] { 1, 2, 3 });
+
+        watcher.overflowed();
+        watcher.tick();
+
+        // the lost changes are found by a state check right away
+        assertEquals(CheckStateTask.class, tasks.poll().getClass());
+        assertNull(tasks.poll());
+        assertFalse(watcher.isHot(dir));
+        assertFalse(watcher.isHot(file));
+        assertEquals(0, watcher.getHotPaths());
+        assertEquals(1, watcher.getRescans());
+    }
+
+    @Test
+    public void manyOverflows() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            watcher.overflowed();
+        }
+        watcher.tick();
+
+        // one check covers all of them
+        assertEquals(CheckStateTask.class, tasks.poll().getClass());
+        assertNull(tasks.poll());
+        assertEquals(1, watcher.getRescans());
+    }
+
+    @Test
+    public void noOverflow() throws Exception {
+        watcher.tick();
+
+        assertNull(tasks.poll());
+        assertEquals(0, watcher.getRescans());
+    }
+
+    @Test
+    public void eventAfterFailedEvent() throws Exception {
+        final Path bad = syncDir.resolve("bad");
+        Path good = syncDir.resolve("good");
+        new MockUp<IgnoreMatcher>() {
+            @Mock
+            public boolean isIgnored(Path path) {
+                if (path.equals(bad)) {
+                    throw new IllegalStateException();
+                }
+                return false;
+            }
+        };
+        startConsumer();
+
+        watcher.onEvent(new DirectoryChangeEvent(EventType.CREATE, bad, 1));
+        watcher.onEvent(new DirectoryChangeEvent(EventType.CREATE, good, 1));
+
+        // the consumer survives the failed event and is woken up by the next one
+        awaitHot(good);
+        assertFalse(watcher.isHot(bad));
+    }
+
+    @Test
+    public void eventWakesUpIdleConsumer() throws Exception {
+        Path file = syncDir.resolve("file");
+        startConsumer();
+        // let it run out of events and park
+        Thread.sleep(100);
+
+        watcher.onEvent(new DirectoryChangeEvent(EventType.CREATE, file, 1));
+
+        awaitHot(file);
+    }
+
+    private void startConsumer() {
+        // the events come from the tests only
+        new MockUp<InotifyWatcher>() {
+            @Mock
+            public boolean isSupported() {
+                return false;
+            }
+        };
+        new MockUp<DirectoryWatcher>() {
+            @Mock
+            public CompletableFuture<Void> watchAsync() {
+                return CompletableFuture.completedFuture(null);
+            }
+        };
+        watcher.start();
+    }
+
+    private void awaitHot(Path path) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!watcher.isHot(path) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(watcher.isHot(path));
+    }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class FingerprintTest {
+
+    @Test
+    public void sha256() throws Exception {
+        Path path = Files.createTempFile("goobox", null);
+        try {
+            Files.write(path, "abc".getBytes(StandardCharsets.US_ASCII));
+
+            assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", Fingerprint.of(path));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void copy() throws Exception {
+        Path path = Files.createTempFile("goobox", null);
+        Path copy = Files.createTempFile("goobox", null);
+        try {
+            Files.write(path, "abc".getBytes(StandardCharsets.US_ASCII));
+
+            assertEquals(Fingerprint.of(path), Fingerprint.copy(path, copy));
+            assertArrayEquals(Files.readAllBytes(path), Files.readAllBytes(copy));
+        } finally {
+            Files.delete(path);
+            Files.delete(copy);
+        }
+    }
+
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.goobox.sync.storj.mocks.AppMock;
+import io.methvin.watcher.DirectoryChangeEvent;
+import io.methvin.watcher.DirectoryChangeEvent.EventType;
+import mockit.Mock;
+import mockit.MockUp;
+import mockit.integration.junit4.JMockit;
+
+@RunWith(JMockit.class)
+public class InotifyWatcherTest {
+
+    private Path syncDir;
+    private Path otherDir;
+    private BlockingQueue<DirectoryChangeEvent> events = new LinkedBlockingQueue<>();
+    private InotifyWatcher watcher;
+
+    @BeforeClass
+    public static void applySharedFakes() {
+        new AppMock();
+    }
+
+    @Before
+    public void setup() throws Exception {
+        assumeTrue(InotifyWatcher.isSupported());
+
+        syncDir = Files.createTempDirectory("goobox").toRealPath();
+        otherDir = Files.createTempDirectory("goobox").toRealPath();
+
+        final Path dir = syncDir;
+        new MockUp<App>() {
+            @Mock
+            public Path getSyncDir() {
+                return dir;
+            }
+        };
+    }
+
+    @After
+    public void cleanUp() throws IOException {
+        if (watcher != null) {
+            watcher.close();
+        }
+        for (Path dir : new Path[] { syncDir, otherDir }) {
+            if (dir != null) {
+                try (Stream<Path> paths = Files.walk(dir)) {
+                    paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void createModifyDelete() throws Exception {
+        startWatching();
+        Path file = syncDir.resolve("file");
+
+        Files.write(file, new byte[] { 1 });
+        awaitEvent(EventType.CREATE, file);
+
+        Files.write(file, new byte[] { 2 }, StandardOpenOption.APPEND);
+        awaitEvent(EventType.MODIFY, file);
+
+        Files.delete(file);
+        awaitEvent(EventType.DELETE, file);
+    }
+
+    @Test
+    public void newSubdirectory() throws Exception {
+        startWatching();
+        assertEquals(1, watcher.getWatchCount());
+        Path dir = syncDir.resolve("dir");
+
+        Files.createDirectory(dir);
+        awaitEvent(EventType.CREATE, dir);
+        awaitWatchCount(2);
+
+        Path file = dir.resolve("file");
+        Files.write(file, new byte[] { 1 });
+        awaitEvent(EventType.CREATE, file);
+    }
+
+    @Test
+    public void deletedSubdirectory() throws Exception {
+        Path dir = Files.createDirectories(syncDir.resolve("dir/sub-dir"));
+        startWatching();
+        assertEquals(3, watcher.getWatchCount());
+
+        Files.delete(dir);
+        awaitEvent(EventType.DELETE, dir);
+        // the kernel drops the watch and reports IN_IGNORED
+        awaitWatchCount(2);
+    }
+
+    @Test
+    public void subdirectoryMovedOut() throws Exception {
+        Path dir = syncDir.resolve("dir");
+        Files.createDirectories(dir.resolve("sub-dir"));
+        startWatching();
+        assertEquals(3, watcher.getWatchCount());
+
+        Path moved = Files.move(dir, otherDir.resolve("dir"));
+        awaitEvent(EventType.DELETE, dir);
+        awaitWatchCount(1);
+
+        // nothing is reported under the old paths anymore
+        Files.write(moved.resolve("sub-dir/file"), new byte[] { 1 });
+        Path file = Files.write(syncDir.resolve("file"), new byte[] { 1 });
+        DirectoryChangeEvent event;
+        do {
+            event = events.poll(5, TimeUnit.SECONDS);
+            assertTrue("No event for " + file, event != null);
+            assertFalse(event.path().toString(), event.path().startsWith(dir));
+        } while (!event.path().equals(file));
+    }
+
+    @Test
+    public void subdirectoryMovedWithinTree() throws Exception {
+        Path dir = syncDir.resolve("dir");
+        Files.createDirectories(dir.resolve("sub-dir"));
+        startWatching();
+
+        Path moved = Files.move(dir, syncDir.resolve("moved"));
+        awaitEvent(EventType.DELETE, dir);
+        awaitEvent(EventType.CREATE, moved);
+        awaitWatchCount(3);
+
+        // the watches report the new paths
+        Path file = moved.resolve("sub-dir/file");
+        Files.write(file, new byte[] { 1 });
+        awaitEvent(EventType.CREATE, file);
+    }
+
+    private void startWatching() throws IOException {
+        watcher = new InotifyWatcher(syncDir, events::add);
+        watcher.watchAsync();
+    }
+
+    private void awaitEvent(EventType type, Path path) throws InterruptedException {
+        DirectoryChangeEvent event;
+        do {
+            event = events.poll(5, TimeUnit.SECONDS);
+            assertTrue("No " + type + " event for " + path, event != null);
+        } while (event.eventType() != type || !event.path().equals(path));
+    }
+
+    private void awaitWatchCount(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (watcher.getWatchCount() != count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(count, watcher.getWatchCount());
+    }
+
+}
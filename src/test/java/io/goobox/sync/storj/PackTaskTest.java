@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.goobox.sync.storj.db.CloudPack;
+import io.goobox.sync.storj.db.DB;
+import io.goobox.sync.storj.mocks.AppMock;
+import io.goobox.sync.storj.mocks.DBMock;
+import io.goobox.sync.storj.mocks.StorjMock;
+import io.goobox.sync.storj.pack.PackIndex;
+import io.goobox.sync.storj.pack.PackMember;
+import io.goobox.sync.storj.pack.PackReader;
+import io.goobox.sync.storj.pack.PackWriter;
+import io.storj.libstorj.Bucket;
+import io.storj.libstorj.DeleteFileCallback;
+import io.storj.libstorj.DownloadFileCallback;
+import io.storj.libstorj.File;
+import io.storj.libstorj.ListFilesCallback;
+import io.storj.libstorj.Storj;
+import io.storj.libstorj.UploadFileCallback;
+import mockit.Mock;
+import mockit.MockUp;
+import mockit.integration.junit4.JMockit;
+
+@RunWith(JMockit.class)
+public class PackTaskTest {
+
+    private static final long MODIFIED_TIME = 1510243787000L;
+    private static final byte[] FIRST = "first member".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SECOND = "second member".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] THIRD = "third member".getBytes(StandardCharsets.UTF_8);
+
+    private Path syncDir;
+    private PackStorj storj;
+    private File pack;
+
+    @BeforeClass
+    public static void applySharedFakes() {
+        new AppMock();
+        new DBMock();
+    }
+
+    @Before
+    public void setup() throws Exception {
+        syncDir = Files.createTempDirectory("goobox").toRealPath();
+        final Path dir = syncDir;
+        new MockUp<App>() {
+            @Mock
+            public Path getSyncDir() {
+                return dir;
+            }
+        };
+        Files.createDirectories(App.getInstance().getStagingArea().getDir());
+        App.getInstance().getTaskQueue().clear();
+        storj = new PackStorj();
+    }
+
+    @After
+    public void cleanUp() throws IOException {
+        DB.close();
+        if (storj.uploaded != null) {
+            Files.delete(storj.uploaded);
+        }
+        try (Stream<Path> paths = Files.walk(syncDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void compactKeepsLiveMembers() throws Exception {
+        PackIndex index = preparePack("first", FIRST, "second", SECOND, "third", THIRD);
+        CloudPack cloudPack = DB.addPack(pack, 3);
+        // only the second member is still in use
+        PackMember second = index.get("second");
+        Path path = writeLocal("second", SECOND, MODIFIED_TIME);
+        DB.setPacked(path, cloudPack, second.getOffset(), second.getLength(), MODIFIED_TIME, SECOND.length);
+
+        new CompactPackTask(StorjMock.BUCKET, pack).run();
+
+        try (PackReader reader = new PackReader(storj.uploaded)) {
+            List<PackMember> members = reader.getIndex().getMembers();
+            assertEquals(1, members.size());
+            assertEquals("second", members.get(0).getName());
+            assertEquals(MODIFIED_TIME, members.get(0).getModifiedTime());
+            assertArrayEquals(SECOND, reader.read(members.get(0)));
+        }
+        assertEquals("new-pack-id", DB.get("second").getPackId());
+        assertEquals(0, DB.get("second").getPackOffset());
+        assertTrue(storj.deleted.contains(pack.getId()));
+        assertNull(DB.getPack(pack.getId()));
+    }
+
+    @Test
+    public void compactDeletesUnusedPack() throws Exception {
+        preparePack("first", FIRST);
+        DB.addPack(pack, 1);
+
+        new CompactPackTask(StorjMock.BUCKET, pack).run();
+
+        assertNull(storj.uploaded);
+        assertTrue(storj.deleted.contains(pack.getId()));
+        assertNull(DB.getPack(pack.getId()));
+    }
+
+    @Test
+    public void extractSkipsMembersOutsideSyncedFiles() throws Exception {
+        preparePack("../escaped", FIRST, syncDir.resolve("absolute").toString(), FIRST,
+                ".goobox-encoded/reserved", FIRST, "dir-name/inside", SECOND);
+
+        new DownloadPackTask(StorjMock.BUCKET, pack).run();
+
+        assertArrayEquals(SECOND, Files.readAllBytes(syncDir.resolve("dir-name/inside")));
+        assertFalse(Files.exists(syncDir.resolveSibling("escaped")));
+        assertFalse(Files.exists(syncDir.resolve("absolute")));
+        assertFalse(Files.exists(syncDir.resolve(".goobox-encoded/reserved")));
+        assertEquals(1, DB.size());
+        assertTrue(DB.get("dir-name/inside").isPacked());
+    }
+
+    @Test
+    public void extractReplacesOlderLocalVersionOfSameSize() throws Exception {
+        preparePack("first", FIRST);
+        byte[] edited = "FIRST MEMBER".getBytes(StandardCharsets.UTF_8);
+        writeLocal("first", edited, MODIFIED_TIME - 60000);
+
+        new DownloadPackTask(StorjMock.BUCKET, pack).run();
+
+        assertArrayEquals(FIRST, Files.readAllBytes(syncDir.resolve("first")));
+        assertEquals(MODIFIED_TIME, Files.getLastModifiedTime(syncDir.resolve("first")).toMillis());
+    }
+
+    @Test
+    public void extractKeepsPackedVersion() throws Exception {
+        preparePack("first", FIRST);
+        writeLocal("first", FIRST, MODIFIED_TIME);
+
+        new DownloadPackTask(StorjMock.BUCKET, pack).run();
+
+        assertTrue(DB.get("first").isPacked());
+        assertEquals(MODIFIED_TIME, DB.get("first").getLocalModifiedTime());
+    }
+
+    @Test
+    public void deletedMemberIsNotExtractedOnNewDevice() throws Exception {
+        PackIndex index = preparePack("first", FIRST, "second", SECOND);
+        CloudPack cloudPack = DB.addPack(pack, 2);
+        for (PackMember member : index.getMembers()) {
+            Path path = writeLocal(member.getName(), member.getName().equals("first") ? FIRST : SECOND,
+                    MODIFIED_TIME);
+            DB.setPacked(path, cloudPack, member.getOffset(), member.getLength(), MODIFIED_TIME,
+                    member.getLength());
+        }
+        storj.files.add(pack);
+
+        // deleted on this device - half of the pack is still in use
+        Files.delete(syncDir.resolve("first"));
+        new CheckStateTask().run();
+
+        Runnable task = App.getInstance().getTaskQueue().poll();
+        assertEquals(CompactPackTask.class, task.getClass());
+        task.run();
+        assertTrue(storj.deleted.contains(pack.getId()));
+
+        // a new device extracts the compacted pack
+        DB.close();
+        Files.delete(syncDir.resolve("second"));
+        storj.content = Files.readAllBytes(storj.uploaded);
+
+        new DownloadPackTask(StorjMock.BUCKET, storj.uploadedFile).run();
+
+        assertFalse(Files.exists(syncDir.resolve("first")));
+        assertArrayEquals(SECOND, Files.readAllBytes(syncDir.resolve("second")));
+        assertNull(DB.get("first"));
+        assertTrue(DB.get("second").isPacked());
+    }
+
+    private PackIndex preparePack(Object... members) throws IOException {
+        Path path = Files.createTempFile("goobox", ".pack");
+        PackIndex index;
+        try {
+            try (PackWriter writer = new PackWriter(path)) {
+                for (int i = 0; i < members.length; i += 2) {
+                    writer.add((String) members[i], (byte[]) members[i + 1], MODIFIED_TIME);
+                }
+                index = writer.getIndex();
+            }
+            storj.content = Files.readAllBytes(path);
+        } finally {
+            Files.delete(path);
+        }
+        pack = new File("old-pack-id", StorjMock.BUCKET.getId(), StorjUtil.newPackName(),
+                "2017-11-09T17:51:14.123Z", true, storj.content.length, null, null, null, null);
+        return index;
+    }
+
+    private Path writeLocal(String name, byte[] content, long modifiedTime) throws IOException {
+        Path path = syncDir.resolve(name);
+        Files.write(path, content);
+        Files.setLastModifiedTime(path, FileTime.fromMillis(modifiedTime));
+        return path;
+    }
+
+    private static class PackStorj extends MockUp<Storj> {
+
+        byte[] content;
+        Path uploaded;
+        File uploadedFile;
+        List<File> files = new ArrayList<>();
+        List<String> deleted = new ArrayList<>();
+
+        @Mock
+        private void loadLibrary() {
+            // do not load any native library
+        }
+
+        @Mock
+        public void listFiles(Bucket bucket, ListFilesCallback callback) {
+            callback.onFilesReceived(bucket.getId(), files.toArray(new File[files.size()]));
+        }
+
+        @Mock
+        public long downloadFile(Bucket bucket, File file, DownloadFileCallback callback) throws IOException {
+            Path path = App.getInstance().getStagingArea().getPath(file);
+            Files.createDirectories(path.getParent());
+            Files.write(path, content);
+            callback.onComplete(file.getId(), path.toString());
+            return 0;
+        }
+
+        @Mock
+        public long uploadFile(Bucket bucket, String fileName, String localPath, UploadFileCallback callback)
+                throws IOException {
+            // the staged pack is discarded after the upload
+            uploaded = Files.createTempFile("goobox", ".pack");
+            Files.copy(Paths.get(localPath), uploaded, StandardCopyOption.REPLACE_EXISTING);
+            uploadedFile = new File("new-pack-id", bucket.getId(), fileName,
+                    "2017-11-10T17:51:14.123Z", true, Files.size(uploaded), null, null, null, null);
+            callback.onComplete(localPath, uploadedFile);
+            return 0;
+        }
+
+        @Mock
+        public void deleteFile(Bucket bucket, File file, DeleteFileCallback callback) {
+            deleted.add(file.getId());
+            callback.onFileDeleted(file.getId());
+        }
+
+    }
+
+}
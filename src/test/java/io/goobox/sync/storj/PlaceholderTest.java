@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class PlaceholderTest {
+
+    private Path dir;
+    private Path path;
+
+    @Before
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("goobox");
+        path = dir.resolve("placeholder");
+    }
+
+    @After
+    public void cleanUp() throws Exception {
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(dir);
+    }
+
+    @Test
+    public void create() throws Exception {
+        Placeholder.create(path, 1024 * 1024, 1510243787000L);
+
+        assertEquals(1024 * 1024, Files.size(path));
+        assertEquals(1510243787000L, Files.getLastModifiedTime(path).toMillis());
+        assertFalse(Placeholder.isAccessed(path));
+
+        Placeholder.markAccessed(path);
+        assertTrue(Placeholder.isAccessed(path));
+    }
+
+    @Test
+    public void empty() throws Exception {
+        Placeholder.create(path, 1024 * 1024, 1510243787000L);
+        assertTrue(Placeholder.isEmpty(path));
+
+        // touching does not change the content
+        Files.setLastModifiedTime(path, FileTime.fromMillis(1511172000000L));
+        assertTrue(Placeholder.isEmpty(path));
+
+        try (SeekableByteChannel channel = Files.newByteChannel(path, StandardOpenOption.WRITE)) {
+            channel.position(512 * 1024);
+            channel.write(ByteBuffer.wrap("written".getBytes(StandardCharsets.UTF_8)));
+        }
+        assertFalse(Placeholder.isEmpty(path));
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class SnapshotTest {
+
+    @Test
+    public void take() throws Exception {
+        Path dir = Files.createTempDirectory("goobox");
+        Path path = dir.resolve("disk.img");
+        Path snapshot = null;
+        try {
+            byte[] content = new byte[3 * 1024 * 1024 + 17];
+            new Random(42).nextBytes(content);
+            Files.write(path, content);
+
+            // a reflink where the file system supports it, a copy otherwise
+            snapshot = Snapshot.take(path, dir);
+
+            assertArrayEquals(content, Files.readAllBytes(snapshot));
+        } finally {
+            if (snapshot != null) {
+                Files.deleteIfExists(snapshot);
+            }
+            Files.deleteIfExists(path);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void copy() throws Exception {
+        Path source = Files.createTempFile("goobox", null);
+        Path target = Files.createTempFile("goobox", null);
+        try {
+            byte[] content = new byte[1024 * 1024 + 1];
+            new Random(7).nextBytes(content);
+            Files.write(source, content);
+            Files.write(target, new byte[2 * 1024 * 1024]);
+
+            Snapshot.copy(source, target);
+
+            assertArrayEquals(content, Files.readAllBytes(target));
+        } finally {
+            Files.delete(source);
+            Files.delete(target);
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.text.SimpleDateFormat;
+import java.util.TimeZone;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import io.storj.libstorj.File;
+
+@RunWith(JUnit4.class)
+public class StorjUtilTest {
+
+    @Test
+    public void getTime() throws Exception {
+        assertEquals(1510249874123L, StorjUtil.getTime("2017-11-09T17:51:14.123Z"));
+        assertEquals(0, StorjUtil.getTime("1970-01-01T00:00:00.000Z"));
+        assertEquals(951782400000L, StorjUtil.getTime("2000-02-29T00:00:00.000Z"));
+    }
+
+    @Test
+    public void getTimeSameAsGeneralParser() throws Exception {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        String[] timestamps = {
+                "2017-12-31T23:59:59.999Z",
+                "2016-02-29T12:00:00.500Z",
+                "2100-03-01T00:00:00.000Z",
+                "1600-01-01T00:00:00.000Z",
+                // out of range fields roll over in the general parser
+                "2018-02-29T10:00:00.000Z",
+                "2018-13-01T10:00:00.000Z",
+                // before the Gregorian calendar
+                "1500-06-15T08:30:00.000Z" };
+        for (String timestamp : timestamps) {
+            assertEquals(timestamp, sdf.parse(timestamp).getTime(), StorjUtil.getTime(timestamp));
+        }
+    }
+
+    @Test
+    public void getCreatedTime() throws Exception {
+        File file = new File("file-id", "bucket-id", "file-name", "2017-11-09T17:51:14.123Z", true, 1, null, null,
+                null, null);
+        File modified = new File("file-id", "bucket-id", "file-name", "2017-11-10T17:51:14.123Z", true, 1, null, null,
+                null, null);
+
+        assertEquals(1510249874123L, StorjUtil.getCreatedTime(file));
+        assertEquals(1510249874123L, StorjUtil.getCreatedTime(file));
+        // same id with another timestamp is parsed again
+        assertEquals(1510336274123L, StorjUtil.getCreatedTime(modified));
+    }
+
+    @Test
+    public void stagedNames() throws Exception {
+        String staged = StorjUtil.getStagedName("dir/file.txt");
+        assertEquals(".goobox-encoded/dir/file.txt.goobox-staged", staged);
+        assertEquals("dir/file.txt", StorjUtil.getLogicalName(staged));
+
+        // only names in the encoded folder are decoded
+        assertEquals("file.txt.goobox-staged", StorjUtil.getLogicalName("file.txt.goobox-staged"));
+        assertEquals("file.txt.goobox-staged", StorjUtil.getContentName("file.txt.goobox-staged"));
+    }
+
+    @Test
+    public void refNames() throws Exception {
+        String fingerprint = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+        String ref = StorjUtil.getRefName("dir/file.txt", fingerprint);
+        assertEquals(".goobox-encoded/dir/file.txt.goobox-ref-" + fingerprint, ref);
+        assertEquals("dir/file.txt", StorjUtil.getLogicalName(ref));
+        assertEquals(fingerprint, StorjUtil.getRefFingerprint(ref));
+
+        // a user file may look like a reference
+        String userFile = "dir/file.txt.goobox-ref-" + fingerprint;
+        assertEquals(userFile, StorjUtil.getLogicalName(userFile));
+        assertNull(StorjUtil.getRefFingerprint(userFile));
+    }
+
+    @Test
+    public void manifestNames() throws Exception {
+        String manifest = StorjUtil.getManifestName("dir/file.bin");
+        assertEquals(".goobox-encoded/dir/file.bin.goobox-manifest", manifest);
+        assertTrue(StorjUtil.isManifest(manifest));
+        assertTrue(StorjUtil.isManifest(StorjUtil.getStagedName(manifest)));
+        assertEquals("dir/file.bin", StorjUtil.getLogicalName(StorjUtil.getStagedName(manifest)));
+
+        // a user file may look like a manifest
+        assertFalse(StorjUtil.isManifest("dir/file.bin.goobox-manifest"));
+        assertEquals("dir/file.bin.goobox-manifest", StorjUtil.getLogicalName("dir/file.bin.goobox-manifest"));
+    }
+
+    @Test
+    public void reservedNames() throws Exception {
+        assertTrue(StorjUtil.isReserved(".goobox-staging"));
+        assertTrue(StorjUtil.isReserved(".goobox-encoded"));
+        assertFalse(StorjUtil.isReserved(".gooboxignore"));
+        assertFalse(StorjUtil.isReserved("file.goobox-staged"));
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.goobox.sync.storj.mocks.AppMock;
+import mockit.Mock;
+import mockit.MockUp;
+import mockit.integration.junit4.JMockit;
+
+@RunWith(JMockit.class)
+public class TaskExecutorTest {
+
+    private TaskQueue tasks;
+    private TaskExecutor executor;
+
+    @BeforeClass
+    public static void applySharedFakes() {
+        new AppMock();
+    }
+
+    @Before
+    public void setup() {
+        // room for tasks of different files to run together
+        System.setProperty("goobox.concurrency.transfers.min", "4");
+        tasks = new TaskQueue();
+        executor = new TaskExecutor(tasks);
+        executor.setDaemon(true);
+
+        final TaskQueue queue = tasks;
+        final TaskExecutor taskExecutor = executor;
+        new MockUp<App>() {
+            @Mock
+            public TaskQueue getTaskQueue() {
+                return queue;
+            }
+
+            @Mock
+            public TaskExecutor getTaskExecutor() {
+                return taskExecutor;
+            }
+        };
+    }
+
+    @After
+    public void cleanUp() {
+        System.clearProperty("goobox.concurrency.transfers.min");
+    }
+
+    @Test
+    public void sameFileRunsInTurn() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        BlockingTask first = new BlockingTask("file", release, running);
+        BlockingTask second = new BlockingTask("file", release, running);
+        BlockingTask other = new BlockingTask("other-file", release, new AtomicInteger());
+        executor.start();
+
+        tasks.add(first);
+        tasks.add(second);
+        tasks.add(other);
+
+        // the task of another file is not held back
+        assertTrue(first.started.await(5, TimeUnit.SECONDS));
+        assertTrue(other.started.await(5, TimeUnit.SECONDS));
+        assertFalse(second.started.await(100, TimeUnit.MILLISECONDS));
+        assertTrue(executor.isRunning("file"));
+
+        release.countDown();
+        assertTrue(second.done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, first.maxRunning);
+        assertEquals(1, second.maxRunning);
+    }
+
+    @Test
+    public void pendingAndRunningTasks() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingTask task = new BlockingTask("file", release, new AtomicInteger());
+        tasks.add(task);
+
+        assertTrue(tasks.isPending("file"));
+        assertFalse(tasks.isPending("other-file"));
+        assertFalse(executor.isRunning("file"));
+
+        executor.start();
+        assertTrue(task.started.await(5, TimeUnit.SECONDS));
+        assertFalse(tasks.isPending("file"));
+        assertTrue(executor.isRunning("file"));
+
+        release.countDown();
+        assertTrue(task.done.await(5, TimeUnit.SECONDS));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (executor.isRunning("file") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertFalse(executor.isRunning("file"));
+    }
+
+    private static class BlockingTask extends RetryableTask {
+
+        private String fileName;
+        private CountDownLatch release;
+        private AtomicInteger running;
+        private CountDownLatch started = new CountDownLatch(1);
+        private CountDownLatch done = new CountDownLatch(1);
+        private volatile int maxRunning;
+
+        BlockingTask(String fileName, CountDownLatch release, AtomicInteger running) {
+            this.fileName = fileName;
+            this.release = release;
+            this.running = running;
+        }
+
+        @Override
+        public String getFileName() {
+            return fileName;
+        }
+
+        @Override
+        public boolean isTransfer() {
+            return true;
+        }
+
+        @Override
+        public void run() {
+            maxRunning = running.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                // nothing to do
+            } finally {
+                running.decrementAndGet();
+                done.countDown();
+            }
+        }
+
+    }
+
+}
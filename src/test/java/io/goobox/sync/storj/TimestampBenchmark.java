@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import io.storj.libstorj.File;
+
+// Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+//   -Dexec.mainClass=io.goobox.sync.storj.TimestampBenchmark
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TimestampBenchmark {
+
+    // one listing of a large bucket
+    private static final int FILES = 100000;
+
+    private File[] files;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        files = new File[FILES];
+        for (int i = 0; i < FILES; i++) {
+            String created = String.format("20%02d-%02d-%02dT%02d:%02d:%02d.%03dZ", 15 + random.nextInt(4),
+                    1 + random.nextInt(12), 1 + random.nextInt(28), random.nextInt(24), random.nextInt(60),
+                    random.nextInt(60), random.nextInt(1000));
+            files[i] = new File("file-" + i, "bucket", "file-" + i, created, true, i, null, null, null, null);
+        }
+    }
+
+    // how StorjUtil.getTime used to parse
+    @Benchmark
+    public void simpleDateFormat(Blackhole blackhole) throws ParseException {
+        for (File file : files) {
+            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+            sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+            blackhole.consume(sdf.parse(file.getCreated()).getTime());
+        }
+    }
+
+    @Benchmark
+    public void parser(Blackhole blackhole) throws ParseException {
+        for (File file : files) {
+            blackhole.consume(StorjUtil.getTime(file.getCreated()));
+        }
+    }
+
+    // a check looks at each file three times, and the same files come back with every listing
+    @Benchmark
+    public void memo(Blackhole blackhole) throws ParseException {
+        for (File file : files) {
+            blackhole.consume(StorjUtil.getCreatedTime(file));
+            blackhole.consume(StorjUtil.getCreatedTime(file));
+            blackhole.consume(StorjUtil.getCreatedTime(file));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TimestampBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
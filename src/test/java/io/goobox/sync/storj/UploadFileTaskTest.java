@@ -16,6 +16,10 @@
  */
 package io.goobox.sync.storj;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -30,6 +34,12 @@ import io.goobox.sync.storj.mocks.DBMock;
 import io.goobox.sync.storj.mocks.FileMock;
 import io.goobox.sync.storj.mocks.FilesMock;
 import io.goobox.sync.storj.mocks.StorjMock;
+import io.storj.libstorj.Bucket;
+import io.storj.libstorj.File;
+import io.storj.libstorj.Storj;
+import io.storj.libstorj.UploadFileCallback;
+import mockit.Mock;
+import mockit.MockUp;
 import mockit.integration.junit4.JMockit;
 
 @RunWith(JMockit.class)
@@ -47,6 +57,7 @@ public class UploadFileTaskTest {
 
     @After
     public void cleanUp() {
+        App.getInstance().getCloudFileCache().invalidate();
         DB.close();
     }
 
@@ -74,6 +85,63 @@ public class UploadFileTaskTest {
         AssertState.assertDB(StorjMock.FILE_1, FileMock.FILE_1, SyncState.SYNCED);
     }
 
+    @Test
+    public void successfulUploadOverwriteFromCache() throws Exception {
+        new StorjMock(StorjMock.FILE_1);
+        new FilesMock(FileMock.FILE_1);
+
+        App.getInstance().getCloudFileCache().refresh(new File[] { StorjMock.FILE_1 });
+        DB.addForUpload(FileMock.FILE_1.getPath());
+
+        new UploadFileTask(StorjMock.BUCKET, FileMock.FILE_1.getPath()).run();
+
+        AssertState.assertDB(StorjMock.FILE_1, FileMock.FILE_1, SyncState.SYNCED);
+    }
+
+    @Test
+    public void stagedUpload() throws Exception {
+        StorjMock storj = new StorjMock(StorjMock.FILE_1);
+        new FilesMock(FileMock.FILE_1);
+        new MockUp<App>() {
+            @Mock
+            public boolean isStagedUploads() {
+                return true;
+            }
+        };
+
+        App.getInstance().getCloudFileCache().refresh(new File[] { StorjMock.FILE_1 });
+        DB.addForUpload(FileMock.FILE_1.getPath());
+
+        new UploadFileTask(StorjMock.BUCKET, FileMock.FILE_1.getPath()).run();
+
+        // the old version stays on the cloud until the new one is complete
+        assertTrue(storj.contains(StorjMock.FILE_1.getName()));
+        assertTrue(storj.contains(StorjMock.STAGED_FILE_1.getName()));
+        assertEquals(StorjMock.STAGED_FILE_1.getId(), DB.get(FileMock.FILE_1.getPath()).getStorjId());
+        assertEquals(SyncState.SYNCED, DB.get(FileMock.FILE_1.getPath()).getState());
+
+        Runnable task = App.getInstance().getTaskQueue().poll();
+        assertTrue(task instanceof DeleteOldVersionTask);
+        assertEquals(StorjMock.FILE_1.getName(), ((DeleteOldVersionTask) task).getFileName());
+        task.run();
+        assertFalse(storj.contains(StorjMock.FILE_1.getName()));
+    }
+
+    @Test
+    public void staleCacheUpload() throws Exception {
+        new StorjMock(StorjMock.FILE_1);
+        new FilesMock(FileMock.FILE_1);
+
+        App.getInstance().getCloudFileCache().refresh(new File[0]);
+        DB.addForUpload(FileMock.FILE_1.getPath());
+
+        new UploadFileTask(StorjMock.BUCKET, FileMock.FILE_1.getPath()).run();
+
+        AssertState.assertDB(FileMock.FILE_1, SyncState.FOR_UPLOAD);
+        assertFalse(App.getInstance().getCloudFileCache().isFresh());
+        assertTrue(App.getInstance().getRetryQueue().isScheduled(FileMock.FILE_1.getName()));
+    }
+
     @Test
     public void erroneousUpload() throws Exception {
         new StorjMock();
@@ -86,6 +154,21 @@ public class UploadFileTaskTest {
         AssertState.assertDB(FileMock.FILE_2, SyncState.UPLOAD_FAILED);
     }
 
+    @Test
+    public void temporaryErrorUpload() throws Exception {
+        new StorjMock();
+        new FilesMock(FileMock.FLAKY_FILE);
+
+        DB.addForUpload(FileMock.FLAKY_FILE.getPath());
+
+        UploadFileTask task = new UploadFileTask(StorjMock.BUCKET, FileMock.FLAKY_FILE.getPath());
+        task.run();
+
+        AssertState.assertDB(FileMock.FLAKY_FILE, SyncState.FOR_UPLOAD);
+        assertEquals(1, task.getAttempts());
+        assertTrue(App.getInstance().getRetryQueue().isScheduled(task.getFileName()));
+    }
+
     @Test
     public void subFileUpload() throws Exception {
         new StorjMock();
@@ -110,4 +193,98 @@ public class UploadFileTaskTest {
         AssertState.assertDB(StorjMock.SUB_SUB_FILE, FileMock.SUB_SUB_FILE, SyncState.SYNCED);
     }
 
+    @Test
+    public void supersededBeforeUploadHandle() throws Exception {
+        new StorjMock();
+        new FilesMock(FileMock.FILE_1);
+        // the file changes before libstorj returns the upload handle
+        CancellingStorj storj = new CancellingStorj(true);
+
+        DB.addForUpload(FileMock.FILE_1.getPath());
+
+        UploadFileTask task = new UploadFileTask(StorjMock.BUCKET, FileMock.FILE_1.getPath());
+        runWithTimeout(task);
+
+        assertEquals(1, storj.cancelled);
+        assertCancelled(task);
+    }
+
+    @Test
+    public void supersededDuringUpload() throws Exception {
+        new StorjMock();
+        new FilesMock(FileMock.FILE_1);
+        CancellingStorj storj = new CancellingStorj(false);
+
+        DB.addForUpload(FileMock.FILE_1.getPath());
+
+        UploadFileTask task = new UploadFileTask(StorjMock.BUCKET, FileMock.FILE_1.getPath());
+        Thread thread = new Thread(task);
+        thread.start();
+        // the task waits for libstorj once it has the upload handle
+        while (storj.callback == null || thread.getState() != Thread.State.WAITING) {
+            Thread.sleep(10);
+        }
+        App.getInstance().getInFlightUploads().supersede(FileMock.FILE_1.getPath());
+        thread.join(5000);
+
+        assertFalse(thread.isAlive());
+        assertEquals(1, storj.cancelled);
+        assertCancelled(task);
+    }
+
+    private void runWithTimeout(UploadFileTask task) throws InterruptedException {
+        Thread thread = new Thread(task);
+        thread.start();
+        thread.join(5000);
+        assertFalse(thread.isAlive());
+    }
+
+    private void assertCancelled(UploadFileTask task) throws Exception {
+        // left for the next check to upload once the file is steady
+        AssertState.assertDB(FileMock.FILE_1, SyncState.FOR_UPLOAD);
+        assertEquals(0, task.getAttempts());
+        assertFalse(App.getInstance().getRetryQueue().isScheduled(task.getFileName()));
+        assertFalse(App.getInstance().getInFlightUploads().contains(FileMock.FILE_1.getPath()));
+    }
+
+    // keeps uploads running until cancelled and reports the cancellation from another thread,
+    // which libstorj may do while cancelUpload is still running
+    private static class CancellingStorj extends MockUp<Storj> {
+
+        private boolean supersedeOnUpload;
+
+        volatile UploadFileCallback callback;
+        volatile String localPath;
+        volatile int cancelled;
+
+        CancellingStorj(boolean supersedeOnUpload) {
+            this.supersedeOnUpload = supersedeOnUpload;
+        }
+
+        @Mock
+        public long uploadFile(Bucket bucket, String fileName, String localPath, UploadFileCallback callback) {
+            this.localPath = localPath;
+            this.callback = callback;
+            if (supersedeOnUpload) {
+                App.getInstance().getInFlightUploads().supersede(FileMock.FILE_1.getPath());
+            }
+            return 42;
+        }
+
+        @Mock
+        public boolean cancelUpload(long state) throws InterruptedException {
+            cancelled++;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onError(localPath, Storj.STORJ_TRANSFER_CANCELED, "Upload canceled");
+                }
+            });
+            thread.start();
+            thread.join();
+            return true;
+        }
+
+    }
+
 }
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj.ignore;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+//   -Dexec.mainClass=io.goobox.sync.storj.ignore.IgnoreBenchmark
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Benchmark)
+public class IgnoreBenchmark {
+
+    private static final List<String> RULES = Arrays.asList(
+            "node_modules",
+            "bower_components",
+            ".git/",
+            "build/",
+            "target/",
+            "/dist",
+            "*.swp",
+            "*.swo",
+            "*~",
+            ".#*",
+            "*.py[co]",
+            "__pycache__/",
+            "*.o",
+            "*.class",
+            "logs/**/*.log",
+            "!logs/keep/*.log",
+            ".DS_Store",
+            "Thumbs.db",
+            "~$*",
+            "*.tmp");
+
+    private static final String[] DIRS = { "src", "main", "docs", "photos", "2018", "projects", "web", "app",
+            "node_modules", "build", "lib", "test", "logs", "keep", "assets", "target", "__pycache__" };
+
+    private static final String[] FILES = { "index.js", "README.md", "IMG_0042.jpg", "report.docx", "notes.txt",
+            ".notes.txt.swp", "App.class", "main.o", "server.log", "data.tmp", "~$report.docx", "module.pyc",
+            "backup~", ".DS_Store", "package.json", "Makefile" };
+
+    @Param({ "1000000" })
+    public int entries;
+
+    private IgnoreRules rules;
+    private List<PathMatcher> matchers;
+    private List<Boolean> negations;
+
+    private String[][] tree;
+    private Path[][] treePaths;
+
+    @Setup
+    public void setUp() {
+        rules = IgnoreRules.parse(RULES);
+
+        // what a straightforward implementation would do: one glob PathMatcher per rule, tried in order
+        matchers = new ArrayList<>();
+        negations = new ArrayList<>();
+        for (String rule : RULES) {
+            boolean negated = rule.startsWith("!");
+            String pattern = negated ? rule.substring(1) : rule;
+            pattern = pattern.endsWith("/") ? pattern.substring(0, pattern.length() - 1) : pattern;
+            if (pattern.startsWith("/")) {
+                pattern = pattern.substring(1);
+            } else if (!pattern.contains("/")) {
+                pattern = "{" + pattern + ",**/" + pattern + "}";
+            }
+            matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+            negations.add(negated);
+        }
+
+        Random random = new Random(42);
+        tree = new String[entries][];
+        treePaths = new Path[entries][];
+        for (int i = 0; i < entries; i++) {
+            int depth = 1 + random.nextInt(6);
+            String[] segments = new String[depth];
+            for (int j = 0; j < depth - 1; j++) {
+                segments[j] = DIRS[random.nextInt(DIRS.length)];
+            }
+            segments[depth - 1] = FILES[random.nextInt(FILES.length)];
+            tree[i] = segments;
+
+            // the parent directories of each entry, checked the same way
+            treePaths[i] = new Path[depth];
+            for (int j = 0; j < depth; j++) {
+                treePaths[i][j] = Paths.get(String.join("/", Arrays.copyOf(segments, j + 1)));
+            }
+        }
+    }
+
+    @Benchmark
+    public int compiled() {
+        int ignored = 0;
+        for (String[] segments : tree) {
+            for (int end = 1; end <= segments.length; end++) {
+                boolean dir = end < segments.length;
+                if (rules.match(segments, 0, end, () -> dir) == Boolean.TRUE) {
+                    ignored++;
+                    break;
+                }
+            }
+        }
+        return ignored;
+    }
+
+    @Benchmark
+    public int pathMatchers() {
+        int ignored = 0;
+        for (Path[] prefixes : treePaths) {
+            for (Path prefix : prefixes) {
+                boolean result = false;
+                for (int i = 0; i < matchers.size(); i++) {
+                    if (matchers.get(i).matches(prefix)) {
+                        result = !negations.get(i);
+                    }
+                }
+                if (result) {
+                    ignored++;
+                    break;
+                }
+            }
+        }
+        return ignored;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(IgnoreBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
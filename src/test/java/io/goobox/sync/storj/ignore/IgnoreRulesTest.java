@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj.ignore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class IgnoreRulesTest {
+
+    @Test
+    public void glob() throws Exception {
+        assertTrue(new Glob("node_modules").matches("node_modules"));
+        assertTrue(new Glob("*.swp").matches(".notes.txt.swp"));
+        assertTrue(new Glob("~$*").matches("~$report.docx"));
+        assertTrue(new Glob("*.py[co]").matches("app.pyc"));
+        assertFalse(new Glob("*.py[co]").matches("app.py"));
+        assertTrue(new Glob("file?.*.tmp").matches("file1.backup.tmp"));
+        assertTrue(new Glob("[!a-c]*").matches("data"));
+        assertFalse(new Glob("[!a-c]*").matches("build"));
+        assertTrue(new Glob("\\*").matches("*"));
+        assertFalse(new Glob("\\*").matches("a"));
+    }
+
+    @Test
+    public void unanchoredNameAtAnyDepth() throws Exception {
+        IgnoreRules rules = IgnoreRules.parse(Arrays.asList("# dependencies", "node_modules", "*.swp", ""));
+
+        assertEquals(Boolean.TRUE, match(rules, "node_modules"));
+        assertEquals(Boolean.TRUE, match(rules, "web/app/node_modules"));
+        assertEquals(Boolean.TRUE, match(rules, "docs/.readme.swp"));
+        assertNull(match(rules, "web/app/index.js"));
+    }
+
+    @Test
+    public void anchoredPath() throws Exception {
+        IgnoreRules rules = IgnoreRules.parse(Arrays.asList("/build", "docs/*.pdf", "logs/**/*.log"));
+
+        assertEquals(Boolean.TRUE, match(rules, "build"));
+        assertNull(match(rules, "src/build"));
+        assertEquals(Boolean.TRUE, match(rules, "docs/manual.pdf"));
+        assertNull(match(rules, "docs/old/manual.pdf"));
+        assertEquals(Boolean.TRUE, match(rules, "logs/app.log"));
+        assertEquals(Boolean.TRUE, match(rules, "logs/2018/05/app.log"));
+    }
+
+    @Test
+    public void lastMatchWins() throws Exception {
+        IgnoreRules rules = IgnoreRules.parse(Arrays.asList("*.log", "!keep.log"));
+
+        assertEquals(Boolean.TRUE, match(rules, "debug.log"));
+        assertEquals(Boolean.FALSE, match(rules, "keep.log"));
+    }
+
+    @Test
+    public void directoryOnly() throws Exception {
+        IgnoreRules rules = IgnoreRules.parse(Arrays.asList("out/"));
+        String[] path = { "out" };
+
+        assertEquals(Boolean.TRUE, rules.match(path, 0, 1, () -> true));
+        assertNull(rules.match(path, 0, 1, () -> false));
+    }
+
+    @Test
+    public void relativeToIgnoreFile() throws Exception {
+        IgnoreRules rules = IgnoreRules.parse(Arrays.asList("/target"));
+        String[] path = { "projects", "app", "target" };
+
+        // the rules of an ignore file in projects/app
+        assertEquals(Boolean.TRUE, rules.match(path, 2, 3, () -> true));
+        assertNull(rules.match(path, 1, 3, () -> true));
+    }
+
+    @Test
+    public void leadingDoubleStar() throws Exception {
+        IgnoreRules rules = IgnoreRules.parse(Arrays.asList("**/build", "**/cache/*.tmp"));
+
+        assertEquals(Boolean.TRUE, match(rules, "build"));
+        assertEquals(Boolean.TRUE, match(rules, "web/app/build"));
+        assertEquals(Boolean.TRUE, match(rules, "cache/data.tmp"));
+        assertEquals(Boolean.TRUE, match(rules, "web/cache/data.tmp"));
+        assertNull(match(rules, "web/cache/data.txt"));
+    }
+
+    @Test
+    public void onlyDoubleStar() throws Exception {
+        IgnoreRules rules = IgnoreRules.parse(Arrays.asList("**", "!keep.txt"));
+
+        assertEquals(Boolean.TRUE, match(rules, "data"));
+        assertEquals(Boolean.TRUE, match(rules, "web/app/index.js"));
+        assertEquals(Boolean.FALSE, match(rules, "docs/keep.txt"));
+
+        IgnoreRules dirs = IgnoreRules.parse(Arrays.asList("**/"));
+        String[] path = { "web", "app" };
+
+        assertEquals(Boolean.TRUE, dirs.match(path, 0, 2, () -> true));
+        assertNull(dirs.match(path, 0, 2, () -> false));
+
+        IgnoreRules inside = IgnoreRules.parse(Arrays.asList("/**"));
+
+        assertEquals(Boolean.TRUE, match(inside, "web/app/index.js"));
+    }
+
+    @Test
+    public void emptyFile() throws Exception {
+        assertTrue(IgnoreRules.parse(Arrays.asList("# nothing", "   ")).isEmpty());
+    }
+
+    private Boolean match(IgnoreRules rules, String path) {
+        String[] segments = path.split("/");
+        return rules.match(segments, 0, segments.length, () -> false);
+    }
+
+}
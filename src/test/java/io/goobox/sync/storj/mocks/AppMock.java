@@ -18,7 +18,10 @@ package io.goobox.sync.storj.mocks;
 
 import io.goobox.sync.common.overlay.OverlayHelper;
 import io.goobox.sync.storj.App;
+import io.goobox.sync.storj.CircuitBreaker;
 import io.goobox.sync.storj.FileWatcher;
+import io.goobox.sync.storj.RetryQueue;
+import io.goobox.sync.storj.TaskExecutor;
 import io.goobox.sync.storj.TaskQueue;
 import io.goobox.sync.storj.ipc.IpcExecutor;
 import io.goobox.sync.storj.overlay.StorjOverlayIconProvider;
@@ -33,6 +36,9 @@ public class AppMock extends MockUp<App> {
     private Storj storj;
     private IpcExecutor ipcExecutor = new IpcExecutor();
     private TaskQueue tasks = new TaskQueue();
+    private TaskExecutor taskExecutor = new TaskExecutor(tasks);
+    private RetryQueue retryQueue = new RetryQueue();
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
     private FileWatcher fileWatcher = new FileWatcher();
     private OverlayHelper overlayHelper = new OverlayHelper(
             instance.getSyncDir(), new StorjOverlayIconProvider());
@@ -65,6 +71,21 @@ public class AppMock extends MockUp<App> {
         return tasks;
     }
 
+    @Mock
+    public TaskExecutor getTaskExecutor() {
+        return taskExecutor;
+    }
+
+    @Mock
+    public RetryQueue getRetryQueue() {
+        return retryQueue;
+    }
+
+    @Mock
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
     @Mock
     public FileWatcher getFileWatcher() {
         return fileWatcher;
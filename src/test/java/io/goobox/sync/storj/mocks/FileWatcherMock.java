@@ -16,21 +16,35 @@
  */
 package io.goobox.sync.storj.mocks;
 
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
 import io.goobox.sync.storj.FileWatcher;
 import mockit.Mock;
 import mockit.MockUp;
 
 public class FileWatcherMock extends MockUp<FileWatcher> {
 
-    private boolean inProgress;
+    private List<Path> hotPaths;
+
+    public FileWatcherMock(Path... hotPaths) {
+        this.hotPaths = Arrays.asList(hotPaths);
+    }
 
-    public FileWatcherMock(boolean inProgress) {
-        this.inProgress = inProgress;
+    @Mock
+    public boolean isHot(Path path) {
+        return hotPaths.contains(path);
+    }
+
+    // the hot paths are written for a long time already
+    @Mock
+    public long getHotTime(Path path) {
+        return hotPaths.contains(path) ? Long.MAX_VALUE : 0;
     }
 
     @Mock
-    public boolean isInProgress() {
-        return inProgress;
+    public void snapshotTaken(Path path) {
     }
 
 }
@@ -97,6 +97,16 @@ public class FilesMock extends MockUp<Files> {
         return false;
     }
 
+    @Mock
+    public boolean isRegularFile(Path path, LinkOption... options) {
+        for (FileMock file : files) {
+            if (file.getPath().equals(path)) {
+                return !file.isDirectory();
+            }
+        }
+        return false;
+    }
+
     @Mock
     public boolean exists(Path path, LinkOption... options) {
         for (FileMock file : files) {
@@ -140,6 +150,8 @@ public class FilesMock extends MockUp<Files> {
             return dir;
         } else if (dir.equals(App.getInstance().getSyncDir())) {
             return dir;
+        } else if (App.getInstance().getStagingArea().contains(dir)) {
+            return dir;
         }
         throw new IllegalStateException();
     }
@@ -21,6 +21,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
 
+import io.goobox.sync.storj.StorjUtil;
 import io.storj.libstorj.Bucket;
 import io.storj.libstorj.DeleteFileCallback;
 import io.storj.libstorj.DownloadFileCallback;
@@ -49,6 +50,8 @@ public class StorjMock extends MockUp<Storj> {
             "2017-11-15T11:43:20.622Z", true, 12421, null, null, null, null);
     public static final File MODIFIED_FILE_1_NEWER = new File("modified-file-1-id", BUCKET.getId(), "file-1-name",
             "2017-11-27T10:20:30.312Z", true, 12421, null, null, null, null);
+    public static final File STAGED_FILE_1 = new File("staged-file-1-id", BUCKET.getId(),
+            StorjUtil.getStagedName("file-1-name"), "2017-11-15T11:43:20.622Z", true, 12421, null, null, null, null);
     public static final File DIR = new File("dir-id", BUCKET.getId(), "dir-name/", "2017-12-04T07:11:56.825Z", true,
             1, null, null, null, null);
     public static final File SUB_DIR = new File("sub-dir-id", BUCKET.getId(), "dir-name/sub-dir-name/",
@@ -142,12 +145,16 @@ public class StorjMock extends MockUp<Storj> {
     public long uploadFile(Bucket bucket, String fileName, String localPath, UploadFileCallback callback)
             throws KeysNotFoundException {
         if (FileMock.FILE_1.getPath().toString().equals(localPath)) {
-            if (files.contains(FILE_1)) {
+            if (contains(fileName)) {
                 callback.onError(localPath, Storj.STORJ_BRIDGE_BUCKET_FILE_EXISTS, "File already exists");
             } else {
-                files.add(FILE_1);
-                callback.onComplete(localPath, FILE_1);
+                // uploaded under another name by a staged upload
+                File file = FILE_1.getName().equals(fileName) ? FILE_1 : STAGED_FILE_1;
+                files.add(file);
+                callback.onComplete(localPath, file);
             }
+        } else if (FileMock.FLAKY_FILE.getPath().toString().equals(localPath)) {
+            callback.onError(localPath, Storj.STORJ_FARMER_TIMEOUT_ERROR, "Farmer request timed out");
         } else if (DIR.getName().equals(fileName)) {
             files.add(DIR);
             callback.onComplete(localPath, DIR);
@@ -166,6 +173,15 @@ public class StorjMock extends MockUp<Storj> {
         return 0;
     }
 
+    public boolean contains(String fileName) {
+        for (File file : files) {
+            if (file.getName().equals(fileName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public void modifyFile(File oldFile, File newFile) {
         if (files.contains(oldFile)) {
             files.remove(oldFile);
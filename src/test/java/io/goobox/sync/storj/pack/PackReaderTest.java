@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj.pack;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class PackReaderTest {
+
+    private Path pack;
+
+    @Before
+    public void setup() throws IOException {
+        pack = Files.createTempFile("goobox", ".pack");
+    }
+
+    @After
+    public void cleanUp() throws IOException {
+        Files.deleteIfExists(pack);
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        byte[] first = "first member".getBytes(StandardCharsets.UTF_8);
+        byte[] second = "second".getBytes(StandardCharsets.UTF_8);
+
+        try (PackWriter writer = new PackWriter(pack)) {
+            writer.add("dir-name/first", first, 1510243787000L);
+            writer.add("second", second, 1510667191000L);
+        }
+
+        try (PackReader reader = new PackReader(pack)) {
+            PackIndex index = reader.getIndex();
+            assertEquals(2, index.getMembers().size());
+
+            PackMember member = index.get("second");
+            assertEquals(first.length, member.getOffset());
+            assertEquals(second.length, member.getLength());
+            assertEquals(1510667191000L, member.getModifiedTime());
+            assertArrayEquals(second, reader.read(member));
+            assertArrayEquals(first, reader.read(index.get("dir-name/first")));
+
+            assertNull(index.get("missing"));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void notAPack() throws Exception {
+        Files.write(pack, "definitely not a pack file".getBytes(StandardCharsets.UTF_8));
+
+        new PackReader(pack).close();
+    }
+
+    @Test
+    public void largeMembers() throws Exception {
+        // bigger than the copy buffer
+        byte[] content = new byte[200 * 1024 + 17];
+        new Random(1).nextBytes(content);
+        Path source = Files.createTempFile("goobox", ".tmp");
+        Path compacted = Files.createTempFile("goobox", ".pack");
+        try {
+            Files.write(source, content);
+            try (PackWriter writer = new PackWriter(pack)) {
+                writer.add("small", "small".getBytes(StandardCharsets.UTF_8), 1510243787000L);
+                writer.add("large", source, 1510667191000L);
+            }
+
+            try (PackReader reader = new PackReader(pack); PackWriter writer = new PackWriter(compacted)) {
+                writer.add(reader, reader.getIndex().get("large"));
+            }
+
+            try (PackReader reader = new PackReader(compacted)) {
+                PackMember member = reader.getIndex().get("large");
+                assertEquals(0, member.getOffset());
+                assertEquals(content.length, member.getLength());
+                assertEquals(1510667191000L, member.getModifiedTime());
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                reader.copy(member, out);
+                assertArrayEquals(content, out.toByteArray());
+            }
+        } finally {
+            Files.delete(source);
+            Files.delete(compacted);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void memberOutsideData() throws Exception {
+        byte[] json = "{\"members\":[{\"name\":\"first\",\"offset\":0,\"length\":1000,\"modifiedTime\":0}]}"
+                .getBytes(StandardCharsets.UTF_8);
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(pack))) {
+            out.write("too short".getBytes(StandardCharsets.UTF_8));
+            out.write(json);
+            out.writeLong(json.length);
+            out.writeLong(PackWriter.MAGIC);
+        }
+
+        new PackReader(pack).close();
+    }
+
+}
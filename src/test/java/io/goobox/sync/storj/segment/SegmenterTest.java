@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2018 Kaloyan Raev
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.goobox.sync.storj.segment;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import io.goobox.sync.storj.Fingerprint;
+
+@RunWith(JUnit4.class)
+public class SegmenterTest {
+
+    private Path file;
+    private Path segment;
+
+    @Before
+    public void setup() throws IOException {
+        file = Files.createTempFile("goobox", null);
+        segment = Files.createTempFile("goobox", ".segment");
+    }
+
+    @After
+    public void cleanUp() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(segment);
+    }
+
+    @Test
+    public void changedSegment() throws Exception {
+        byte[] data = new byte[2500];
+        new Random(42).nextBytes(data);
+        Files.write(file, data);
+
+        Manifest before = Segmenter.scan(file, 1000);
+        assertEquals(2500, before.getSize());
+        assertEquals(Fingerprint.of(file), before.getFingerprint());
+        assertEquals(3, before.getSegments().size());
+        assertEquals(500, before.getLength(2));
+
+        data[1200]++;
+        Files.write(file, data);
+
+        Manifest after = Segmenter.scan(file, 1000);
+        assertEquals(before.getSegments().get(0), after.getSegments().get(0));
+        assertNotEquals(before.getSegments().get(1), after.getSegments().get(1));
+        assertEquals(before.getSegments().get(2), after.getSegments().get(2));
+    }
+
+    @Test
+    public void extract() throws Exception {
+        byte[] data = new byte[2500];
+        new Random(42).nextBytes(data);
+        Files.write(file, data);
+
+        Manifest manifest = Segmenter.scan(file, 1000);
+        Segmenter.extract(file, manifest.getOffset(2), manifest.getLength(2), segment);
+
+        assertArrayEquals(Arrays.copyOfRange(data, 2000, 2500), Files.readAllBytes(segment));
+        assertEquals(manifest.getSegments().get(2), Segmenter.scan(segment, 1000).getSegments().get(0));
+    }
+
+}